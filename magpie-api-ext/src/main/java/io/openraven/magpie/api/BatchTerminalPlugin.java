@@ -0,0 +1,28 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.api;
+
+import java.util.List;
+
+/**
+ * A terminal plugin that can amortize work across envelopes, such as writing them in a single transaction.  Terminal
+ * layers hand these plugins each dequeued batch in one call instead of calling {@link #accept(MagpieEnvelope)} once
+ * per envelope.
+ */
+public interface BatchTerminalPlugin<T> extends TerminalPlugin<T> {
+  void accept(List<MagpieEnvelope> envs);
+}
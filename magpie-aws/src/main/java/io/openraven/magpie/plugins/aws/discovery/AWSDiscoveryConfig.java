@@ -24,6 +24,20 @@ public class AWSDiscoveryConfig {
   private List<String> regions = List.of();
   private List<String> ignoredRegions = List.of();
   private String externalId;
+  private int maxConcurrency = 16;
+  private int maxConcurrencyPerAccount = 0;
+  private int maxConcurrencyPerService = 4;
+  private int s3RegionConcurrency = BucketRegionResolver.DEFAULT_CONCURRENCY;
+  private String s3RegionCache;
+  private int enrichmentConcurrency = ResourceEnricher.DEFAULT_CONCURRENCY;
+  private double apiCallRate = RateLimiters.DEFAULT_RATE;
+  private double maxApiCallRate = RateLimiters.DEFAULT_MAX_RATE;
+  private boolean skipDisabledRegions = true;
+  private int enabledRegionsTtlMinutes = AccountRegionResolver.DEFAULT_TTL_MINUTES;
+  private boolean iamBulkDiscovery = true;
+  private int errorReportWindowSeconds = ErrorReporter.DEFAULT_WINDOW_SECONDS;
+  private String organizationRoleTemplate;
+  private int maxAccountsInFlight = 0;
 
     /**
    * @return
@@ -69,4 +83,179 @@ public class AWSDiscoveryConfig {
   public void setExternalId(String externalId) {
         this.externalId = externalId;
     }
+
+  /**
+   * @return
+   * The number of (account, service, region) discovery tasks run at once.  1 runs them one after another.
+   */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public void setMaxConcurrency(int maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * @return
+   * The number of tasks run at once against any one account, or 0 for no limit beyond {@link #getMaxConcurrency()}.
+   */
+  public int getMaxConcurrencyPerAccount() {
+    return maxConcurrencyPerAccount;
+  }
+
+  public void setMaxConcurrencyPerAccount(int maxConcurrencyPerAccount) {
+    this.maxConcurrencyPerAccount = maxConcurrencyPerAccount;
+  }
+
+  /**
+   * @return
+   * The number of regions scanned at once for any one service, or 0 for no limit.  Keeps a single service's API from
+   * being throttled while other services still have work.
+   */
+  public int getMaxConcurrencyPerService() {
+    return maxConcurrencyPerService;
+  }
+
+  public void setMaxConcurrencyPerService(int maxConcurrencyPerService) {
+    this.maxConcurrencyPerService = maxConcurrencyPerService;
+  }
+
+  /**
+   * @return
+   * The number of GetBucketLocation calls made at once while working out which region each S3 bucket is in.
+   */
+  public int getS3RegionConcurrency() {
+    return s3RegionConcurrency;
+  }
+
+  public void setS3RegionConcurrency(int s3RegionConcurrency) {
+    this.s3RegionConcurrency = s3RegionConcurrency;
+  }
+
+  /**
+   * @return
+   * A file in which S3 bucket regions are kept between runs, or null to look every bucket up on each run.
+   */
+  public String getS3RegionCache() {
+    return s3RegionCache;
+  }
+
+  public void setS3RegionCache(String s3RegionCache) {
+    this.s3RegionCache = s3RegionCache;
+  }
+
+  /**
+   * @return
+   * The number of per-resource enrichment calls a service makes at once within one region.
+   */
+  public int getEnrichmentConcurrency() {
+    return enrichmentConcurrency;
+  }
+
+  public void setEnrichmentConcurrency(int enrichmentConcurrency) {
+    this.enrichmentConcurrency = enrichmentConcurrency;
+  }
+
+  /**
+   * @return
+   * The calls per second first allowed against each account, region and service.  The rate halves whenever AWS
+   * throttles a call and climbs back while calls succeed.
+   */
+  public double getApiCallRate() {
+    return apiCallRate;
+  }
+
+  public void setApiCallRate(double apiCallRate) {
+    this.apiCallRate = apiCallRate;
+  }
+
+  /**
+   * @return
+   * The highest calls per second the rate may climb to, or 0 to make calls without rate limiting.
+   */
+  public double getMaxApiCallRate() {
+    return maxApiCallRate;
+  }
+
+  public void setMaxApiCallRate(double maxApiCallRate) {
+    this.maxApiCallRate = maxApiCallRate;
+  }
+
+  /**
+   * @return
+   * Whether to look up the regions enabled for each account and skip the rest, such as opt-in regions the account
+   * hasn't opted in to.
+   */
+  public boolean isSkipDisabledRegions() {
+    return skipDisabledRegions;
+  }
+
+  public void setSkipDisabledRegions(boolean skipDisabledRegions) {
+    this.skipDisabledRegions = skipDisabledRegions;
+  }
+
+  /**
+   * @return
+   * How long an account's enabled regions are remembered before being looked up again.
+   */
+  public int getEnabledRegionsTtlMinutes() {
+    return enabledRegionsTtlMinutes;
+  }
+
+  public void setEnabledRegionsTtlMinutes(int enabledRegionsTtlMinutes) {
+    this.enabledRegionsTtlMinutes = enabledRegionsTtlMinutes;
+  }
+
+  /**
+   * @return
+   * Whether IAM users, groups, roles and policies are described with a few GetAccountAuthorizationDetails calls
+   * rather than several calls for each of them.
+   */
+  public boolean isIamBulkDiscovery() {
+    return iamBulkDiscovery;
+  }
+
+  public void setIamBulkDiscovery(boolean iamBulkDiscovery) {
+    this.iamBulkDiscovery = iamBulkDiscovery;
+  }
+
+  /**
+   * @return
+   * How long repeats of the same error (resource type, region and error code) are counted before being reported once,
+   * with their count.
+   */
+  public int getErrorReportWindowSeconds() {
+    return errorReportWindowSeconds;
+  }
+
+  public void setErrorReportWindowSeconds(int errorReportWindowSeconds) {
+    this.errorReportWindowSeconds = errorReportWindowSeconds;
+  }
+
+  /**
+   * @return
+   * A role ARN containing {accountId}, such as arn:aws:iam::{accountId}:role/magpie.  When set, the organization's
+   * active member accounts are listed through AWS Organizations and the role is assumed in each, alongside any
+   * assumedRoles.  The local credentials must belong to the management account or a delegated administrator.
+   */
+  public String getOrganizationRoleTemplate() {
+    return organizationRoleTemplate;
+  }
+
+  public void setOrganizationRoleTemplate(String organizationRoleTemplate) {
+    this.organizationRoleTemplate = organizationRoleTemplate;
+  }
+
+  /**
+   * @return
+   * How many accounts may be discovered at once, or 0 for no limit.  Further accounts start as others finish.
+   */
+  public int getMaxAccountsInFlight() {
+    return maxAccountsInFlight;
+  }
+
+  public void setMaxAccountsInFlight(int maxAccountsInFlight) {
+    this.maxAccountsInFlight = maxAccountsInFlight;
+  }
 }
@@ -25,10 +25,27 @@ import io.openraven.magpie.plugins.aws.discovery.services.*;
 import io.sentry.Sentry;
 import org.slf4j.Logger;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.organizations.OrganizationsClient;
 import software.amazon.awssdk.services.sts.StsClient;
 
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -85,51 +102,145 @@ public class AWSDiscoveryPlugin implements OriginPlugin<AWSDiscoveryConfig> {
 
   private Logger logger;
   private AWSDiscoveryConfig config;
+  private ClientRegistry clients;
+  private AccountRegionResolver regionResolver;
 
   @Override
   public void discover(Session session, Emitter emitter) {
 
     final var enabledPlugins = DISCOVERY_LIST.stream().filter(p -> isEnabled(p.service())).collect(Collectors.toList());
+    // Tasks emit from the scheduler's threads, and the emitter we're handed isn't required to be thread-safe.
+    final Object emitLock = new Object();
+    final Emitter safeEmitter = env -> {
+      synchronized (emitLock) {
+        emitter.emit(env);
+      }
+    };
 
-    if (config.getAssumedRoles() == null || config.getAssumedRoles().isEmpty()) {
+    final var tasks = new ArrayList<DiscoveryScheduler.Task>();
+    final var roles = assumedRoles();
+    if (roles.isEmpty()) {
       final var account = StsClient.create().getCallerIdentity().account();
+      final var enabledRegions = enabledRegions(account, ClientCreators.localClientCreator(lookupRegion(), clients));
+      final var skippedRegions = new TreeSet<String>();
       enabledPlugins.forEach(plugin -> {
-        final var regions = getRegionsForDiscovery(plugin);
-        regions.forEach(region -> {
-          try {
-            final var clientCreator = ClientCreators.localClientCreator(region);
-            plugin.discoverWrapper(MAPPER, session, region, emitter, logger, account, clientCreator);
-          } catch (Exception ex) {
-            logger.error("Discovery error  in {} - {}", region.id(), ex.getMessage());
-            logger.debug("Details", ex);
-          }
-        });
+        final var regions = getRegionsForDiscovery(plugin, enabledRegions, skippedRegions);
+        regions.forEach(region -> tasks.add(newTask(account, plugin, region, session, safeEmitter,
+          ClientCreators.localClientCreator(region, clients), clientCreator -> account)));
       });
+      logSkippedRegions(account, skippedRegions);
     } else {
-      config.getAssumedRoles().forEach(role -> {
+      // Each role's account is looked up by whichever of its tasks runs first, and shared with the rest.
+      final Map<String, CompletableFuture<String>> roleAccounts = new ConcurrentHashMap<>();
+      final var roleRegions = enabledRegions(roles);
+      roles.forEach(role -> {
+        final var enabledRegions = roleRegions.get(role);
+        final var skippedRegions = new TreeSet<String>();
         enabledPlugins.forEach(plugin -> {
-          final var regions = getRegionsForDiscovery(plugin);
-          regions.forEach(region -> {
-            final var clientCreator = ClientCreators.assumeRoleCreator(region, role, Optional.ofNullable(config.getExternalId()));
-            try (final var client = clientCreator.apply(StsClient.builder()).build()) {
-              final String account = client.getCallerIdentity().account();
-              logger.info("Discovering cross-account {}:{} using role {}", plugin.service(), region,   role);
-              plugin.discoverWrapper(MAPPER, session, region, emitter, logger, account, clientCreator);
-            } catch (Exception ex) {
-              logger.error("Discovery error  in {} - {}", region.id(), ex.getMessage());
-              logger.debug("Details", ex);
-            }
-          });
+          final var regions = getRegionsForDiscovery(plugin, enabledRegions, skippedRegions);
+          // The role ARN stands in for its account, which isn't known until the role is assumed.
+          regions.forEach(region -> tasks.add(newTask(role, plugin, region, session, safeEmitter,
+            ClientCreators.assumeRoleCreator(region, role, Optional.ofNullable(config.getExternalId()), clients), clientCreator -> {
+              final var account = roleAccount(roleAccounts, role,
+                () -> clientCreator.client(StsClient::builder).getCallerIdentity().account());
+              logger.debug("Discovering cross-account {}:{} using role {}", plugin.service(), region, role);
+              return account;
+            })));
         });
+        logSkippedRegions(role, skippedRegions);
       });
     }
+
+    logger.debug("Running {} discovery tasks", tasks.size());
+    try {
+      new DiscoveryScheduler(config.getMaxConcurrency(), config.getMaxConcurrencyPerAccount(),
+        config.getMaxConcurrencyPerService(), config.getMaxAccountsInFlight(), logger).run(tasks);
+    } catch (InterruptedException ex) {
+      logger.warn("Discovery interrupted");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * A task discovering {@code plugin} in {@code region}. Discoveries written against the async clients are scheduled
+   * as async tasks, so they don't hold a scheduler thread while their calls are in flight.
+   */
+  private DiscoveryScheduler.Task newTask(String accountKey, AWSDiscovery plugin, Region region, Session session, Emitter emitter,
+                                          MagpieAWSClientCreator clientCreator, Function<MagpieAWSClientCreator, String> account) {
+    if (plugin instanceof AWSAsyncDiscovery) {
+      return DiscoveryScheduler.Task.async(accountKey, plugin.service(), () -> {
+        try {
+          return ((AWSAsyncDiscovery) plugin).discoverWrapperAsync(MAPPER, session, region, emitter, logger, account.apply(clientCreator), clientCreator)
+            .exceptionally(ex -> {
+              logDiscoveryError(region, AWSUtils.unwrap(ex));
+              return null;
+            });
+        } catch (Exception ex) {
+          logDiscoveryError(region, ex);
+          return CompletableFuture.completedFuture(null);
+        }
+      });
+    }
+    return new DiscoveryScheduler.Task(accountKey, plugin.service(), () -> {
+      try {
+        plugin.discoverWrapper(MAPPER, session, region, emitter, logger, account.apply(clientCreator), clientCreator);
+      } catch (Exception ex) {
+        logDiscoveryError(region, ex);
+      }
+    });
+  }
+
+  /**
+   * The account {@code role} belongs to. The first caller for a role looks it up with {@code lookup}, outside the map so
+   * the call doesn't block other writers, and callers arriving meanwhile wait for its answer. A failed lookup is
+   * forgotten, so a later caller tries again.
+   */
+  static String roleAccount(Map<String, CompletableFuture<String>> roleAccounts, String role, Supplier<String> lookup) {
+    final var resolving = new CompletableFuture<String>();
+    final var resolved = roleAccounts.putIfAbsent(role, resolving);
+    if (resolved != null) {
+      try {
+        return resolved.join();
+      } catch (CompletionException ex) {
+        throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+      }
+    }
+    try {
+      final var account = lookup.get();
+      resolving.complete(account);
+      return account;
+    } catch (RuntimeException | Error ex) {
+      roleAccounts.remove(role, resolving);
+      resolving.completeExceptionally(ex);
+      throw ex;
+    }
+  }
+
+  private void logDiscoveryError(Region region, Throwable ex) {
+    logger.error("Discovery error  in {} - {}", region.id(), ex.getMessage());
+    logger.debug("Details", ex);
   }
 
   protected List<Region> getRegionsForDiscovery(AWSDiscovery plugin) {
+    return getRegionsForDiscovery(plugin, null, new TreeSet<>());
+  }
+
+  /**
+   * As {@link #getRegionsForDiscovery(AWSDiscovery)}, also leaving out regions not in {@code enabledRegions}, unless
+   * it's null. Regions left out for that reason are added to {@code skippedRegions}.
+   */
+  protected List<Region> getRegionsForDiscovery(AWSDiscovery plugin, @Nullable Set<Region> enabledRegions, Set<String> skippedRegions) {
     final var regions = plugin.getSupportedRegions()
       .stream()
       .filter(region -> isDiscoveryEnabledIn(region.toString()))
       .filter(region -> isAllowedRegion(region.toString()))
+      .filter(region -> {
+        final var enabled = AccountRegionResolver.isEnabled(region, enabledRegions);
+        if (!enabled) {
+          skippedRegions.add(region.id());
+        }
+        return enabled;
+      })
       .collect(Collectors.toList());
 
     if (regions.isEmpty()) {
@@ -138,6 +249,81 @@ public class AWSDiscoveryPlugin implements OriginPlugin<AWSDiscoveryConfig> {
     return regions;
   }
 
+  /**
+   * The configured roles, followed by one for each of the organization's accounts when a role template is configured.
+   */
+  private List<String> assumedRoles() {
+    final var roles = new LinkedHashSet<String>(config.getAssumedRoles() == null ? List.of() : config.getAssumedRoles());
+    final var template = config.getOrganizationRoleTemplate();
+    if (template != null && !template.isBlank()) {
+      final var organizations = ClientCreators.localClientCreator(lookupRegion(), clients).client(OrganizationsClient::builder);
+      final var accountRoles = OrganizationAccounts.roleArns(organizations, template);
+      logger.info("Discovering {} active accounts of the organization", accountRoles.size());
+      roles.addAll(accountRoles);
+    }
+    return new ArrayList<>(roles);
+  }
+
+  /**
+   * Looks up each role's enabled regions, several roles at once, so hundreds of accounts aren't looked up one by one
+   * before discovery can start. A role maps to null where regions aren't being filtered.
+   */
+  private Map<String, Set<Region>> enabledRegions(List<String> roles) {
+    final var result = new HashMap<String, Set<Region>>();
+    if (!config.isSkipDisabledRegions()) {
+      return result;
+    }
+
+    final var executor = Executors.newFixedThreadPool(Math.max(1, Math.min(config.getMaxConcurrency(), roles.size())));
+    try {
+      final var lookups = new LinkedHashMap<String, CompletableFuture<Set<Region>>>();
+      roles.forEach(role -> lookups.put(role, CompletableFuture.supplyAsync(() -> enabledRegions(role,
+        ClientCreators.assumeRoleCreator(lookupRegion(), role, Optional.ofNullable(config.getExternalId()), clients)), executor)));
+      lookups.forEach((role, lookup) -> {
+        try {
+          result.put(role, lookup.join());
+        } catch (CompletionException ex) {
+          logger.warn("Unable to list the regions enabled for {}, every configured region will be attempted", role, ex.getCause());
+          result.put(role, null);
+        }
+      });
+    } finally {
+      executor.shutdown();
+    }
+    return result;
+  }
+
+  @Nullable
+  private Set<Region> enabledRegions(String account, MagpieAWSClientCreator clientCreator) {
+    if (!config.isSkipDisabledRegions()) {
+      return null;
+    }
+    return regionResolver.enabledRegions(account, () -> clientCreator.client(Ec2Client::builder));
+  }
+
+  private Region lookupRegion() {
+    return lookupRegion(config.getRegions());
+  }
+
+  /**
+   * The region DescribeRegions is called in: the first configured one EC2 has an endpoint in, so accounts outside the
+   * commercial partition are looked up in their own. Global pseudo-regions such as aws-global are passed over.
+   */
+  static Region lookupRegion(List<String> configuredRegions) {
+    final var ec2Regions = Ec2Client.serviceMetadata().regions();
+    return configuredRegions.stream()
+      .map(Region::of)
+      .filter(region -> !region.isGlobalRegion() && ec2Regions.contains(region))
+      .findFirst()
+      .orElse(Region.US_EAST_1);
+  }
+
+  private void logSkippedRegions(String account, Set<String> skippedRegions) {
+    if (!skippedRegions.isEmpty()) {
+      logger.info("Skipping regions not enabled for {}: {}", account, skippedRegions);
+    }
+  }
+
   private boolean isEnabled(String svc) {
     var enabled = config.getServices().isEmpty() || config.getServices().stream().anyMatch(configuredService -> configuredService.equalsIgnoreCase(svc));
     logger.debug("{} {} per config", enabled ? "Enabling" : "Disabling", svc);
@@ -167,8 +353,37 @@ public class AWSDiscoveryPlugin implements OriginPlugin<AWSDiscoveryConfig> {
   public void init(AWSDiscoveryConfig config, Logger logger) {
     this.logger = logger;
     this.config = config;
+    this.regionResolver = new AccountRegionResolver(logger, Duration.ofMinutes(config.getEnabledRegionsTtlMinutes()));
+    if (config.getOrganizationRoleTemplate() != null && !config.getOrganizationRoleTemplate().isBlank()) {
+      // Fail on a template without its placeholder now, rather than on every role assumed with it.
+      OrganizationAccounts.roleArn(config.getOrganizationRoleTemplate(), "000000000000");
+    }
+    this.clients = new ClientRegistry(ClientRegistry.DEFAULT_MAX_CONNECTIONS,
+      config.getMaxApiCallRate() > 0 ? new RateLimiters(config.getApiCallRate(), config.getMaxApiCallRate()) : null);
+    ResourceEnricher.setConcurrency(config.getEnrichmentConcurrency());
+    DISCOVERY_LIST.forEach(discovery -> discovery.configure(config, logger));
 
     Sentry.init();
+    DiscoveryExceptions.configure(config.getErrorReportWindowSeconds());
+  }
+
+  @Override
+  public void shutdown() {
+    if (clients != null) {
+      DiscoveryExceptions.shutdown(logger);
+      final var rateLimiters = clients.rateLimiters();
+      if (rateLimiters != null) {
+        logger.info("AWS API calls were throttled {} times and waited {} times for {} ms in total",
+          rateLimiters.getThrottles(), rateLimiters.getWaits(), rateLimiters.getWaitedMillis());
+        rateLimiters.forEach((key, limiter) -> {
+          if (limiter.getThrottles() > 0) {
+            logger.debug("{} throttled {} times, settled at {} calls/s", key, limiter.getThrottles(), String.format("%.1f", limiter.getRate()));
+          }
+        });
+      }
+      logger.debug("Closing {} pooled AWS clients", clients.size());
+      clients.close();
+    }
   }
 
   @Override
@@ -22,6 +22,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.javatuples.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.SdkPojo;
+import software.amazon.awssdk.core.async.SdkPublisher;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
@@ -33,8 +35,11 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -46,6 +51,8 @@ public class AWSUtils {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(AWSUtils.class);
 
+  static final int METRICS_PERIOD_SECONDS = 3600;
+
   /**
    * @param resp will be provided the output from calling {@code fn}, or @param noresp a {@code NullNode} in the 403 or 404 case
    * @throws SdkServiceException if it is not one of the 403 or 404 status codes
@@ -65,54 +72,108 @@ public class AWSUtils {
     }
   }
 
+  /**
+   * As {@link #getAwsResponse}, for a call made on an async client. The returned future fails with anything that
+   * isn't a 4xx status code.
+   */
+  public static <R> CompletableFuture<Void> getAwsResponseAsync(Supplier<? extends CompletableFuture<R>> fn, Consumer<R> resp, Consumer<JsonNode> noresp) {
+    return fn.get().handle((ret, err) -> {
+      if (err == null) {
+        resp.accept(ret);
+        return null;
+      }
+      final var cause = unwrap(err);
+      if (cause instanceof SdkServiceException && ((SdkServiceException) cause).statusCode() >= 400 && ((SdkServiceException) cause).statusCode() < 500) {
+        noresp.accept(NULL_NODE);
+        return null;
+      }
+      throw new CompletionException(cause);
+    });
+  }
+
+  /**
+   * Collects every item of an async paginator.
+   */
+  public static <T> CompletableFuture<List<T>> collect(SdkPublisher<T> publisher) {
+    // Items are delivered one at a time, and the future's completion publishes the list to whoever reads it.
+    final var items = new ArrayList<T>();
+    return publisher.subscribe(items::add).thenApply(v -> items);
+  }
+
+  /**
+   * The exception a future failed with, without the {@link CompletionException} it may be wrapped in.
+   */
+  public static Throwable unwrap(Throwable ex) {
+    return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+  }
+
   public static JsonNode update(@Nullable JsonNode payload, ToCopyableBuilder... responsesToAdd) {
     for (ToCopyableBuilder responseToAdd : responsesToAdd) {
       if (responseToAdd != null) {
-        JsonNode jsonNode = AWSDiscoveryPlugin.MAPPER.convertValue(responseToAdd.toBuilder(), JsonNode.class);
-        payload = update(payload, jsonNode);
+        JsonNode jsonNode = toTree(responseToAdd);
+        payload = merge(payload, jsonNode);
       }
     }
     return payload;
   }
 
-  @SuppressWarnings("rawtypes")
   public static JsonNode update(@Nullable JsonNode payload,
                                 Map<String, Object> mappedResponsesToAdd) {
+    return new SupplementaryConfigurationBuilder(AWSDiscoveryPlugin.MAPPER).putAll(mappedResponsesToAdd).applyTo(payload);
+  }
 
-    for (Map.Entry<String, Object> responseToAdd : mappedResponsesToAdd.entrySet()) {
-      ObjectNode nodeToAdd = AWSDiscoveryPlugin.MAPPER.createObjectNode();
-
-      if (responseToAdd.getValue() instanceof ToCopyableBuilder) {
-        nodeToAdd.set(responseToAdd.getKey(),
-          AWSDiscoveryPlugin.MAPPER.convertValue(((ToCopyableBuilder) responseToAdd.getValue()).toBuilder(),
-            JsonNode.class));
-      } else {
-        nodeToAdd.set(responseToAdd.getKey(),
-          AWSDiscoveryPlugin.MAPPER.convertValue(responseToAdd.getValue(), JsonNode.class));
+  public static JsonNode update(@Nullable JsonNode payload, JsonNode... nodesToAdd) {
+    for (JsonNode nodeToAdd : nodesToAdd) {
+      if (nodeToAdd != null) {
+        payload = merge(payload, nodeToAdd.deepCopy());
       }
-
-      payload = update(payload, nodeToAdd);
     }
 
     return payload;
   }
 
-  public static JsonNode update(@Nullable JsonNode payload, JsonNode... nodesToAdd) {
-    for (JsonNode nodeToAdd : nodesToAdd) {
-      if (nodeToAdd != null) {
-        try {
-          if (payload != null) {
-            payload = AWSDiscoveryPlugin.MAPPER.readerForUpdating(payload).readValue(nodeToAdd);
-          } else {
-            payload = nodeToAdd;
-          }
-        } catch (IOException e) {
-          LOGGER.warn("Unable to add extra data {}", nodeToAdd, e);
-        }
+  /**
+   * As {@link #update(JsonNode, JsonNode...)}, but fields {@code payload} doesn't have yet are attached from
+   * {@code nodeToAdd} without being copied. Only fields already present are merged through Jackson.
+   */
+  static JsonNode merge(@Nullable JsonNode payload, JsonNode nodeToAdd) {
+    if (payload == null) {
+      return nodeToAdd;
+    }
+    if (!(payload instanceof ObjectNode) || !(nodeToAdd instanceof ObjectNode)) {
+      return readForUpdating(payload, nodeToAdd);
+    }
+
+    final var target = (ObjectNode) payload;
+    final var fields = nodeToAdd.fields();
+    while (fields.hasNext()) {
+      final var field = fields.next();
+      if (target.has(field.getKey())) {
+        final var existing = AWSDiscoveryPlugin.MAPPER.createObjectNode();
+        existing.set(field.getKey(), field.getValue());
+        readForUpdating(target, existing);
+      } else {
+        target.set(field.getKey(), field.getValue());
       }
     }
+    return target;
+  }
+
+  private static JsonNode readForUpdating(JsonNode payload, JsonNode nodeToAdd) {
+    try {
+      return AWSDiscoveryPlugin.MAPPER.readerForUpdating(payload).readValue(nodeToAdd);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to add extra data {}", nodeToAdd, e);
+      return payload;
+    }
+  }
 
-    return payload;
+  @SuppressWarnings("rawtypes")
+  private static JsonNode toTree(ToCopyableBuilder response) {
+    if (response instanceof SdkPojo) {
+      return SdkPojoConverter.forMapper(AWSDiscoveryPlugin.MAPPER).toTree((SdkPojo) response);
+    }
+    return AWSDiscoveryPlugin.MAPPER.convertValue(response.toBuilder(), JsonNode.class);
   }
 
   @SuppressWarnings("rawtypes")
@@ -122,7 +183,7 @@ public class AWSUtils {
 
   public static JsonNode add(List<? extends ToCopyableBuilder> responsesToAdd) {
     List<JsonNode> tags = responsesToAdd.stream()
-      .map((val) -> AWSDiscoveryPlugin.MAPPER.convertValue(val.toBuilder(), JsonNode.class))
+      .map(AWSUtils::toTree)
       .collect(toList());
 
     ArrayNode payload = AWSDiscoveryPlugin.MAPPER.createArrayNode();
@@ -176,23 +237,29 @@ public class AWSUtils {
 
   public static GetMetricStatisticsResponse getCloudwatchMetricStatistics( String regionID, String namespace, String metric, Statistic statistic, List<Dimension> dimensions, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(CloudWatchClient.builder()).region(Region.of(regionID)).build()) {
+    final var client = clientCreator.client(CloudWatchClient::builder, Region.of(regionID));
 
-      // The start time is t-minus 2 days (48 hours) because an asset is considered "active" if it's been updated within
-      // 48hrs, otherwise it is considered "terminated/deleted", so start capturing at the longest possible period
-      // (even though should be discovering more frequently). TODO: maybe pull these constants out to config?
-      Instant startTS = Instant.now().minus(2, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MINUTES);
+    Instant startTS = metricsWindowStart();
+    Instant endTS = metricsWindowEnd();
 
-      // the end time is t-minus 1 hour to account for delay in some services pushing data to cloudwatch - metrics
-      // earlier than this may not be available or unreliable (due to aggregations)
-      Instant endTS = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MINUTES);
+    GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder().startTime(startTS)
+      .endTime(endTS)
+      .namespace(namespace).period(METRICS_PERIOD_SECONDS).metricName(metric).statistics(statistic)
+      .dimensions(dimensions).build();
 
-      GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder().startTime(startTS)
-        .endTime(endTS)
-        .namespace(namespace).period(3600).metricName(metric).statistics(statistic)
-        .dimensions(dimensions).build();
+    return client.getMetricStatistics(request);
+  }
 
-      return client.getMetricStatistics(request);
-    }
+  static Instant metricsWindowStart() {
+    // The start time is t-minus 2 days (48 hours) because an asset is considered "active" if it's been updated within
+    // 48hrs, otherwise it is considered "terminated/deleted", so start capturing at the longest possible period
+    // (even though should be discovering more frequently). TODO: maybe pull these constants out to config?
+    return Instant.now().minus(2, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MINUTES);
+  }
+
+  static Instant metricsWindowEnd() {
+    // the end time is t-minus 1 hour to account for delay in some services pushing data to cloudwatch - metrics
+    // earlier than this may not be available or unreliable (due to aggregations)
+    return Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MINUTES);
   }
 }
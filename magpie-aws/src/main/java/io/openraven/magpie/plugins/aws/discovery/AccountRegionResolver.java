@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.slf4j.Logger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+import javax.annotation.Nullable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Works out which regions are enabled for an account with a single DescribeRegions call, so regions an account hasn't
+ * opted in to are skipped rather than attempted by every service. Answers are kept for {@code ttl}, including the
+ * absence of one when the call fails.
+ */
+public class AccountRegionResolver {
+
+  public static final int DEFAULT_TTL_MINUTES = 60;
+
+  private final Logger logger;
+  private final Duration ttl;
+  private final Clock clock;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  public AccountRegionResolver(Logger logger, Duration ttl) {
+    this(logger, ttl, Clock.systemUTC());
+  }
+
+  AccountRegionResolver(Logger logger, Duration ttl, Clock clock) {
+    this.logger = logger;
+    this.ttl = ttl;
+    this.clock = clock;
+  }
+
+  /**
+   * @param account The account, or any stable key for it such as a role ARN.
+   * @param client Supplies a client for the account, called only when the regions aren't already known.
+   * @return The regions enabled for the account, or null if they couldn't be listed, in which case none should be
+   * skipped.
+   */
+  @Nullable
+  public Set<Region> enabledRegions(String account, Supplier<Ec2Client> client) {
+    final var now = clock.instant();
+    final var entry = entries.compute(account, (k, cached) ->
+      cached != null && cached.expires.isAfter(now) ? cached : new Entry(describeRegions(account, client), now.plus(ttl)));
+    return entry.regions.orElse(null);
+  }
+
+  /**
+   * Whether discovery should run in {@code region} given an account's enabled regions. Global pseudo-regions such as
+   * aws-global are never listed by DescribeRegions and are always allowed.
+   */
+  public static boolean isEnabled(Region region, @Nullable Set<Region> enabledRegions) {
+    return enabledRegions == null || region.isGlobalRegion() || enabledRegions.contains(region);
+  }
+
+  private Optional<Set<Region>> describeRegions(String account, Supplier<Ec2Client> client) {
+    try {
+      // Without allRegions, only the regions enabled for the account are listed.
+      final Set<Region> regions = client.get().describeRegions().regions().stream()
+        .map(region -> Region.of(region.regionName()))
+        .collect(Collectors.toUnmodifiableSet());
+      logger.debug("{} has {} regions enabled", account, regions.size());
+      return Optional.of(regions);
+    } catch (SdkServiceException | SdkClientException ex) {
+      logger.warn("Unable to list the regions enabled for {}, every configured region will be attempted - {}", account, ex.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  private static class Entry {
+    private final Optional<Set<Region>> regions;
+    private final Instant expires;
+
+    Entry(Optional<Set<Region>> regions, Instant expires) {
+      this.regions = regions;
+      this.expires = expires;
+    }
+  }
+}
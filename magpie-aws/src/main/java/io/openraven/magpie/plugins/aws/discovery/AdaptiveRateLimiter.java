@@ -0,0 +1,150 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket whose rate adapts to throttling: it is halved whenever the API throttles a call and grows back by
+ * about one call per second for every second of successful calls (additive increase, multiplicative decrease).
+ *
+ * The bucket holds at most one second's worth of calls, so an idle limiter allows a short burst and no more.
+ */
+public class AdaptiveRateLimiter {
+
+  // Throttles reported within this long of a decrease are taken as part of the same burst and don't halve the rate again.
+  private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final double minRate;
+  private final double maxRate;
+  private final LongSupplier clock;
+
+  private final LongAdder throttles = new LongAdder();
+  private final LongAdder waits = new LongAdder();
+  private final LongAdder waitedNanos = new LongAdder();
+
+  private double rate;
+  private double tokens;
+  private long refilledAt;
+  private long decreasedAt;
+
+  /**
+   * @param rate The calls per second allowed to begin with.
+   * @param maxRate The most calls per second the rate may grow to.
+   */
+  public AdaptiveRateLimiter(double rate, double maxRate) {
+    this(rate, maxRate, System::nanoTime);
+  }
+
+  AdaptiveRateLimiter(double rate, double maxRate, LongSupplier clock) {
+    this.maxRate = Math.max(1, maxRate);
+    this.minRate = Math.min(1, this.maxRate);
+    this.rate = Math.max(minRate, Math.min(rate, this.maxRate));
+    this.tokens = this.rate;
+    this.clock = clock;
+    this.refilledAt = clock.getAsLong();
+    this.decreasedAt = refilledAt - DECREASE_COOLDOWN_NANOS;
+  }
+
+  /**
+   * Takes a token, waiting for one if the bucket is empty.
+   */
+  public void acquire() {
+    final var waitNanos = reserve();
+    if (waitNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Takes a token without blocking.
+   *
+   * @return a future completing once the token may be used; already complete if the bucket wasn't empty.
+   */
+  public CompletableFuture<Void> acquireAsync() {
+    final var waitNanos = reserve();
+    if (waitNanos == 0) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+  }
+
+  /**
+   * Takes a token, returning how long to wait before using it.
+   */
+  private long reserve() {
+    final long waitNanos;
+    synchronized (this) {
+      refill();
+      // Tokens are taken even when there are none left, so concurrent callers queue up behind each other.
+      tokens -= 1;
+      waitNanos = tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+    if (waitNanos > 0) {
+      waits.increment();
+      waitedNanos.add(waitNanos);
+    }
+    return waitNanos;
+  }
+
+  public synchronized void onSuccess() {
+    rate = Math.min(maxRate, rate + 1 / rate);
+  }
+
+  public synchronized void onThrottle() {
+    throttles.increment();
+    final var now = clock.getAsLong();
+    if (now - decreasedAt >= DECREASE_COOLDOWN_NANOS) {
+      refill();
+      decreasedAt = now;
+      rate = Math.max(minRate, rate / 2);
+      tokens = Math.min(tokens, 0);
+    }
+  }
+
+  public synchronized double getRate() {
+    return rate;
+  }
+
+  public long getThrottles() {
+    return throttles.sum();
+  }
+
+  /**
+   * @return The number of calls that had to wait for a token.
+   */
+  public long getWaits() {
+    return waits.sum();
+  }
+
+  public long getWaitedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(waitedNanos.sum());
+  }
+
+  private void refill() {
+    final var now = clock.getAsLong();
+    tokens = Math.min(rate, tokens + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+    refilledAt = now;
+  }
+}
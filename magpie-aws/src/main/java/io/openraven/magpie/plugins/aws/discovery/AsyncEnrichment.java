@@ -0,0 +1,32 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import io.openraven.magpie.api.MagpieAwsResource;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link Enrichment} made with an async client: the step starts its call and returns a future that completes once
+ * the response has been merged into {@code data}.
+ *
+ * @see AsyncResourceEnricher
+ */
+@FunctionalInterface
+public interface AsyncEnrichment<T> {
+  CompletableFuture<?> enrich(T resource, MagpieAwsResource data);
+}
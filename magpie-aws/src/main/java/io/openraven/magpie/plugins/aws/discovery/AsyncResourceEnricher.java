@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieAwsResource;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The async counterpart of {@link ResourceEnricher}: starts every step of a resource at once and completes it when
+ * their futures have, without holding a thread while the calls are in flight.
+ *
+ * Steps work on scratch copies of the resource and are merged into it as {@link ResourceEnricher} does, so they may
+ * complete in any order and on any thread.
+ */
+public class AsyncResourceEnricher {
+
+  public static final int DEFAULT_RESOURCES_IN_FLIGHT = 64;
+
+  private final ObjectMapper mapper;
+  private final Region region;
+  private final Logger logger;
+  private final int resourcesInFlight;
+
+  public AsyncResourceEnricher(ObjectMapper mapper, Region region, Logger logger) {
+    this(mapper, region, logger, DEFAULT_RESOURCES_IN_FLIGHT);
+  }
+
+  public AsyncResourceEnricher(ObjectMapper mapper, Region region, Logger logger, int resourcesInFlight) {
+    this.mapper = mapper;
+    this.region = region;
+    this.logger = logger;
+    this.resourcesInFlight = Math.max(1, resourcesInFlight);
+  }
+
+  /**
+   * Runs {@code steps} for {@code data}, completing with it once they all have. A step that fails is reported and
+   * doesn't fail the returned future.
+   */
+  public <T> CompletableFuture<MagpieAwsResource> enrich(T resource, MagpieAwsResource data, List<? extends AsyncEnrichment<? super T>> steps) {
+    final var futures = steps.stream().map(step -> {
+      final var scratch = ResourceEnricher.scratchCopy(mapper, data);
+      CompletableFuture<?> future;
+      try {
+        future = step.enrich(resource, scratch);
+      } catch (RuntimeException ex) {
+        future = CompletableFuture.failedFuture(ex);
+      }
+      return future.handle((v, ex) -> {
+        if (ex == null) {
+          ResourceEnricher.merge(scratch, data);
+        } else {
+          final var cause = AWSUtils.unwrap(ex);
+          DiscoveryExceptions.onDiscoveryException(data.resourceType, data.resourceName, region,
+            cause instanceof Exception ? (Exception) cause : new CompletionException(cause));
+        }
+        return null;
+      });
+    }).toArray(CompletableFuture[]::new);
+    return CompletableFuture.allOf(futures).thenApply(v -> data);
+  }
+
+  /**
+   * Enriches every resource published by {@code resources}, typically an async paginator, handing each to
+   * {@code onComplete} once its steps are done. Only so many resources are requested from the publisher ahead of
+   * those still being enriched, so a large listing doesn't queue an unbounded number of calls.
+   *
+   * @return a future completing once the listing has ended and every resource has been completed, or failing if the
+   * listing does.
+   */
+  public <T> CompletableFuture<Void> enrichAll(Publisher<T> resources, Function<? super T, MagpieAwsResource> toData,
+                                               List<? extends AsyncEnrichment<? super T>> steps, Consumer<MagpieAwsResource> onComplete) {
+    final var done = new CompletableFuture<Void>();
+    resources.subscribe(new Subscriber<T>() {
+      private final AtomicInteger inFlight = new AtomicInteger();
+      private volatile boolean listed;
+      private Subscription subscription;
+
+      @Override
+      public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(resourcesInFlight);
+      }
+
+      @Override
+      public void onNext(T resource) {
+        final MagpieAwsResource data;
+        try {
+          data = toData.apply(resource);
+        } catch (RuntimeException ex) {
+          subscription.cancel();
+          done.completeExceptionally(ex);
+          return;
+        }
+        inFlight.incrementAndGet();
+        enrich(resource, data, steps).whenComplete((enriched, ex) -> {
+          try {
+            onComplete.accept(data);
+          } catch (RuntimeException completeEx) {
+            logger.warn("Unable to complete {} {}", data.resourceType, data.arn, completeEx);
+          }
+          // Either this or onComplete() sees the listing as finished with nothing left in flight.
+          if (inFlight.decrementAndGet() == 0 && listed) {
+            done.complete(null);
+          } else {
+            subscription.request(1);
+          }
+        });
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        done.completeExceptionally(t);
+      }
+
+      @Override
+      public void onComplete() {
+        listed = true;
+        if (inFlight.get() == 0) {
+          done.complete(null);
+        }
+      }
+    });
+    return done;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.slf4j.Logger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.retry.RetryUtils;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.backup.BackupClient;
+import software.amazon.awssdk.services.backup.model.BackupJob;
+import software.amazon.awssdk.services.backup.model.BackupJobState;
+import software.amazon.awssdk.services.backup.model.ListBackupJobsRequest;
+
+import javax.annotation.Nullable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The completed backup jobs of one account and region, grouped by the ARN of the resource backed up. They are listed
+ * once, without a resource filter, instead of once for every resource that may have been backed up; only jobs
+ * created within {@code history} are kept.
+ *
+ * The jobs are listed again once they are older than {@code ttl}. A listing refused with a 4xx status, such as
+ * AccessDenied, is reported once and leaves the jobs unknown until then, as every resource's attempt would be refused
+ * alike. Other failures, throttling included, are reported and not kept, so the next resource tries again rather than
+ * every resource appearing to have no backups.
+ */
+class BackupJobIndex {
+
+  static final String RESOURCE_TYPE = "AWS::Backup::BackupJob";
+
+  private final Period history;
+  private final Duration ttl;
+  private final Clock clock;
+
+  @Nullable
+  private Map<String, List<BackupJob>> jobsByResource = Map.of();
+  private Instant expires = Instant.MIN;
+
+  BackupJobIndex(Period history, Duration ttl, Clock clock) {
+    this.history = history;
+    this.ttl = ttl;
+    this.clock = clock;
+  }
+
+  /**
+   * The jobs that backed up {@code arn}, listing the region's jobs with {@code client} first if they aren't known or
+   * have expired.
+   *
+   * @return The jobs, or null if they couldn't be listed.
+   */
+  @Nullable
+  synchronized List<BackupJob.Builder> jobs(String arn, Region region, BackupClient client, Logger logger) {
+    final var now = clock.instant();
+    if (!now.isBefore(expires)) {
+      try {
+        jobsByResource = list(client, region, now, logger);
+      } catch (SdkServiceException | SdkClientException ex) {
+        DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
+        if (!isRefused(ex)) {
+          return null;
+        }
+        jobsByResource = null;
+      }
+      expires = now.plus(ttl);
+    }
+    if (jobsByResource == null) {
+      return null;
+    }
+    return jobsByResource.getOrDefault(arn, List.of()).stream()
+      .map(BackupJob::toBuilder)
+      .collect(Collectors.toList());
+  }
+
+  private Map<String, List<BackupJob>> list(BackupClient client, Region region, Instant now, Logger logger) {
+    final var request = ListBackupJobsRequest.builder()
+      .byCreatedAfter(now.minus(history))
+      .maxResults(1000)
+      .byState(BackupJobState.COMPLETED)
+      .build();
+    final var jobs = new ArrayList<BackupJob>();
+    client.listBackupJobsPaginator(request).forEach(response -> jobs.addAll(response.backupJobs()));
+    logger.debug("Listed {} backup jobs in {}", jobs.size(), region);
+    return jobs.stream()
+      .filter(job -> job.resourceArn() != null)
+      .collect(Collectors.groupingBy(BackupJob::resourceArn));
+  }
+
+  private static boolean isRefused(SdkException ex) {
+    return ex instanceof SdkServiceException
+      && ((SdkServiceException) ex).statusCode() >= 400 && ((SdkServiceException) ex).statusCode() < 500
+      && !RetryUtils.isThrottlingException(ex);
+  }
+}
@@ -15,53 +15,30 @@
  */
 package io.openraven.magpie.plugins.aws.discovery;
 
-import com.amazonaws.SdkClientException;
 import org.slf4j.Logger;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.backup.BackupClient;
 import software.amazon.awssdk.services.backup.model.BackupJob;
-import software.amazon.awssdk.services.backup.model.BackupJobState;
-import software.amazon.awssdk.services.backup.model.ListBackupJobsRequest;
 
-import java.time.Instant;
+import javax.annotation.Nullable;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Period;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 public class BackupUtils {
 
-  private static final Map<Region, BackupClient> CLIENTS = new ConcurrentHashMap<>();
-
   private static final Period HISTORY = Period.ofDays(45);
+  private static final Duration INDEX_TTL = Duration.ofMinutes(15);
 
+  /**
+   * @return The completed jobs that backed up {@code arn}, or null if the region's jobs couldn't be listed.
+   */
+  @Nullable
   public static List<BackupJob.Builder> listBackupJobs(String arn, Region region, MagpieAWSClientCreator clientCreator, Logger logger) {
-    var retries = 5;
-    while (retries > 0) {
-      try {
-        List<BackupJob.Builder> jobs = new LinkedList<>();
-        try (final var client = clientCreator.apply(BackupClient.builder()).region(region).build()) {
-          final var builder = ListBackupJobsRequest.builder()
-            .byResourceArn(arn)
-            .byCreatedAfter(Instant.now().minus(HISTORY))
-            .maxResults(1000)
-            .byState(BackupJobState.COMPLETED);
-          final var result = client.listBackupJobsPaginator(builder.build());
-          result.forEach(response -> jobs.addAll(response.backupJobs().stream().map(BackupJob::toBuilder).collect(Collectors.toList())));
-          return jobs;
-        }
-      } catch (SdkClientException ex) {
-        retries --;
-
-        if (retries == 0) {
-          throw ex;
-        }
-
-        logger.warn("Couldn't list backup jobs for {}, retrying {} more times", arn, retries);
-      }
-    }
-    return List.of();
+    final var client = clientCreator.client(BackupClient::builder, region);
+    // One index per account and region, kept with the session's clients and dropped when they're closed.
+    final var index = clientCreator.shared(region, BackupJobIndex.class, () -> new BackupJobIndex(HISTORY, INDEX_TTL, Clock.systemUTC()));
+    return index.jobs(arn, region, client, logger);
   }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Bucket;
+import software.amazon.awssdk.services.s3.model.GetBucketLocationRequest;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Groups S3 buckets by region. S3 has no way to list the buckets of a single region, so each bucket's region takes a
+ * GetBucketLocation call; those calls are made concurrently, at most {@code concurrency} at a time.
+ *
+ * Bucket regions never change, so resolved regions may also be kept in a file that outlives the run. A stored region is
+ * trusted for as long as the bucket's creation date matches the one stored with it; a bucket that was deleted and
+ * recreated under the same name is looked up again.
+ */
+public class BucketRegionResolver {
+
+  public static final int DEFAULT_CONCURRENCY = 8;
+
+  private static final TypeReference<Map<String, Entry>> ENTRIES = new TypeReference<>() {};
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+    .findAndRegisterModules();
+
+  private final Logger logger;
+  private final int concurrency;
+  @Nullable
+  private final Path cacheFile;
+
+  private Map<String, Entry> entries;
+
+  public BucketRegionResolver(Logger logger, int concurrency, @Nullable Path cacheFile) {
+    this.logger = logger;
+    this.concurrency = Math.max(1, concurrency);
+    this.cacheFile = cacheFile;
+  }
+
+  /**
+   * Resolves the region of each bucket. Buckets whose region can't be determined are logged and left out.
+   */
+  public Map<Region, List<Bucket>> resolve(S3Client client, List<Bucket> buckets) {
+    final var known = knownEntries();
+    final var regions = new ConcurrentHashMap<String, Entry>();
+    final var lookups = new LinkedList<Bucket>();
+    buckets.forEach(bucket -> {
+      final var entry = known.get(bucket.name());
+      if (entry != null && Objects.equals(entry.created, bucket.creationDate())) {
+        regions.put(bucket.name(), entry);
+      } else {
+        lookups.add(bucket);
+      }
+    });
+    logger.debug("{} of {} bucket regions cached, looking up {}", regions.size(), buckets.size(), lookups.size());
+
+    if (!lookups.isEmpty()) {
+      final var threadNumber = new AtomicInteger();
+      final var executor = Executors.newFixedThreadPool(Math.min(concurrency, lookups.size()), r -> {
+        final var thread = new Thread(r, "s3-bucket-region-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+      try {
+        CompletableFuture.allOf(lookups.stream()
+          .map(bucket -> CompletableFuture.runAsync(() -> lookup(client, bucket)
+            .ifPresent(region -> regions.put(bucket.name(), new Entry(region.id(), bucket.creationDate()))), executor))
+          .toArray(CompletableFuture[]::new)).join();
+      } finally {
+        executor.shutdown();
+      }
+      store(regions);
+    }
+
+    final var map = new HashMap<Region, List<Bucket>>();
+    buckets.forEach(bucket -> {
+      final var entry = regions.get(bucket.name());
+      if (entry != null) {
+        logger.debug("Associating {} to region {}", bucket.name(), entry.region);
+        map.computeIfAbsent(Region.of(entry.region), r -> new LinkedList<>()).add(bucket);
+      }
+    });
+    return map;
+  }
+
+  private Optional<Region> lookup(S3Client client, Bucket bucket) {
+    try {
+      final var resp = client.getBucketLocation(GetBucketLocationRequest.builder().bucket(bucket.name()).build());
+      // Thanks to https://sdk.amazonaws.com/java/api/latest/software/amazon/awssdk/services/s3/model/GetBucketLocationResponse.html#locationConstraint--
+      // we need to be aware of both null and UNKNOWN_TO_SDK_VERSION values.
+      final var location = resp.locationConstraintAsString();
+      return Optional.of(location == null || location.isEmpty() || Region.US_EAST_1.id().equals(location)
+        ? Region.US_EAST_1
+        : Region.of(location));
+    } catch (SdkServiceException | SdkClientException ex) {
+      logger.warn("Unable to determine the region of bucket {} - {}", bucket.name(), ex.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  private synchronized Map<String, Entry> knownEntries() {
+    if (entries == null) {
+      entries = new HashMap<>();
+      if (cacheFile != null && Files.exists(cacheFile)) {
+        try {
+          entries.putAll(MAPPER.readValue(cacheFile.toFile(), ENTRIES));
+        } catch (IOException ex) {
+          logger.warn("Ignoring unreadable bucket region cache {} - {}", cacheFile, ex.getMessage());
+        }
+      }
+    }
+    return Map.copyOf(entries);
+  }
+
+  private synchronized void store(Map<String, Entry> resolved) {
+    entries.putAll(resolved);
+    if (cacheFile == null) {
+      return;
+    }
+    try {
+      if (cacheFile.getParent() != null) {
+        Files.createDirectories(cacheFile.getParent());
+      }
+      final var tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+      MAPPER.writeValue(tmp.toFile(), entries);
+      Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      logger.warn("Unable to write bucket region cache {} - {}", cacheFile, ex.getMessage());
+    }
+  }
+
+  public static class Entry {
+    public String region;
+    public Instant created;
+
+    public Entry() {
+    }
+
+    Entry(String region, Instant created) {
+      this.region = region;
+      this.created = created;
+    }
+  }
+}
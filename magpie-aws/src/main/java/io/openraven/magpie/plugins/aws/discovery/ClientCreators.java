@@ -1,6 +1,8 @@
 package io.openraven.magpie.plugins.aws.discovery;
 
 import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.core.client.builder.SdkSyncClientBuilder;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.sts.StsClient;
 import software.amazon.awssdk.services.sts.auth.StsAssumeRoleCredentialsProvider;
@@ -9,6 +11,7 @@ import software.amazon.awssdk.services.sts.model.AssumeRoleRequest;
 import java.net.URI;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 public class ClientCreators {
 
@@ -16,38 +19,92 @@ public class ClientCreators {
   public static final StsClient stsClient = StsClient.create();
 
   public static MagpieAWSClientCreator assumeRoleCreator(final Region region, final String roleArn, Optional<String> externalIdOptional) {
-    return new MagpieAWSClientCreator(){
+    return assumeRoleCreator(region, roleArn, externalIdOptional, ClientRegistry.SHARED);
+  }
+
+  public static MagpieAWSClientCreator assumeRoleCreator(final Region region, final String roleArn, Optional<String> externalIdOptional, final ClientRegistry registry) {
+    final var credentials = roleArn + externalIdOptional.map(id -> "|" + id).orElse("");
+    return new RegistryClientCreator(region, credentials, registry) {
       @Override
       public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT> BuilderT apply(AwsClientBuilder<BuilderT, ClientT> builder) {
-        final var magpieAwsEndpoint = System.getProperty("MAGPIE_AWS_ENDPOINT");
-        if (magpieAwsEndpoint != null) {
-          builder.endpointOverride(URI.create(magpieAwsEndpoint));
-        }
-          final AssumeRoleRequest.Builder assumeRoleRequestBuilder = AssumeRoleRequest.builder()
-                  .roleArn(roleArn)
-                  .roleSessionName(UUID.randomUUID().toString());
-          externalIdOptional.ifPresent(assumeRoleRequestBuilder::externalId);
-          final var provider = StsAssumeRoleCredentialsProvider.builder()
-          .stsClient(stsClient)
-          .refreshRequest(
-            assumeRoleRequestBuilder
-              .build()
-          ).build();
+        configure(builder);
+        // One provider per role, so the role is assumed once and its credentials refreshed once for every client.
+        final var provider = registry.credentialsProvider(credentials, () -> assumeRoleProvider(roleArn, externalIdOptional));
         return builder.credentialsProvider(provider).region(region);
       }
     };
   }
 
+  private static StsAssumeRoleCredentialsProvider assumeRoleProvider(String roleArn, Optional<String> externalIdOptional) {
+    final AssumeRoleRequest.Builder assumeRoleRequestBuilder = AssumeRoleRequest.builder()
+      .roleArn(roleArn)
+      .roleSessionName(UUID.randomUUID().toString());
+    externalIdOptional.ifPresent(assumeRoleRequestBuilder::externalId);
+    return StsAssumeRoleCredentialsProvider.builder()
+      .stsClient(stsClient)
+      .refreshRequest(assumeRoleRequestBuilder.build())
+      .build();
+  }
+
   public static MagpieAWSClientCreator localClientCreator(final Region region) {
-    return new MagpieAWSClientCreator(){
+    return localClientCreator(region, ClientRegistry.SHARED);
+  }
+
+  public static MagpieAWSClientCreator localClientCreator(final Region region, final ClientRegistry registry) {
+    return new RegistryClientCreator(region, "local", registry) {
       @Override
       public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT> BuilderT apply(AwsClientBuilder<BuilderT, ClientT> builder) {
-        final var magpieAwsEndpoint = System.getProperty("MAGPIE_AWS_ENDPOINT");
-        if (magpieAwsEndpoint != null) {
-          builder.endpointOverride(URI.create(magpieAwsEndpoint));
-        }
+        configure(builder);
         return builder.region(region);
       }
     };
   }
+
+  /**
+   * Pools clients in a {@link ClientRegistry} under the creator's credentials and region, so creators made for the same
+   * account and region share clients.
+   */
+  private abstract static class RegistryClientCreator implements MagpieAWSClientCreator {
+    private final Region region;
+    private final String credentials;
+    private final ClientRegistry registry;
+
+    RegistryClientCreator(Region region, String credentials, ClientRegistry registry) {
+      this.region = region;
+      this.credentials = credentials;
+      this.registry = registry;
+    }
+
+    /**
+     * Applies the endpoint override, the registry's HTTP client and its rate limiters. Callers that build their own
+     * clients from {@link #apply} still share the registry's connection pool and limiters.
+     */
+    protected void configure(AwsClientBuilder<?, ?> builder) {
+      final var magpieAwsEndpoint = System.getProperty("MAGPIE_AWS_ENDPOINT");
+      if (magpieAwsEndpoint != null) {
+        builder.endpointOverride(URI.create(magpieAwsEndpoint));
+      }
+      if (builder instanceof SdkSyncClientBuilder) {
+        ((SdkSyncClientBuilder<?, ?>) builder).httpClient(registry.httpClient());
+        if (registry.rateLimiters() != null) {
+          builder.overrideConfiguration(registry.rateLimiters().overrideConfiguration(credentials));
+        }
+      }
+    }
+
+    @Override
+    public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT extends SdkClient> ClientT client(Supplier<BuilderT> builder) {
+      return registry.client(credentials, region, builder, this::apply);
+    }
+
+    @Override
+    public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT extends SdkClient> ClientT client(Supplier<BuilderT> builder, Region region) {
+      return registry.client(credentials, region, builder, b -> apply(b).region(region));
+    }
+
+    @Override
+    public <T> T shared(Region region, Class<T> type, Supplier<? extends T> value) {
+      return registry.shared(credentials, region, type, value);
+    }
+  }
 }
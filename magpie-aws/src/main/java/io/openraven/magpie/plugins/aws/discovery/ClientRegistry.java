@@ -0,0 +1,266 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.core.client.builder.SdkAsyncClientBuilder;
+import software.amazon.awssdk.core.client.builder.SdkSyncClientBuilder;
+import software.amazon.awssdk.core.client.config.ClientAsyncConfiguration;
+import software.amazon.awssdk.core.client.config.SdkAdvancedAsyncClientOption;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hands out SDK clients keyed by credentials, region and client type, so a discovery session builds each client once
+ * instead of once per call. Every client shares a single HTTP client and therefore a single connection pool.
+ *
+ * Async clients likewise share one Netty event loop, and complete their futures on one small pool of threads rather
+ * than the pool the SDK would otherwise create for each client.
+ *
+ * Clients obtained from the registry are owned by it and must not be closed by callers; {@link #close()} releases them
+ * all along with the connection pool.
+ */
+public class ClientRegistry implements SdkAutoCloseable {
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 128;
+
+  /**
+   * Backs creators that aren't bound to a session, such as those built by the region-only factories in
+   * {@link ClientCreators}. It lives for the life of the JVM.
+   */
+  static final ClientRegistry SHARED = new ClientRegistry(DEFAULT_MAX_CONNECTIONS);
+
+  private final int maxConnections;
+  @Nullable
+  private final RateLimiters rateLimiters;
+  private final Map<Key, SdkClient> clients = new ConcurrentHashMap<>();
+  private final Map<Object, AwsCredentialsProvider> credentialsProviders = new ConcurrentHashMap<>();
+  private final Map<Class<?>, Class<?>> builderTypes = new ConcurrentHashMap<>();
+  private final Map<Key, Object> shared = new ConcurrentHashMap<>();
+  private SdkHttpClient httpClient;
+  private SdkAsyncHttpClient asyncHttpClient;
+  private ExecutorService completionExecutor;
+  private boolean closed;
+
+  public ClientRegistry(int maxConnections) {
+    this(maxConnections, new RateLimiters(RateLimiters.DEFAULT_RATE, RateLimiters.DEFAULT_MAX_RATE));
+  }
+
+  /**
+   * @param rateLimiters The limiters every client's calls go through, or null for none.
+   */
+  public ClientRegistry(int maxConnections, @Nullable RateLimiters rateLimiters) {
+    this.maxConnections = maxConnections;
+    this.rateLimiters = rateLimiters;
+  }
+
+  @Nullable
+  public RateLimiters rateLimiters() {
+    return rateLimiters;
+  }
+
+  /**
+   * The HTTP client every registry client is built with. The SDK does not close HTTP clients it was handed, so this
+   * may also be set on builders whose clients are closed by their callers.
+   */
+  public synchronized SdkHttpClient httpClient() {
+    if (closed) {
+      throw new IllegalStateException("Client registry is closed");
+    }
+    if (httpClient == null) {
+      httpClient = ApacheHttpClient.builder().maxConnections(maxConnections).build();
+    }
+    return httpClient;
+  }
+
+  /**
+   * The HTTP client every async registry client is built with. Its connections are bounded by the same limit as
+   * {@link #httpClient()}'s; requests beyond it wait for a connection rather than failing.
+   */
+  public synchronized SdkAsyncHttpClient asyncHttpClient() {
+    if (closed) {
+      throw new IllegalStateException("Client registry is closed");
+    }
+    if (asyncHttpClient == null) {
+      asyncHttpClient = NettyNioAsyncHttpClient.builder().maxConcurrency(maxConnections).build();
+      final var count = new AtomicInteger();
+      completionExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+        Thread t = new Thread(r, "aws-async-completion-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return asyncHttpClient;
+  }
+
+  /**
+   * Returns the client for the given credentials, region and builder type, building it with {@code configure} on first
+   * use. {@code configure} is expected to apply the same credentials and region that make up the key.
+   */
+  @SuppressWarnings("unchecked")
+  public <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT extends SdkClient> ClientT client(
+    Object credentials, Region region, Supplier<BuilderT> builder, Consumer<BuilderT> configure) {
+
+    final var type = builderType(builder);
+    final var key = new Key(credentials, region, type);
+    final var client = clients.get(key);
+    if (client != null) {
+      return (ClientT) client;
+    }
+    final Consumer<BuilderT> withHttpClient;
+    if (SdkAsyncClientBuilder.class.isAssignableFrom(type)) {
+      final var http = asyncHttpClient();
+      final var asyncConfiguration = ClientAsyncConfiguration.builder()
+        .advancedOption(SdkAdvancedAsyncClientOption.FUTURE_COMPLETION_EXECUTOR, completionExecutor)
+        .build();
+      withHttpClient = b -> {
+        if (rateLimiters == null) {
+          ((SdkAsyncClientBuilder<?, ?>) b).httpClient(http).asyncConfiguration(asyncConfiguration);
+          return;
+        }
+        final var limited = new RateLimiters.LimitedAsyncHttpClient(http);
+        ((SdkAsyncClientBuilder<?, ?>) b).httpClient(limited).asyncConfiguration(asyncConfiguration);
+        b.overrideConfiguration(rateLimiters.overrideConfiguration(credentials, limited));
+      };
+    } else {
+      final var http = httpClient();
+      withHttpClient = b -> {
+        if (b instanceof SdkSyncClientBuilder) {
+          ((SdkSyncClientBuilder<?, ?>) b).httpClient(http);
+        }
+        if (rateLimiters != null) {
+          b.overrideConfiguration(rateLimiters.overrideConfiguration(credentials));
+        }
+      };
+    }
+    return (ClientT) clients.computeIfAbsent(key, k -> {
+      final var instance = builder.get();
+      configure.accept(instance);
+      withHttpClient.accept(instance);
+      return (SdkClient) instance.build();
+    });
+  }
+
+  /**
+   * The type of builder a supplier returns, remembered by the supplier's class. Suppliers are method references such as
+   * {@code S3Client::builder}, so this builds one throwaway builder per call site rather than one per call.
+   */
+  private Class<?> builderType(Supplier<?> builder) {
+    return builderTypes.computeIfAbsent(builder.getClass(), c -> builder.get().getClass());
+  }
+
+  /**
+   * Returns the credentials provider kept under {@code key}, creating it with {@code provider} on first use. Clients
+   * given the same key share one provider, and therefore the credentials it has fetched and refreshes.
+   */
+  public AwsCredentialsProvider credentialsProvider(Object key, Supplier<? extends AwsCredentialsProvider> provider) {
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("Client registry is closed");
+      }
+    }
+    return credentialsProviders.computeIfAbsent(key, k -> provider.get());
+  }
+
+  /**
+   * Returns the {@code type} kept for the given credentials and region, creating it with {@code value} on first use.
+   * This holds state shared by every task discovering in one account and region, such as a listing made once for the
+   * region, and lives as long as the registry's clients.
+   */
+  public <T> T shared(Object credentials, Region region, Class<T> type, Supplier<? extends T> value) {
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("Client registry is closed");
+      }
+    }
+    return type.cast(shared.computeIfAbsent(new Key(credentials, region, type), k -> value.get()));
+  }
+
+  public int size() {
+    return clients.size();
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    clients.values().forEach(SdkClient::close);
+    clients.clear();
+    credentialsProviders.values().forEach(provider -> {
+      if (provider instanceof SdkAutoCloseable) {
+        ((SdkAutoCloseable) provider).close();
+      }
+    });
+    credentialsProviders.clear();
+    shared.clear();
+    if (httpClient != null) {
+      httpClient.close();
+      httpClient = null;
+    }
+    if (asyncHttpClient != null) {
+      asyncHttpClient.close();
+      asyncHttpClient = null;
+      completionExecutor.shutdown();
+      completionExecutor = null;
+    }
+  }
+
+  private static class Key {
+    private final Object credentials;
+    private final Region region;
+    private final Class<?> type;
+
+    Key(Object credentials, Region region, Class<?> type) {
+      this.credentials = credentials;
+      this.region = region;
+      this.type = type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      final var key = (Key) o;
+      return Objects.equals(credentials, key.credentials) && Objects.equals(region, key.region) && type.equals(key.type);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(credentials, region, type);
+    }
+  }
+}
@@ -2,8 +2,6 @@ package io.openraven.magpie.plugins.aws.discovery;
 
 import io.sentry.Sentry;
 import io.sentry.event.Event;
-import io.sentry.event.EventBuilder;
-import io.sentry.event.interfaces.ExceptionInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
@@ -15,38 +13,75 @@ public class DiscoveryExceptions {
 
   private static final Logger logger = LoggerFactory.getLogger(DiscoveryExceptions.class);
 
+  private static volatile ErrorReporter reporter = new ErrorReporter(ErrorReporter.DEFAULT_WINDOW_SECONDS, Sentry::capture);
+
+  /**
+   * Replaces the reporter with one aggregating over {@code windowSeconds}, sending what the previous one still held.
+   */
+  static public synchronized void configure(long windowSeconds) {
+    final var previous = reporter;
+    reporter = new ErrorReporter(windowSeconds, Sentry::capture);
+    previous.close();
+  }
+
+  /**
+   * Sends every error still being aggregated and logs the totals for the scan.
+   */
+  static public synchronized void shutdown(Logger summaryLogger) {
+    reporter.close();
+    reporter.logSummary(summaryLogger);
+    reporter = new ErrorReporter(ErrorReporter.DEFAULT_WINDOW_SECONDS, Sentry::capture);
+  }
+
   static public void onDiscoveryException(String resourceType, String resourceName, Region region, AwsServiceException ex) {
-    logger.error("{} - AwsServiceException on {} in {}, with error {}", resourceType, resourceName, region, ex.getMessage());
-    Sentry.capture(new EventBuilder().withMessage(resourceType + " AwsServiceException")
-      .withLevel(Event.Level.WARNING)
-      .withFingerprint(String.valueOf(resourceType), String.valueOf(ex.awsErrorDetails()))
-      .withExtra("Resource", String.valueOf(resourceType))
-      .withSentryInterface(new ExceptionInterface(ex)));
+    final var code = ex.awsErrorDetails() != null && ex.awsErrorDetails().errorCode() != null
+      ? ex.awsErrorDetails().errorCode()
+      : String.valueOf(ex.statusCode());
+    log(reporter.report(resourceType, region, "AwsServiceException", code, Event.Level.WARNING, ex),
+      "{} - AwsServiceException on {} in {}, with error {}", resourceType, resourceName, region, ex.getMessage());
   }
 
   static public void onDiscoveryException(String resourceType, String resourceName, Region region, SdkServiceException ex) {
-    logger.error("{} - SdkServiceException on {} in {}, with error {}", resourceType, resourceName, region, ex.getMessage());
-    Sentry.capture(new EventBuilder().withMessage(resourceType + " SdkServiceException")
-      .withLevel(Event.Level.ERROR)
-      .withExtra("Resource", String.valueOf(resourceType))
-      .withSentryInterface(new ExceptionInterface(ex)));
-
+    if (ex instanceof AwsServiceException) {
+      onDiscoveryException(resourceType, resourceName, region, (AwsServiceException) ex);
+      return;
+    }
+    log(reporter.report(resourceType, region, "SdkServiceException", String.valueOf(ex.statusCode()), Event.Level.ERROR, ex),
+      "{} - SdkServiceException on {} in {}, with error {}", resourceType, resourceName, region, ex.getMessage());
   }
 
 
   static public void onDiscoveryException(String resourceType, String resourceName, Region region, SdkException ex) {
-    logger.error("{} - SdkException on {} in {}, with error {}", resourceType, resourceName, region, ex.getMessage());
-    Sentry.capture(new EventBuilder().withMessage(resourceType + " SdkException")
-      .withLevel(Event.Level.ERROR)
-      .withExtra("Resource", String.valueOf(resourceType))
-      .withSentryInterface(new ExceptionInterface(ex)));
+    if (ex instanceof SdkServiceException) {
+      onDiscoveryException(resourceType, resourceName, region, (SdkServiceException) ex);
+      return;
+    }
+    log(reporter.report(resourceType, region, "SdkException", ex.getClass().getSimpleName(), Event.Level.ERROR, ex),
+      "{} - SdkException on {} in {}, with error {}", resourceType, resourceName, region, ex.getMessage());
   }
 
+  /**
+   * Like the other overloads, this one hands {@code ex} on to the most specific overload for its runtime type, so a
+   * service failure caught as a plain exception, as enrichment steps catch theirs, is still told apart by its error code.
+   */
   static public void onDiscoveryException(String resourceType, String resourceName, Region region, Exception ex) {
-    logger.error("{} - Exception on {} in {}, with error {}", resourceType, resourceName, region, ex.getMessage());
-    Sentry.capture(new EventBuilder().withMessage(resourceType + " Exception")
-      .withLevel(Event.Level.ERROR)
-      .withExtra("Resource", String.valueOf(resourceType))
-      .withSentryInterface(new ExceptionInterface(ex)));
+    if (ex instanceof SdkException) {
+      onDiscoveryException(resourceType, resourceName, region, (SdkException) ex);
+      return;
+    }
+    log(reporter.report(resourceType, region, "Exception", ex.getClass().getSimpleName(), Event.Level.ERROR, ex),
+      "{} - Exception on {} in {}, with error {}", resourceType, resourceName, region, ex.getMessage());
+  }
+
+  /**
+   * Logs the first failure of each resource type, region and error code at ERROR and its repeats at DEBUG. The
+   * repeats are counted in the summary logged at shutdown.
+   */
+  private static void log(boolean first, String format, Object... args) {
+    if (first) {
+      logger.error(format, args);
+    } else {
+      logger.debug(format, args);
+    }
   }
 }
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs discovery tasks in parallel, bounded by a global limit as well as limits per account and per service.
+ *
+ * Tasks are dispatched from a pending list per account, taking turns between accounts: whenever a thread is free,
+ * the next account in turn that is under its limit starts its first task whose service is under its limit.  A task
+ * held back by its service's limit therefore never occupies a thread that a task for another service could use, and
+ * an account with thousands of tasks can't keep the others waiting behind it.  Each account's start and finish is
+ * logged as it happens.
+ *
+ * An async task holds a thread only while it starts its work; it counts against the limits until the stage it returns
+ * completes.
+ */
+public class DiscoveryScheduler {
+
+  public static class Task {
+    private final String account;
+    private final String service;
+    private final Supplier<? extends CompletionStage<?>> work;
+
+    /**
+     * @param account The account the task runs against, or any stable key for it such as a role ARN.
+     */
+    public Task(String account, String service, Runnable work) {
+      this(account, service, () -> {
+        work.run();
+        return null;
+      });
+    }
+
+    private Task(String account, String service, Supplier<? extends CompletionStage<?>> work) {
+      this.account = account;
+      this.service = service;
+      this.work = work;
+    }
+
+    /**
+     * A task that has finished once the stage returned by {@code work} completes.
+     */
+    public static Task async(String account, String service, Supplier<? extends CompletionStage<?>> work) {
+      return new Task(account, service, work);
+    }
+  }
+
+  private final int maxConcurrency;
+  private final int maxPerAccount;
+  private final int maxPerService;
+  private final int maxAccountsInFlight;
+  private final Logger logger;
+
+  private final Map<String, Integer> runningByAccount = new HashMap<>();
+  private final Map<String, Integer> runningByService = new HashMap<>();
+  private final Map<String, Progress> progress = new HashMap<>();
+  private int running;
+  private int accountsInFlight;
+  private int accountsDone;
+  private Error fatal;
+
+  /**
+   * Limits of zero or less are treated as unbounded, except the global one, which is at least one.
+   */
+  public DiscoveryScheduler(int maxConcurrency, int maxPerAccount, int maxPerService, Logger logger) {
+    this(maxConcurrency, maxPerAccount, maxPerService, 0, logger);
+  }
+
+  /**
+   * @param maxAccountsInFlight How many accounts may have started but not finished at once. Further accounts wait
+   *                            for one to finish, so each account's discovery completes as soon as it can.
+   */
+  public DiscoveryScheduler(int maxConcurrency, int maxPerAccount, int maxPerService, int maxAccountsInFlight, Logger logger) {
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.maxPerAccount = maxPerAccount > 0 ? maxPerAccount : Integer.MAX_VALUE;
+    this.maxPerService = maxPerService > 0 ? maxPerService : Integer.MAX_VALUE;
+    this.maxAccountsInFlight = maxAccountsInFlight > 0 ? maxAccountsInFlight : Integer.MAX_VALUE;
+    this.logger = logger;
+  }
+
+  /**
+   * Run every task, returning once all have completed.  Tasks are expected to handle their own errors; an exception
+   * that escapes is logged and doesn't affect the others, while an {@link Error} fails the run by being rethrown here.
+   */
+  public synchronized void run(List<Task> tasks) throws InterruptedException {
+    final var pending = new LinkedHashMap<String, LinkedList<Task>>();
+    tasks.forEach(task -> pending.computeIfAbsent(task.account, a -> new LinkedList<>()).add(task));
+    progress.clear();
+    accountsDone = 0;
+    fatal = null;
+    pending.forEach((account, accountTasks) -> progress.put(account, new Progress(accountTasks.size())));
+    final var rotation = new LinkedList<>(pending.keySet());
+
+    final var executor = newExecutor(Math.min(maxConcurrency, Math.max(1, tasks.size())));
+    try {
+      while (!rotation.isEmpty() || running > 0) {
+        dispatch(rotation, pending, executor);
+        // Woken whenever a task completes and frees up capacity.
+        wait();
+        if (fatal != null) {
+          throw fatal;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Takes turns between accounts, starting at most one task for each per turn. An account that was given a task goes to
+   * the back of the rotation, so a slot freed by a large account is offered to the others first.
+   */
+  private void dispatch(LinkedList<String> rotation, Map<String, LinkedList<Task>> pending, ExecutorService executor) {
+    var started = true;
+    while (started && running < maxConcurrency) {
+      started = false;
+      for (int i = rotation.size(); i > 0 && running < maxConcurrency; i--) {
+        final var account = rotation.removeFirst();
+        final var accountTasks = pending.get(account);
+        final var task = next(account, accountTasks);
+        if (task != null) {
+          start(task, executor);
+          started = true;
+        }
+        if (accountTasks.isEmpty()) {
+          pending.remove(account);
+        } else {
+          rotation.addLast(account);
+        }
+      }
+    }
+  }
+
+  /**
+   * The first of an account's tasks whose service is under its limit, if the account is under its own.
+   */
+  @Nullable
+  private Task next(String account, LinkedList<Task> accountTasks) {
+    if (runningByAccount.getOrDefault(account, 0) >= maxPerAccount) {
+      return null;
+    }
+    if (!progress.get(account).isStarted() && accountsInFlight >= maxAccountsInFlight) {
+      return null;
+    }
+    for (Iterator<Task> it = accountTasks.iterator(); it.hasNext(); ) {
+      final var task = it.next();
+      if (runningByService.getOrDefault(task.service, 0) < maxPerService) {
+        it.remove();
+        return task;
+      }
+    }
+    return null;
+  }
+
+  private void start(Task task, ExecutorService executor) {
+    final var accountProgress = progress.get(task.account);
+    if (!accountProgress.isStarted()) {
+      accountProgress.startedNanos = System.nanoTime();
+      accountsInFlight++;
+      logger.info("Starting discovery of {}: {} tasks", task.account, accountProgress.total);
+    }
+    running++;
+    runningByAccount.merge(task.account, 1, Integer::sum);
+    runningByService.merge(task.service, 1, Integer::sum);
+    executor.execute(() -> execute(task));
+  }
+
+  private void execute(Task task) {
+    final CompletionStage<?> stage;
+    try {
+      stage = task.work.get();
+    } catch (RuntimeException ex) {
+      logger.error("Discovery task for {} in {} failed", task.service, task.account, ex);
+      release(task);
+      return;
+    } catch (Error err) {
+      logger.error("Discovery task for {} in {} failed", task.service, task.account, err);
+      fail(task, err);
+      return;
+    }
+    if (stage == null) {
+      release(task);
+      return;
+    }
+    stage.whenComplete((v, ex) -> {
+      if (ex != null) {
+        logger.error("Discovery task for {} in {} failed", task.service, task.account, ex);
+      }
+      release(task);
+    });
+  }
+
+  private synchronized void fail(Task task, Error err) {
+    if (fatal == null) {
+      fatal = err;
+    }
+    release(task);
+  }
+
+  private synchronized void release(Task task) {
+    running--;
+    runningByAccount.merge(task.account, -1, Integer::sum);
+    runningByService.merge(task.service, -1, Integer::sum);
+
+    final var accountProgress = progress.get(task.account);
+    accountProgress.completed++;
+    logger.debug("{}: {} of {} tasks complete", task.account, accountProgress.completed, accountProgress.total);
+    if (accountProgress.completed == accountProgress.total) {
+      accountsInFlight--;
+      accountsDone++;
+      logger.info("Finished discovery of {}: {} tasks in {}s, {} of {} accounts done", task.account, accountProgress.total,
+        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - accountProgress.startedNanos), accountsDone, progress.size());
+    }
+    notifyAll();
+  }
+
+  private static final class Progress {
+    private final int total;
+    private int completed;
+    private long startedNanos = -1;
+
+    private Progress(int total) {
+      this.total = total;
+    }
+
+    private boolean isStarted() {
+      return startedNanos != -1;
+    }
+  }
+
+  private static ExecutorService newExecutor(int threads) {
+    final var count = new AtomicInteger();
+    return Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "aws-discovery-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import io.sentry.event.Event;
+import io.sentry.event.EventBuilder;
+import io.sentry.event.interfaces.ExceptionInterface;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Aggregates discovery errors by resource type, region and error code, and sends one event per combination and time
+ * window, with its count, from a thread of its own.
+ *
+ * {@link #report} only counts, so a service denied across an account costs discovery a map update per failure rather
+ * than an outbound call. At most {@link #MAX_PENDING} combinations await their window at once. Beyond that, new ones
+ * are counted in the totals but not sent.
+ */
+public class ErrorReporter implements AutoCloseable {
+
+  public static final int DEFAULT_WINDOW_SECONDS = 60;
+
+  static final int MAX_PENDING = 1024;
+
+  private final long windowMillis;
+  private final LongSupplier clock;
+  private final Consumer<EventBuilder> sink;
+  @Nullable
+  private final ScheduledExecutorService scheduler;
+  private final Map<Key, Aggregate> pending = new ConcurrentHashMap<>();
+  private final Map<Key, LongAdder> totals = new ConcurrentHashMap<>();
+  private final LongAdder dropped = new LongAdder();
+
+  public ErrorReporter(long windowSeconds, Consumer<EventBuilder> sink) {
+    this(TimeUnit.SECONDS.toMillis(windowSeconds), System::currentTimeMillis, sink, Executors.newSingleThreadScheduledExecutor(r -> {
+      final var thread = new Thread(r, "aws-error-reporter");
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+
+  ErrorReporter(long windowMillis, LongSupplier clock, Consumer<EventBuilder> sink, @Nullable ScheduledExecutorService scheduler) {
+    this.windowMillis = Math.max(0, windowMillis);
+    this.clock = clock;
+    this.sink = sink;
+    this.scheduler = scheduler;
+    if (scheduler != null) {
+      final var period = Math.max(100, Math.min(1000, this.windowMillis));
+      scheduler.scheduleWithFixedDelay(() -> flush(false), period, period, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Counts {@code ex} against its resource type, region and error code. Never blocks on sending.
+   *
+   * @param kind  names the event, as in "{@code <resourceType> <kind>}"
+   * @param code  the service's error code, or whatever best tells one failure from another
+   * @return True if this is the first time the combination has been reported, so callers can log it in full once and
+   * leave the repeats to {@link #logSummary}.
+   */
+  public boolean report(String resourceType, @Nullable Object region, String kind, String code, Event.Level level, Exception ex) {
+    final var key = new Key(String.valueOf(resourceType), String.valueOf(region), kind, code);
+    final var first = new boolean[1];
+    totals.computeIfAbsent(key, k -> {
+      first[0] = true;
+      return new LongAdder();
+    }).increment();
+
+    final var now = clock.getAsLong();
+    if (pending.size() >= MAX_PENDING && !pending.containsKey(key)) {
+      dropped.increment();
+      return first[0];
+    }
+    pending.compute(key, (k, aggregate) -> aggregate == null ? new Aggregate(level, ex, now) : aggregate.add(now));
+    return first[0];
+  }
+
+  /**
+   * Sends the combinations whose window has closed, or all of them if {@code all}.
+   */
+  void flush(boolean all) {
+    final var now = clock.getAsLong();
+    pending.forEach((key, aggregate) -> {
+      if (all || now - aggregate.first >= windowMillis) {
+        // Only remove what was looked at, so a report racing the flush starts the next window rather than being lost.
+        if (pending.remove(key, aggregate)) {
+          send(key, aggregate);
+        }
+      }
+    });
+  }
+
+  private void send(Key key, Aggregate aggregate) {
+    try {
+      sink.accept(new EventBuilder().withMessage(key.resourceType + " " + key.kind)
+        .withLevel(aggregate.level)
+        .withFingerprint(key.resourceType, key.region, key.code)
+        .withExtra("Resource", key.resourceType)
+        .withExtra("Region", key.region)
+        .withExtra("ErrorCode", key.code)
+        .withExtra("Occurrences", aggregate.count)
+        .withExtra("FirstSeen", Instant.ofEpochMilli(aggregate.first).toString())
+        .withExtra("LastSeen", Instant.ofEpochMilli(aggregate.last).toString())
+        .withSentryInterface(new ExceptionInterface(aggregate.sample)));
+    } catch (RuntimeException ex) {
+      // Reporting must never take discovery down with it.
+    }
+  }
+
+  public long getTotal() {
+    return totals.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Logs how many times each resource type, region and error code failed over the scan, most frequent first.
+   */
+  public void logSummary(Logger logger) {
+    final var total = getTotal();
+    if (total == 0) {
+      return;
+    }
+    logger.info("{} discovery errors of {} kinds ({} not reported for exceeding {} kinds at once)",
+      total, totals.size(), getDropped(), MAX_PENDING);
+    totals.entrySet().stream()
+      .sorted(Comparator.comparingLong((Map.Entry<Key, LongAdder> e) -> e.getValue().sum()).reversed())
+      .forEach(e -> logger.info("  {} x{}", e.getKey(), e.getValue().sum()));
+  }
+
+  /**
+   * Sends everything still pending, then stops the reporting thread.
+   */
+  @Override
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush(true);
+  }
+
+  private static final class Key {
+    private final String resourceType;
+    private final String region;
+    private final String kind;
+    private final String code;
+
+    private Key(String resourceType, String region, String kind, String code) {
+      this.resourceType = resourceType;
+      this.region = region;
+      this.kind = kind;
+      this.code = code;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final var key = (Key) o;
+      return resourceType.equals(key.resourceType) && region.equals(key.region) && kind.equals(key.kind) && code.equals(key.code);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(resourceType, region, kind, code);
+    }
+
+    @Override
+    public String toString() {
+      return resourceType + " in " + region + ": " + kind + " " + code;
+    }
+  }
+
+  // Only touched inside ConcurrentHashMap.compute, which serializes updates to one key.
+  private static final class Aggregate {
+    private final Event.Level level;
+    private final Exception sample;
+    private final long first;
+    private long last;
+    private long count = 1;
+
+    private Aggregate(Event.Level level, Exception sample, long now) {
+      this.level = level;
+      this.sample = sample;
+      this.first = now;
+      this.last = now;
+    }
+
+    private Aggregate add(long now) {
+      last = now;
+      count++;
+      return this;
+    }
+  }
+}
@@ -1,8 +1,35 @@
 package io.openraven.magpie.plugins.aws.discovery;
 
 import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.function.Supplier;
 
 @FunctionalInterface
 public interface MagpieAWSClientCreator {
   <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT> BuilderT apply(AwsClientBuilder<BuilderT,ClientT> builder);
+
+  /**
+   * Returns a shared client configured by {@link #apply}. The client is owned by the creator's {@link ClientRegistry}
+   * and must not be closed by the caller.
+   */
+  default <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT extends SdkClient> ClientT client(Supplier<BuilderT> builder) {
+    return ClientRegistry.SHARED.client(this, null, builder, this::apply);
+  }
+
+  /**
+   * As {@link #client(Supplier)}, for a region other than the one the creator was made for.
+   */
+  default <BuilderT extends AwsClientBuilder<BuilderT, ClientT>, ClientT extends SdkClient> ClientT client(Supplier<BuilderT> builder, Region region) {
+    return ClientRegistry.SHARED.client(this, region, builder, b -> apply(b).region(region));
+  }
+
+  /**
+   * Returns the {@code type} shared by every caller discovering in {@code region} with this creator's credentials,
+   * creating it with {@code value} on first use. See {@link ClientRegistry#shared}.
+   */
+  default <T> T shared(Region region, Class<T> type, Supplier<? extends T> value) {
+    return ClientRegistry.SHARED.shared(this, region, type, value);
+  }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.slf4j.Logger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataQuery;
+import software.amazon.awssdk.services.cloudwatch.model.MetricStat;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Collects the CloudWatch metrics a discovery needs for a region up front and fetches them with GetMetricData, up to
+ * {@link #MAX_QUERIES} metrics per call, rather than issuing a GetMetricStatistics call per resource.
+ *
+ * Each metric resolves to the largest value the requested statistic took over the same window and period used by
+ * {@link AWSUtils#getCloudwatchMetricStatistics}.
+ */
+public class MetricDataPrefetcher {
+
+  /** The most queries GetMetricData accepts in one request. */
+  public static final int MAX_QUERIES = 500;
+
+  private final CloudWatchClient client;
+  private final Logger logger;
+
+  private final Map<List<Object>, String> queryIds = new LinkedHashMap<>();
+  private final Map<String, MetricDataQuery> queries = new LinkedHashMap<>();
+  private final Map<String, Double> results = new HashMap<>();
+  private final Set<String> fetched = new HashSet<>();
+
+  public MetricDataPrefetcher(CloudWatchClient client, Logger logger) {
+    this.client = client;
+    this.logger = logger;
+  }
+
+  /**
+   * Registers a metric to be retrieved by the next {@link #fetch()}. Registering the same metric twice is harmless.
+   */
+  public void add(String namespace, String metric, Statistic statistic, List<Dimension> dimensions) {
+    queryIds.computeIfAbsent(key(namespace, metric, statistic, dimensions), k -> {
+      // Ids must start with a lowercase letter and be unique within a request.
+      final var id = "m" + queries.size();
+      queries.put(id, MetricDataQuery.builder()
+        .id(id)
+        .metricStat(MetricStat.builder()
+          .metric(Metric.builder().namespace(namespace).metricName(metric).dimensions(dimensions).build())
+          .period(AWSUtils.METRICS_PERIOD_SECONDS)
+          .stat(statistic.toString())
+          .build())
+        .returnData(true)
+        .build());
+      return id;
+    });
+  }
+
+  /**
+   * Retrieves every registered metric that hasn't been fetched yet. A failed batch is logged and its metrics are left
+   * without values, as a failed GetMetricStatistics call would leave a single resource without them.
+   */
+  public void fetch() {
+    final var pending = new ArrayList<MetricDataQuery>();
+    queries.values().stream()
+      .filter(query -> fetched.add(query.id()))
+      .forEach(pending::add);
+
+    final var start = AWSUtils.metricsWindowStart();
+    final var end = AWSUtils.metricsWindowEnd();
+    for (int from = 0; from < pending.size(); from += MAX_QUERIES) {
+      final var batch = pending.subList(from, Math.min(from + MAX_QUERIES, pending.size()));
+      try {
+        String nextToken = null;
+        do {
+          final var response = client.getMetricData(GetMetricDataRequest.builder()
+            .startTime(start)
+            .endTime(end)
+            .metricDataQueries(batch)
+            .nextToken(nextToken)
+            .build());
+          response.metricDataResults().forEach(result ->
+            result.values().forEach(value -> results.merge(result.id(), value, Math::max)));
+          nextToken = response.nextToken();
+        } while (nextToken != null);
+      } catch (SdkServiceException | SdkClientException ex) {
+        logger.warn("Unable to fetch {} CloudWatch metrics - {}", batch.size(), ex.getMessage());
+        logger.debug("Details", ex);
+      }
+    }
+  }
+
+  public Optional<Double> get(String namespace, String metric, Statistic statistic, List<Dimension> dimensions) {
+    final var id = queryIds.get(key(namespace, metric, statistic, dimensions));
+    return id == null ? Optional.empty() : Optional.ofNullable(results.get(id));
+  }
+
+  public Optional<Long> getLong(String namespace, String metric, Statistic statistic, List<Dimension> dimensions) {
+    return get(namespace, metric, statistic, dimensions).map(Double::longValue);
+  }
+
+  private static List<Object> key(String namespace, String metric, Statistic statistic, List<Dimension> dimensions) {
+    return List.of(namespace, metric, statistic, List.copyOf(dimensions));
+  }
+}
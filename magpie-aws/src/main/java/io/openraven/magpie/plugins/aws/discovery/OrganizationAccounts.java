@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import software.amazon.awssdk.services.organizations.OrganizationsClient;
+import software.amazon.awssdk.services.organizations.model.AccountStatus;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The member accounts of an AWS organization, as the roles discovery assumes in them.
+ */
+class OrganizationAccounts {
+
+  static final String ACCOUNT_ID = "{accountId}";
+
+  /**
+   * @param client   a client for the organization's management account, or a delegated administrator
+   * @param template a role ARN with {@value #ACCOUNT_ID} in place of the account ID
+   * @return one role ARN per active member account, in the order Organizations lists them
+   */
+  static List<String> roleArns(OrganizationsClient client, String template) {
+    return client.listAccountsPaginator().stream()
+      .flatMap(page -> page.accounts().stream())
+      .filter(account -> account.status() == AccountStatus.ACTIVE)
+      .map(account -> roleArn(template, account.id()))
+      .collect(Collectors.toList());
+  }
+
+  static String roleArn(String template, String accountId) {
+    if (!template.contains(ACCOUNT_ID)) {
+      throw new IllegalArgumentException("organizationRoleTemplate has no " + ACCOUNT_ID + " placeholder: " + template);
+    }
+    return template.replace(ACCOUNT_ID, accountId);
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import software.amazon.awssdk.awscore.AwsExecutionAttribute;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.RetryPolicyContext;
+import software.amazon.awssdk.core.retry.RetryUtils;
+import software.amazon.awssdk.core.retry.conditions.RetryCondition;
+import software.amazon.awssdk.http.async.AsyncExecuteRequest;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * One {@link AdaptiveRateLimiter} per account, region and service, applied to SDK clients through their override
+ * configuration. Every attempt of every call, retries included, waits for a token; throttling responses slow the
+ * limiter down and successful calls speed it back up.
+ *
+ * Sync clients wait on the thread making the call. Async clients don't hold a thread while they wait: their requests
+ * go through a {@link LimitedAsyncHttpClient}, which sends each one once its token has been granted.
+ */
+public class RateLimiters {
+
+  public static final double DEFAULT_RATE = 20;
+  public static final double DEFAULT_MAX_RATE = 200;
+
+  // The attempt whose throttling has been counted, as the SDK may show the same failure to a retry condition twice.
+  private static final ExecutionAttribute<Integer> THROTTLE_COUNTED = new ExecutionAttribute<>("MagpieThrottleCounted");
+
+  private final double rate;
+  private final double maxRate;
+  private final Map<String, AdaptiveRateLimiter> limiters = new ConcurrentHashMap<>();
+
+  public RateLimiters(double rate, double maxRate) {
+    this.rate = rate;
+    this.maxRate = maxRate;
+  }
+
+  public AdaptiveRateLimiter limiter(Object credentials, String region, String service) {
+    return limiters.computeIfAbsent(credentials + "|" + region + "|" + service, k -> new AdaptiveRateLimiter(rate, maxRate));
+  }
+
+  /**
+   * Override configuration routing the calls of a sync client built for {@code credentials} through their limiters. It
+   * replaces the client's retry policy with the SDK's default one, observed by the limiters.
+   */
+  public ClientOverrideConfiguration overrideConfiguration(Object credentials) {
+    return overrideConfiguration(credentials, new ExecutionInterceptor() {
+      @Override
+      public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        limiter(credentials, executionAttributes).acquire();
+      }
+    });
+  }
+
+  /**
+   * As {@link #overrideConfiguration(Object)}, for an async client built for {@code credentials} with {@code http} as
+   * its HTTP client. The calls wait for their tokens in {@code http} rather than on the thread making them.
+   */
+  public ClientOverrideConfiguration overrideConfiguration(Object credentials, LimitedAsyncHttpClient http) {
+    return overrideConfiguration(credentials, new ExecutionInterceptor() {
+      @Override
+      public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        // A client only ever calls one service in one region, so its first call settles the limiter.
+        if (http.limiter == null) {
+          http.limiter = limiter(credentials, executionAttributes);
+        }
+      }
+    });
+  }
+
+  private ClientOverrideConfiguration overrideConfiguration(Object credentials, ExecutionInterceptor interceptor) {
+    return ClientOverrideConfiguration.builder()
+      .addExecutionInterceptor(interceptor)
+      .retryPolicy(RetryPolicy.builder().retryCondition(new ThrottleObserver(credentials, RetryCondition.defaultRetryCondition())).build())
+      .build();
+  }
+
+  public long getThrottles() {
+    return limiters.values().stream().mapToLong(AdaptiveRateLimiter::getThrottles).sum();
+  }
+
+  public long getWaits() {
+    return limiters.values().stream().mapToLong(AdaptiveRateLimiter::getWaits).sum();
+  }
+
+  public long getWaitedMillis() {
+    return limiters.values().stream().mapToLong(AdaptiveRateLimiter::getWaitedMillis).sum();
+  }
+
+  /**
+   * Visits every limiter with its "account|region|service" key.
+   */
+  public void forEach(BiConsumer<String, AdaptiveRateLimiter> action) {
+    limiters.forEach(action);
+  }
+
+  private AdaptiveRateLimiter limiter(Object credentials, ExecutionAttributes executionAttributes) {
+    return limiter(credentials,
+      String.valueOf(executionAttributes.getAttribute(AwsExecutionAttribute.AWS_REGION)),
+      executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME));
+  }
+
+  /**
+   * Wraps the HTTP client of one async client, delaying each of its requests, retries included, until the limiter of the
+   * client's account, region and service grants a token. Closing it leaves the wrapped client open.
+   */
+  public static final class LimitedAsyncHttpClient implements SdkAsyncHttpClient {
+    private final SdkAsyncHttpClient delegate;
+    private volatile AdaptiveRateLimiter limiter;
+
+    public LimitedAsyncHttpClient(SdkAsyncHttpClient delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public CompletableFuture<Void> execute(AsyncExecuteRequest request) {
+      final var limiter = this.limiter;
+      if (limiter == null) {
+        return delegate.execute(request);
+      }
+      return limiter.acquireAsync().thenCompose(v -> delegate.execute(request));
+    }
+
+    @Override
+    public String clientName() {
+      return delegate.clientName();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private class ThrottleObserver implements RetryCondition {
+    private final Object credentials;
+    private final RetryCondition delegate;
+
+    ThrottleObserver(Object credentials, RetryCondition delegate) {
+      this.credentials = credentials;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean shouldRetry(RetryPolicyContext context) {
+      observe(context);
+      return delegate.shouldRetry(context);
+    }
+
+    @Override
+    public void requestWillNotBeRetried(RetryPolicyContext context) {
+      observe(context);
+      delegate.requestWillNotBeRetried(context);
+    }
+
+    @Override
+    public void requestSucceeded(RetryPolicyContext context) {
+      limiter(credentials, context.executionAttributes()).onSuccess();
+      delegate.requestSucceeded(context);
+    }
+
+    private void observe(RetryPolicyContext context) {
+      if (context.exception() == null || !RetryUtils.isThrottlingException(context.exception())) {
+        return;
+      }
+      final var attributes = context.executionAttributes();
+      final Integer attempt = context.totalRequests();
+      if (!attempt.equals(attributes.getAttribute(THROTTLE_COUNTED))) {
+        attributes.putAttribute(THROTTLE_COUNTED, attempt);
+        limiter(credentials, attributes).onThrottle();
+      }
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieAwsResource;
+import org.slf4j.Logger;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the enrichment steps of discovered resources concurrently, on a pool of {@link #getConcurrency()} threads owned
+ * by a single service's discovery in a single region.
+ *
+ * Each step is handed a scratch copy of the resource carrying its identity and configuration but empty supplementary
+ * configuration and tags. Once the step returns, what it added is merged into the real resource, one step at a time.
+ * A resource is passed on to its completion callback once every step has been merged, so steps may be written exactly
+ * as they would be when run in sequence against the real resource.
+ *
+ * A step that throws is reported and the resource is completed with whatever the other steps gathered.
+ */
+public class ResourceEnricher implements AutoCloseable {
+
+  public static final int DEFAULT_CONCURRENCY = 8;
+
+  // Resources held in memory awaiting their steps, per thread, before enrich() blocks the listing that feeds it.
+  private static final int IN_FLIGHT_PER_THREAD = 4;
+
+  private static volatile int concurrency = DEFAULT_CONCURRENCY;
+
+  private final ObjectMapper mapper;
+  private final Region region;
+  private final Logger logger;
+  private final ExecutorService executor;
+  private final Semaphore inFlight;
+  private final Phaser outstanding = new Phaser(1);
+
+  public ResourceEnricher(ObjectMapper mapper, Region region, Logger logger) {
+    this(mapper, region, logger, concurrency);
+  }
+
+  public ResourceEnricher(ObjectMapper mapper, Region region, Logger logger, int threads) {
+    this.mapper = mapper;
+    this.region = region;
+    this.logger = logger;
+    final var poolSize = Math.max(1, threads);
+    final var threadNumber = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(poolSize, r -> {
+      final var thread = new Thread(r, "aws-enrich-" + region + "-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.inFlight = new Semaphore(poolSize * IN_FLIGHT_PER_THREAD);
+  }
+
+  public static int getConcurrency() {
+    return concurrency;
+  }
+
+  public static void setConcurrency(int concurrency) {
+    ResourceEnricher.concurrency = Math.max(1, concurrency);
+  }
+
+  /**
+   * Queues {@code steps} for {@code resource}, calling {@code onComplete} with {@code data} from a pool thread once they
+   * have all run. Blocks while too many resources are already waiting on their steps.
+   */
+  public <T> void enrich(T resource, MagpieAwsResource data, List<? extends Enrichment<? super T>> steps, Consumer<MagpieAwsResource> onComplete) {
+    if (steps.isEmpty()) {
+      complete(data, onComplete);
+      return;
+    }
+
+    inFlight.acquireUninterruptibly();
+    outstanding.register();
+    final var remaining = new AtomicInteger(steps.size());
+    steps.forEach(step -> executor.execute(() -> {
+      try {
+        final var scratch = scratchCopy(mapper, data);
+        step.enrich(resource, scratch);
+        merge(scratch, data);
+      } catch (Exception ex) {
+        DiscoveryExceptions.onDiscoveryException(data.resourceType, data.resourceName, region, ex);
+      } finally {
+        if (remaining.decrementAndGet() == 0) {
+          complete(data, onComplete);
+          inFlight.release();
+          outstanding.arriveAndDeregister();
+        }
+      }
+    }));
+  }
+
+  /**
+   * Waits for every queued resource to complete, then releases the pool.
+   */
+  @Override
+  public void close() {
+    outstanding.arriveAndAwaitAdvance();
+    executor.shutdown();
+  }
+
+  private void complete(MagpieAwsResource data, Consumer<MagpieAwsResource> onComplete) {
+    try {
+      onComplete.accept(data);
+    } catch (Exception ex) {
+      logger.warn("Unable to complete {} {}", data.resourceType, data.arn, ex);
+    }
+  }
+
+  static MagpieAwsResource scratchCopy(ObjectMapper mapper, MagpieAwsResource data) {
+    return new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, data.arn)
+      .withResourceName(data.resourceName)
+      .withResourceId(data.resourceId)
+      .withResourceType(data.resourceType)
+      .withAccountId(data.awsAccountId)
+      .withAwsRegion(data.awsRegion)
+      .withCreatedIso(data.createdIso)
+      .withConfiguration(data.configuration)
+      .build();
+  }
+
+  static void merge(MagpieAwsResource scratch, MagpieAwsResource data) {
+    synchronized (data) {
+      // The scratch copy is discarded afterwards, so what it gathered is moved over rather than copied.
+      AWSUtils.merge(data.supplementaryConfiguration, scratch.supplementaryConfiguration);
+      AWSUtils.merge(data.tags, scratch.tags);
+      if (scratch.sizeInBytes != null) {
+        data.sizeInBytes = scratch.sizeInBytes;
+      }
+      if (scratch.maxSizeInBytes != null) {
+        data.maxSizeInBytes = scratch.maxSizeInBytes;
+      }
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import software.amazon.awssdk.core.SdkField;
+import software.amazon.awssdk.core.SdkPojo;
+import software.amazon.awssdk.core.protocol.MarshallingType;
+import software.amazon.awssdk.core.traits.DefaultValueTrait;
+import software.amazon.awssdk.core.util.SdkAutoConstructList;
+import software.amazon.awssdk.core.util.SdkAutoConstructMap;
+import software.amazon.awssdk.utils.builder.SdkBuilder;
+import software.amazon.awssdk.utils.builder.ToCopyableBuilder;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts AWS SDK model objects to JSON by walking their {@link SdkPojo#sdkFields()}, rather than having Jackson
+ * introspect and serialize their builders.
+ *
+ * The output is the same as {@code mapper.valueToTree(pojo.toBuilder())}: Jackson is consulted once per class for the
+ * names and order of the builder's properties, and the resulting plan is cached. A class whose builder exposes anything
+ * the plan can't reproduce is handed to Jackson as before.
+ */
+public class SdkPojoConverter {
+
+  // One converter per mapper, so plans built against one mapper's configuration are never applied to another's.
+  private static final Map<ObjectMapper, SdkPojoConverter> CONVERTERS = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private static final Set<JsonInclude.Include> INCLUDES_NULLS = Set.of(JsonInclude.Include.ALWAYS, JsonInclude.Include.USE_DEFAULTS);
+
+  private final ObjectMapper mapper;
+  private final JsonNodeFactory nodes;
+  private final boolean includesNulls;
+  private final boolean instantsAsText;
+  private final Map<Class<?>, Optional<Plan>> plans = new ConcurrentHashMap<>();
+
+  public SdkPojoConverter(ObjectMapper mapper) {
+    this.mapper = mapper;
+    this.nodes = mapper.getNodeFactory();
+    this.includesNulls = INCLUDES_NULLS.contains(mapper.getSerializationConfig().getDefaultPropertyInclusion().getValueInclusion());
+    final JsonNode epoch = mapper.valueToTree(Instant.EPOCH);
+    this.instantsAsText = epoch.isTextual() && epoch.asText().equals(Instant.EPOCH.toString());
+  }
+
+  public static SdkPojoConverter forMapper(ObjectMapper mapper) {
+    return CONVERTERS.computeIfAbsent(mapper, SdkPojoConverter::new);
+  }
+
+  /**
+   * @param pojo a model object, or a builder for one
+   */
+  public JsonNode toTree(@Nullable SdkPojo pojo) {
+    if (pojo == null) {
+      return nodes.nullNode();
+    }
+    final var model = pojo instanceof SdkBuilder ? (SdkPojo) ((SdkBuilder<?, ?>) pojo).build() : pojo;
+
+    return plans.computeIfAbsent(model.getClass(), c -> Optional.ofNullable(plan(model)))
+      .map(plan -> (JsonNode) plan.apply(model))
+      .orElseGet(() -> mapper.valueToTree(model instanceof ToCopyableBuilder ? ((ToCopyableBuilder<?, ?>) model).toBuilder() : model));
+  }
+
+  /**
+   * Pairs each property Jackson would serialize from the model's builder with the field its getter returns. The SDK
+   * names a builder's getters after the members they return, so they're matched on name, ignoring case.
+   *
+   * @return null if the builder can't be reproduced field for field
+   */
+  @Nullable
+  private Plan plan(SdkPojo model) {
+    if (!includesNulls || !(model instanceof ToCopyableBuilder)) {
+      return null;
+    }
+
+    final var fieldsByName = new HashMap<String, SdkField<?>>();
+    for (SdkField<?> field : model.sdkFields()) {
+      // Defaulted fields (idempotency tokens) would be generated rather than read, and documents have no bean form.
+      if (field.containsTrait(DefaultValueTrait.class) || field.marshallingType() == MarshallingType.DOCUMENT) {
+        return null;
+      }
+      fieldsByName.put(field.memberName().toLowerCase(Locale.ROOT), field);
+    }
+
+    final var builderType = ((ToCopyableBuilder<?, ?>) model).toBuilder().getClass();
+    final var description = mapper.getSerializationConfig().introspect(mapper.constructType(builderType));
+    final var names = new ArrayList<String>();
+    final var fields = new ArrayList<SdkField<?>>();
+    for (BeanPropertyDefinition property : description.findProperties()) {
+      if (!property.couldSerialize()) {
+        continue;
+      }
+      final var getter = property.getGetter();
+      if (getter == null || !getter.getName().startsWith("get")) {
+        return null;
+      }
+      final var field = fieldsByName.get(getter.getName().substring(3).toLowerCase(Locale.ROOT));
+      if (field == null) {
+        return null;
+      }
+      names.add(property.getName());
+      fields.add(field);
+    }
+    return new Plan(names, fields);
+  }
+
+  /**
+   * As {@code mapper.valueToTree(value)}, converting any model objects and builders it holds with {@link #toTree}.
+   * A {@link JsonNode} is returned as is.
+   */
+  public JsonNode valueToTree(@Nullable Object value) {
+    if (value == null) {
+      return nodes.nullNode();
+    } else if (value instanceof JsonNode) {
+      return (JsonNode) value;
+    } else if (value instanceof String) {
+      return nodes.textNode((String) value);
+    } else if (value instanceof Integer) {
+      return nodes.numberNode(((Integer) value).intValue());
+    } else if (value instanceof Long) {
+      return nodes.numberNode(((Long) value).longValue());
+    } else if (value instanceof Boolean) {
+      return nodes.booleanNode((Boolean) value);
+    } else if (value instanceof Instant && instantsAsText) {
+      return nodes.textNode(value.toString());
+    } else if (value instanceof SdkPojo) {
+      return toTree((SdkPojo) value);
+    } else if (value instanceof Collection) {
+      final ArrayNode array = nodes.arrayNode();
+      ((Collection<?>) value).forEach(element -> array.add(valueToTree(element)));
+      return array;
+    } else if (value instanceof Map) {
+      final ObjectNode object = nodes.objectNode();
+      ((Map<?, ?>) value).forEach((key, element) -> object.set(String.valueOf(key), valueToTree(element)));
+      return object;
+    }
+    // Shorts, floats, doubles, decimals and bytes: rare enough to leave to the mapper
+    return mapper.valueToTree(value);
+  }
+
+  private final class Plan {
+    private final List<String> names;
+    private final List<SdkField<?>> fields;
+
+    private Plan(List<String> names, List<SdkField<?>> fields) {
+      this.names = names;
+      this.fields = fields;
+    }
+
+    private ObjectNode apply(SdkPojo model) {
+      final var node = nodes.objectNode();
+      for (int i = 0; i < fields.size(); i++) {
+        final var value = fields.get(i).getValueOrDefault(model);
+        // The builders' getters hide collections the service never returned.
+        final var hidden = value instanceof SdkAutoConstructList || value instanceof SdkAutoConstructMap;
+        node.set(names.get(i), hidden ? nodes.nullNode() : valueToTree(value));
+      }
+      return node;
+    }
+  }
+}
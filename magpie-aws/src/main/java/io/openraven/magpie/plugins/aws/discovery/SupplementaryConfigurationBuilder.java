@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Accumulates entries of a resource's supplementary configuration, converting each value once with a
+ * {@link SdkPojoConverter}, then merges them into the resource in one pass.
+ *
+ * {@link AWSUtils#update(JsonNode, JsonNode...)} merges by re-reading everything it's given through Jackson, once per
+ * call. Here an entry the payload doesn't already have is attached as it is, and only a key the payload already holds
+ * goes through that merge.
+ */
+public class SupplementaryConfigurationBuilder {
+
+  private final SdkPojoConverter converter;
+  private final ObjectNode entries;
+
+  public SupplementaryConfigurationBuilder(ObjectMapper mapper) {
+    this.converter = SdkPojoConverter.forMapper(mapper);
+    this.entries = mapper.createObjectNode();
+  }
+
+  /**
+   * @param value a model object or builder, a {@link JsonNode}, or anything else Jackson can serialize. A key put twice
+   *              is merged as {@link AWSUtils#update} would.
+   */
+  public SupplementaryConfigurationBuilder put(String key, @Nullable Object value) {
+    final var node = converter.valueToTree(value);
+    if (entries.has(key)) {
+      final ObjectNode entry = entries.objectNode();
+      entry.set(key, node);
+      AWSUtils.update(entries, entry);
+    } else {
+      entries.set(key, node);
+    }
+    return this;
+  }
+
+  public SupplementaryConfigurationBuilder putAll(Map<String, ?> values) {
+    values.forEach(this::put);
+    return this;
+  }
+
+  /**
+   * Merges the accumulated entries into {@code payload}, which is updated in place when it's an object. The entries are
+   * handed over rather than copied, so the builder is done with once applied.
+   *
+   * @return the merged payload, or the entries themselves if there was no payload
+   */
+  public JsonNode applyTo(@Nullable JsonNode payload) {
+    return AWSUtils.merge(payload, entries);
+  }
+
+  public ObjectNode build() {
+    return entries;
+  }
+}
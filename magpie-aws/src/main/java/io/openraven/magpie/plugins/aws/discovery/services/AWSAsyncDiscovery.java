@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.Emitter;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
+import io.openraven.magpie.plugins.aws.discovery.AsyncResourceEnricher;
+import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
+import org.slf4j.Logger;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A discovery written against the SDK's async clients. The plugin schedules it without holding a thread for the
+ * duration; {@link #discover} is kept for callers that want to block on it.
+ */
+public interface AWSAsyncDiscovery extends AWSDiscovery {
+
+  default CompletableFuture<Void> discoverWrapperAsync(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
+    logger.debug("Starting {} discovery in {}", service(), region);
+    return discoverAsync(mapper, session, region, emitter, logger, account, clientCreator)
+      .whenComplete((v, ex) -> logger.debug("Completed {} discovery in {}", service(), region));
+  }
+
+  /**
+   * Starts discovery, returning a future that completes once every resource found has been emitted.
+   */
+  CompletableFuture<Void> discoverAsync(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator);
+
+  @Override
+  default void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
+    try {
+      discoverAsync(mapper, session, region, emitter, logger, account, clientCreator).join();
+    } catch (CompletionException ex) {
+      final var cause = AWSUtils.unwrap(ex);
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : ex;
+    }
+  }
+
+  default AsyncResourceEnricher asyncEnricher(ObjectMapper mapper, Region region, Logger logger) {
+    return new AsyncResourceEnricher(mapper, region, logger);
+  }
+}
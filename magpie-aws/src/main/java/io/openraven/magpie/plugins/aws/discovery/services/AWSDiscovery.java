@@ -17,13 +17,16 @@
 package io.openraven.magpie.plugins.aws.discovery.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
 import io.openraven.magpie.api.Emitter;
 import io.openraven.magpie.api.MagpieAwsResource;
 import io.openraven.magpie.api.Session;
+import io.openraven.magpie.plugins.aws.discovery.AWSDiscoveryConfig;
 import io.openraven.magpie.plugins.aws.discovery.AWSDiscoveryPlugin;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
 import io.openraven.magpie.plugins.aws.discovery.BackupUtils;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
+import io.openraven.magpie.plugins.aws.discovery.ResourceEnricher;
 import org.slf4j.Logger;
 import software.amazon.awssdk.regions.Region;
 
@@ -34,6 +37,12 @@ public interface AWSDiscovery {
 
   String service();
 
+  /**
+   * Called once the plugin's configuration is known, before any discovery runs.
+   */
+  default void configure(AWSDiscoveryConfig config, Logger logger) {
+  }
+
   default void discoverWrapper(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     logger.debug("Starting {} discovery in {}", service(), region);
     discover(mapper, session, region, emitter, logger, account, clientCreator);
@@ -44,7 +53,15 @@ public interface AWSDiscovery {
 
   default void discoverBackupJobs(String arn, Region region, MagpieAwsResource data, MagpieAWSClientCreator clientCreator, Logger logger) {
     final var backups = BackupUtils.listBackupJobs(arn, region, clientCreator, logger);
-    AWSUtils.update(data.supplementaryConfiguration, Map.of("awsBackupJobs", backups));
+    // A listing that failed is recorded as unknown, not as no backups.
+    AWSUtils.update(data.supplementaryConfiguration, Map.of("awsBackupJobs", backups == null ? NullNode.getInstance() : backups));
+  }
+
+  /**
+   * An enricher for resources discovered in {@code region}. Closing it waits for every resource handed to it.
+   */
+  default ResourceEnricher enricher(ObjectMapper mapper, Region region, Logger logger) {
+    return new ResourceEnricher(mapper, region, logger);
   }
 
   default String fullService() {
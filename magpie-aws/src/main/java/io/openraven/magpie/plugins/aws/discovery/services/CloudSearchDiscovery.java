@@ -60,7 +60,8 @@ public class CloudSearchDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = CloudSearchDomain.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(CloudSearchClient.builder()).build()){
+    try {
+      final var client = clientCreator.client(CloudSearchClient::builder);
       client.describeDomains(DescribeDomainsRequest.builder().domainNames(client.listDomainNames().domainNames().keySet()).build()).domainStatusList()
         .forEach(domain -> {
           var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, domain.arn())
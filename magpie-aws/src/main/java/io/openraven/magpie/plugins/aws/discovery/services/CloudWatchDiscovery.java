@@ -57,10 +57,9 @@ public class CloudWatchDiscovery implements AWSDiscovery {
 
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
-    try (final var client = clientCreator.apply(CloudWatchClient.builder()).build()) {
-      discoverAlarms(mapper, session, region, emitter, client, account);
-      discoverDashboards(mapper, session, region, emitter, client, account);
-    }
+    final var client = clientCreator.client(CloudWatchClient::builder);
+    discoverAlarms(mapper, session, region, emitter, client, account);
+    discoverDashboards(mapper, session, region, emitter, client, account);
   }
 
   private void discoverAlarms(ObjectMapper mapper, Session session, Region region, Emitter emitter, CloudWatchClient client, String account) {
@@ -53,10 +53,9 @@ public class CloudWatchLogsDiscovery implements AWSDiscovery {
 
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
-    try (final var client = clientCreator.apply(CloudWatchLogsClient.builder()).build()) {
-      discoverLogGroups(mapper, session, region, emitter, client, account);
-      discoverLogs(mapper, session, region, emitter, client, account);
-    }
+    final var client = clientCreator.client(CloudWatchLogsClient::builder);
+    discoverLogGroups(mapper, session, region, emitter, client, account);
+    discoverLogs(mapper, session, region, emitter, client, account);
   }
 
   private void discoverLogs(ObjectMapper mapper, Session session, Region region, Emitter emitter, CloudWatchLogsClient client, String account) {
@@ -56,7 +56,8 @@ public class ConfigDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = AwsConfigurationRecorder.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(ConfigClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(ConfigClient::builder);
       client.describeConfigurationRecorders().configurationRecorders()
         .forEach(configurationRecorder -> {
           var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, configurationRecorder.roleARN())
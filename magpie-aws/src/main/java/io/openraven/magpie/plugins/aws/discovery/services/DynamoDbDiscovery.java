@@ -25,6 +25,7 @@ import io.openraven.magpie.data.aws.dynamodb.DynamoDbGlobalTable;
 import io.openraven.magpie.data.aws.dynamodb.DynamoDbTable;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
+import io.openraven.magpie.plugins.aws.discovery.Enrichment;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
 import io.openraven.magpie.plugins.aws.discovery.VersionedMagpieEnvelopeProvider;
 import org.slf4j.Logger;
@@ -61,10 +62,9 @@ public class DynamoDbDiscovery implements AWSDiscovery {
 
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
-    try (final var client = clientCreator.apply(DynamoDbClient.builder()).build()) {
-      discoverGlobalTables(mapper, session, region, emitter, client, account);
-      discoverTables(mapper, session, region, emitter, client, account, clientCreator, logger);
-    }
+    final var client = clientCreator.client(DynamoDbClient::builder);
+    discoverGlobalTables(mapper, session, region, emitter, client, account);
+    discoverTables(mapper, session, region, emitter, client, account, clientCreator, logger);
   }
 
   protected void discoverGlobalTables(ObjectMapper mapper, Session session, Region region, Emitter emitter, DynamoDbClient client, String account) {
@@ -92,7 +92,12 @@ public class DynamoDbDiscovery implements AWSDiscovery {
   protected void discoverTables(ObjectMapper mapper, Session session, Region region, Emitter emitter, DynamoDbClient client, String account, MagpieAWSClientCreator clientCreator, Logger logger) {
     final String RESOURCE_TYPE = DynamoDbTable.RESOURCE_TYPE;
 
-    try {
+    final List<Enrichment<TableDescription>> enrichments = List.of(
+      (table, data) -> discoverContinuousBackups(client, table, data),
+      (table, data) -> discoverTags(client, table, data, mapper),
+      (table, data) -> discoverBackupJobs(table.tableArn(), region, data, clientCreator, logger));
+
+    try (final var enricher = enricher(mapper, region, logger)) {
       client.listTablesPaginator().tableNames().stream()
         .map(tableName -> client.describeTable(DescribeTableRequest.builder().tableName(tableName).build()).table())
         .forEach(table -> {
@@ -107,11 +112,8 @@ public class DynamoDbDiscovery implements AWSDiscovery {
             .build();
 
           discoverSize(data);
-          discoverContinuousBackups(client, table, data);
-          discoverTags(client, table, data, mapper);
-          discoverBackupJobs(table.tableArn(), region, data, clientCreator, logger);
-
-          emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":table"), data.toJsonNode()));
+          enricher.enrich(table, data, enrichments, enriched ->
+            emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":table"), enriched.toJsonNode())));
       });
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
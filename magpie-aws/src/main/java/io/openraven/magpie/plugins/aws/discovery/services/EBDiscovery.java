@@ -64,7 +64,8 @@ public class EBDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = EbEnvironment.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(ElasticBeanstalkClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(ElasticBeanstalkClient::builder);
       client.describeEnvironments().environments().forEach(environment -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, environment.environmentArn())
           .withResourceName(environment.environmentName())
@@ -51,13 +51,12 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.DescribeNetworkAclsRequest;
 import software.amazon.awssdk.services.ec2.model.DescribeSnapshotsRequest;
-import software.amazon.awssdk.services.ec2.model.DescribeVolumesRequest;
 import software.amazon.awssdk.services.ec2.model.DescribeVolumesResponse;
 import software.amazon.awssdk.services.ec2.model.Ec2Exception;
-import software.amazon.awssdk.services.ec2.model.Filter;
 import software.amazon.awssdk.services.ec2.model.Instance;
 import software.amazon.awssdk.services.ec2.model.Snapshot;
 import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.Volume;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -70,7 +69,6 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
-import static io.openraven.magpie.plugins.aws.discovery.AWSUtils.getAwsResponse;
 import static java.lang.String.format;
 
 public class EC2Discovery implements AWSDiscovery {
@@ -83,14 +81,13 @@ public class EC2Discovery implements AWSDiscovery {
 
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(Ec2Client.builder()).build()) {
-      discoverEc2Instances(mapper, session, client, region, emitter, account, clientCreator, logger);
-      discoverEIPs(mapper, session, client, region, emitter, account);
-      discoverSecurityGroups(mapper, session, client, region, emitter, account, logger);
-      discoverVolumes(mapper, session, client, region, emitter, account);
-      discoverSnapshots(mapper, session, client, region, emitter, account, logger);
-      discoverNetworkAcls(mapper, session, client, region, emitter, account);
-    }
+    final var client = clientCreator.client(Ec2Client::builder);
+    discoverEc2Instances(mapper, session, client, region, emitter, account, clientCreator, logger);
+    discoverEIPs(mapper, session, client, region, emitter, account);
+    discoverSecurityGroups(mapper, session, client, region, emitter, account, logger);
+    final var snapshotVolumes = discoverVolumes(mapper, session, client, region, emitter, account);
+    discoverSnapshots(mapper, session, client, region, emitter, account, logger, snapshotVolumes);
+    discoverNetworkAcls(mapper, session, client, region, emitter, account);
   }
 
   @Override
@@ -214,31 +211,44 @@ public class EC2Discovery implements AWSDiscovery {
 
   }
 
-  private void discoverVolumes(ObjectMapper mapper, Session session, Ec2Client client, Region region, Emitter emitter, String account) {
+  /**
+   * @return the region's volumes keyed by the snapshot they were created from, so snapshots can be joined to their
+   * volumes without a DescribeVolumes call each; null if the volumes couldn't be listed.
+   */
+  @Nullable
+  Map<String, List<Volume>> discoverVolumes(ObjectMapper mapper, Session session, Ec2Client client, Region region, Emitter emitter, String account) {
     final String RESOURCE_TYPE = EC2Volume.RESOURCE_TYPE;
     try {
-      client.describeVolumesPaginator().stream()
+      final var volumes = client.describeVolumesPaginator().stream()
         .flatMap(r -> r.volumes().stream())
-        .forEach(volume -> {
-          String arn = format("arn:aws:ec2:%s:%s:volume/%s", region, account, volume.volumeId());
-          var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, arn)
-            .withResourceName(volume.volumeId())
-            .withResourceId(volume.volumeId())
-            .withResourceType(RESOURCE_TYPE)
-            .withConfiguration(mapper.valueToTree(volume.toBuilder()))
-            .withAccountId(account)
-            .withAwsRegion(region.toString())
-            .withTags(getConvertedTags(volume.tags(), mapper))
-            .build();
+        .collect(Collectors.toList());
 
-          emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(AWSDiscoveryPlugin.ID + ":Volume"), data.toJsonNode()));
-        });
+      volumes.forEach(volume -> {
+        String arn = format("arn:aws:ec2:%s:%s:volume/%s", region, account, volume.volumeId());
+        var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, arn)
+          .withResourceName(volume.volumeId())
+          .withResourceId(volume.volumeId())
+          .withResourceType(RESOURCE_TYPE)
+          .withConfiguration(mapper.valueToTree(volume.toBuilder()))
+          .withAccountId(account)
+          .withAwsRegion(region.toString())
+          .withTags(getConvertedTags(volume.tags(), mapper))
+          .build();
+
+        emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(AWSDiscoveryPlugin.ID + ":Volume"), data.toJsonNode()));
+      });
+
+      return volumes.stream()
+        .filter(volume -> volume.snapshotId() != null && !volume.snapshotId().isEmpty())
+        .collect(Collectors.groupingBy(Volume::snapshotId));
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
+      return null;
     }
   }
 
-  private void discoverSnapshots(ObjectMapper mapper, Session session, Ec2Client client, Region region, Emitter emitter, String account, Logger logger) {
+  void discoverSnapshots(ObjectMapper mapper, Session session, Ec2Client client, Region region, Emitter emitter, String account, Logger logger,
+                         @Nullable Map<String, List<Volume>> snapshotVolumes) {
     final String RESOURCE_TYPE = EC2Snapshot.RESOURCE_TYPE;
 
     try {
@@ -255,7 +265,7 @@ public class EC2Discovery implements AWSDiscovery {
             .withTags(getConvertedTags(snapshot.tags(), mapper))
             .build();
 
-          discoverSnapshotVolumes(client, data, snapshot);
+          discoverSnapshotVolumes(data, snapshot, snapshotVolumes, mapper);
 
           emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(AWSDiscoveryPlugin.ID + ":Volume"), data.toJsonNode()));
         });
@@ -266,18 +276,16 @@ public class EC2Discovery implements AWSDiscovery {
     }
   }
 
-  private void discoverSnapshotVolumes(Ec2Client client, MagpieAwsResource data, Snapshot snapshot) {
+  private void discoverSnapshotVolumes(MagpieAwsResource data, Snapshot snapshot, @Nullable Map<String, List<Volume>> snapshotVolumes, ObjectMapper mapper) {
     final String keyname = "volumes";
-    var snapshotFilter = Filter.builder().name("snapshot-id").values(List.of(snapshot.snapshotId())).build();
-
-    getAwsResponse(
-      () -> client.describeVolumesPaginator(DescribeVolumesRequest.builder().filters(List.of(snapshotFilter)).build())
-        .stream()
-        .map(DescribeVolumesResponse::toBuilder)
-        .collect(Collectors.toList()),
-      (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
-      (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
-    );
+    if (snapshotVolumes == null) {
+      AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, mapper.nullNode()));
+      return;
+    }
+
+    // Kept as a single page of DescribeVolumes output, the shape the per-snapshot call used to produce
+    final var page = DescribeVolumesResponse.builder().volumes(snapshotVolumes.getOrDefault(snapshot.snapshotId(), List.of()));
+    AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, List.of(page)));
   }
 
   private void discoverNetworkAcls(ObjectMapper mapper, Session session, Ec2Client client, Region region, Emitter emitter, String account) {
@@ -67,7 +67,8 @@ public class ECSDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = EcsCluster.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(EcsClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(EcsClient::builder);
       listDescribedClusters(client).forEach(cluster -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, cluster.clusterArn())
           .withResourceName(cluster.clusterName())
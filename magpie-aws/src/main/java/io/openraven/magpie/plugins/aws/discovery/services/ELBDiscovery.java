@@ -62,7 +62,8 @@ public class ELBDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = ElasticLoadBalancingLoadBalancer.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(ElasticLoadBalancingClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(ElasticLoadBalancingClient::builder);
       client.describeLoadBalancers().loadBalancerDescriptions().forEach(loadBalancer -> {
         final var name = loadBalancer.loadBalancerName();
         final var arn = String.format("arn:aws:elasticloadbalancing:%s:%s:loadbalancer/%s", region, account, name);
@@ -60,7 +60,8 @@ public class ELBV2Discovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = ElasticLoadBalancingV2LoadBalancer.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(ElasticLoadBalancingV2Client.builder()).build()){
+    try {
+      final var client = clientCreator.client(ElasticLoadBalancingV2Client::builder);
       client.describeLoadBalancers().loadBalancers().forEach(loadBalancerV2 -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, loadBalancerV2.loadBalancerArn())
           .withResourceName(loadBalancerV2.dnsName())
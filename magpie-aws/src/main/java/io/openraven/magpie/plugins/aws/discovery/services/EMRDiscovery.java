@@ -64,7 +64,8 @@ public class EMRDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = EmrCluster.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(EmrClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(EmrClient::builder);
       client.listClustersPaginator().clusters().stream().forEach(cluster -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, cluster.clusterArn())
           .withResourceName(cluster.name())
@@ -61,7 +61,8 @@ public class ESDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = EssDomain.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(ElasticsearchClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(ElasticsearchClient::builder);
       client.listDomainNames().domainNames().stream()
         .map(domainInfo -> client.describeElasticsearchDomain(DescribeElasticsearchDomainRequest.builder().domainName(domainInfo.domainName()).build()).domainStatus())
         .forEach(domain -> {
@@ -60,7 +60,8 @@ public class ElastiCacheDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final  String RESOURCE_TYPE = ElastiCacheCluster.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(ElastiCacheClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(ElastiCacheClient::builder);
       client.describeCacheClusters().cacheClusters().forEach(cacheCluster -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, cacheCluster.arn())
           .withResourceName(cacheCluster.cacheClusterId())
@@ -54,7 +54,8 @@ public class GuardDutyDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = GuardDutyDetector.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(GuardDutyClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(GuardDutyClient::builder);
       client.listDetectorsPaginator()
         .forEach(detector -> detector.detectorIds().forEach(
           id -> {
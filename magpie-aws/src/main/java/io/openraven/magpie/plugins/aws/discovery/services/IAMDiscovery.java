@@ -29,6 +29,7 @@ import io.openraven.magpie.data.aws.accounts.IamGroup;
 import io.openraven.magpie.data.aws.accounts.IamPolicy;
 import io.openraven.magpie.data.aws.accounts.IamRole;
 import io.openraven.magpie.data.aws.accounts.IamUser;
+import io.openraven.magpie.plugins.aws.discovery.AWSDiscoveryConfig;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
@@ -38,6 +39,7 @@ import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.AttachedPolicy;
 import software.amazon.awssdk.services.iam.model.GetGroupPolicyRequest;
 import software.amazon.awssdk.services.iam.model.GetRolePolicyRequest;
 import software.amazon.awssdk.services.iam.model.GetUserPolicyRequest;
@@ -54,17 +56,20 @@ import software.amazon.awssdk.services.iam.model.ListPolicyVersionsRequest;
 import software.amazon.awssdk.services.iam.model.ListRolePoliciesRequest;
 import software.amazon.awssdk.services.iam.model.ListUserPoliciesRequest;
 import software.amazon.awssdk.services.iam.model.Policy;
+import software.amazon.awssdk.services.iam.model.PolicyDetail;
 import software.amazon.awssdk.services.iam.model.PolicyScopeType;
 import software.amazon.awssdk.services.iam.model.PolicyVersion;
 import software.amazon.awssdk.services.iam.model.Role;
 import software.amazon.awssdk.services.iam.model.Tag;
 import software.amazon.awssdk.services.iam.model.User;
 
+import javax.annotation.Nullable;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -76,6 +81,8 @@ public class IAMDiscovery implements AWSDiscovery {
   private static final String SERVICE = "iam";
   private static final String AWS_LINE_SEPARATOR = "\n";
 
+  private boolean bulk = true;
+
   @Override
   public String service() {
     return SERVICE;
@@ -86,27 +93,55 @@ public class IAMDiscovery implements AWSDiscovery {
     return IamClient.serviceMetadata().regions();
   }
 
+  @Override
+  public void configure(AWSDiscoveryConfig config, Logger logger) {
+    bulk = config.isIamBulkDiscovery();
+  }
+
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(IamClient.builder()).build()) {
-      discoverCredentialsReport(client, mapper, session, region, emitter, logger, account);
-      discoverAccounts(client, mapper, session, region, emitter, account);
-      discoverGroups(client, mapper, session, region, emitter, account);
-      discoverUsers(client, mapper, session, region, emitter, account);
-      discoverRoles(client, mapper, session, region, emitter, account);
-      discoverPolicies(client, mapper, session, region, emitter, account);
+    final var client = clientCreator.client(IamClient::builder);
+    final var details = bulk ? fetchAuthorizationDetails(client, region, logger) : null;
+    discoverCredentialsReport(client, mapper, session, region, emitter, logger, account);
+    discoverAccounts(client, mapper, session, region, emitter, account);
+    discoverGroups(client, mapper, session, region, emitter, account, details);
+    discoverUsers(client, mapper, session, region, emitter, account, details);
+    discoverRoles(client, mapper, session, region, emitter, account, details);
+    discoverPolicies(client, mapper, session, region, emitter, account, details);
+  }
+
+  @Nullable
+  private IamAuthorizationDetails fetchAuthorizationDetails(IamClient client, Region region, Logger logger) {
+    try {
+      final var details = IamAuthorizationDetails.fetch(client);
+      logger.debug("Fetched authorization details of {} IAM entities in {}", details.size(), region);
+      return details;
+    } catch (SdkServiceException | SdkClientException ex) {
+      logger.warn("Unable to get account authorization details in {}, discovering IAM entities one by one - {}", region, ex.getMessage());
+      return null;
     }
   }
 
   protected void discoverRoles(IamClient client, ObjectMapper mapper, Session session, Region region, Emitter emitter, String account) {
+    discoverRoles(client, mapper, session, region, emitter, account, null);
+  }
+
+  void discoverRoles(IamClient client, ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, @Nullable IamAuthorizationDetails details) {
     final String RESOURCE_TYPE = IamRole.RESOURCE_TYPE;
 
     try {
       client.listRolesPaginator().roles().forEach(listedRole -> {
+        final var detail = details == null ? null : details.role(listedRole.roleName());
         // Listed role doesn't contains all data :https://github.com/boto/boto3/issues/2297#issuecomment-593684575
-        // As workaround request each role to enrich the data
-        Role role = client.getRole(builder -> builder.roleName(listedRole.roleName()).build()).role();
+        // As workaround request each role to enrich the data, unless the authorization details already have the rest
+        Role role = detail != null
+          ? listedRole.toBuilder()
+            .permissionsBoundary(detail.permissionsBoundary())
+            .tags(detail.tags())
+            .roleLastUsed(detail.roleLastUsed())
+            .build()
+          : client.getRole(builder -> builder.roleName(listedRole.roleName()).build()).role();
 
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, role.arn())
           .withResourceName(role.roleName())
@@ -121,8 +156,13 @@ public class IAMDiscovery implements AWSDiscovery {
                   JsonNode.class)
           ).build();
 
-        discoverAttachedPolicies(client, data, role);
-        discoverInlinePolicies(mapper, client, data, role);
+        if (detail != null) {
+          updateAttachedPolicies(data, detail.attachedManagedPolicies());
+          updateInlinePolicies(mapper, data, detail.rolePolicyList());
+        } else {
+          discoverAttachedPolicies(client, data, role);
+          discoverInlinePolicies(mapper, client, data, role);
+        }
 
         emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":role"), data.toJsonNode()));
       });
@@ -148,6 +188,16 @@ public class IAMDiscovery implements AWSDiscovery {
     AWSUtils.update(data.supplementaryConfiguration, Map.of("inlinePolicies", inlinePolicies));
   }
 
+  private void updateInlinePolicies(ObjectMapper mapper, MagpieAwsResource data, List<PolicyDetail> policies) {
+    List<ImmutableMap<String, JsonNode>> inlinePolicies = policies.stream()
+      .map(policy -> ImmutableMap.of(
+        "name", (JsonNode) mapper.valueToTree(policy.policyName()),
+        "policyDocument", parsePolicyDocument(mapper, policy.policyDocument())))
+      .collect(Collectors.toList());
+
+    AWSUtils.update(data.supplementaryConfiguration, Map.of("inlinePolicies", inlinePolicies));
+  }
+
   private JsonNode parsePolicyDocument(ObjectMapper mapper, String policyDocument) {
     try {
       return mapper.readTree(URLDecoder.decode(policyDocument, StandardCharsets.UTF_8));
@@ -172,7 +222,21 @@ public class IAMDiscovery implements AWSDiscovery {
     AWSUtils.update(data.supplementaryConfiguration, Map.of("attachedPolicies", attachedPolicies));
   }
 
+  private void updateAttachedPolicies(MagpieAwsResource data, List<AttachedPolicy> policies) {
+    List<ImmutableMap<String, String>> attachedPolicies = policies.stream()
+      .map(policy -> ImmutableMap.of(
+        "name", policy.policyName(),
+        "arn", policy.policyArn()))
+      .collect(Collectors.toList());
+
+    AWSUtils.update(data.supplementaryConfiguration, Map.of("attachedPolicies", attachedPolicies));
+  }
+
   protected void discoverPolicies(IamClient client, ObjectMapper mapper, Session session, Region region, Emitter emitter, String account) {
+    discoverPolicies(client, mapper, session, region, emitter, account, null);
+  }
+
+  private void discoverPolicies(IamClient client, ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, @Nullable IamAuthorizationDetails details) {
     final String RESOURCE_TYPE = IamPolicy.RESOURCE_TYPE;
 
     try {
@@ -187,7 +251,17 @@ public class IAMDiscovery implements AWSDiscovery {
           .withAwsRegion(region.toString())
           .build();
 
-        discoverPolicyDocument(mapper, client, data, policy);
+        final var detail = details == null ? null : details.policy(policy.arn());
+        if (detail != null) {
+          detail.policyVersionList().stream()
+            .filter(PolicyVersion::isDefaultVersion)
+            .findFirst()
+            .ifPresent(policyVersion -> AWSUtils.update(data.supplementaryConfiguration,
+              Map.of("attachedPolicies",
+                Map.of("policyDocument", parsePolicyDocument(mapper, policyVersion.document())))));
+        } else {
+          discoverPolicyDocument(mapper, client, data, policy);
+        }
 
         emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":policy"), data.toJsonNode()));
       });
@@ -222,7 +296,7 @@ public class IAMDiscovery implements AWSDiscovery {
   }
 
   private void discoverUsers(IamClient client, ObjectMapper mapper, Session session, Region region, Emitter
-    emitter, String account) {
+    emitter, String account, @Nullable IamAuthorizationDetails details) {
     final String RESOURCE_TYPE = IamUser.RESOURCE_TYPE;
 
     try {
@@ -237,12 +311,22 @@ public class IAMDiscovery implements AWSDiscovery {
           .withAwsRegion(region.toString())
           .build();
 
-        discoverGroupsForUser(client, data, user);
-        discoverAttachedUserPolicies(client, data, user);
-        discoverUserPolicies(client, data, user);
+        final var detail = details == null ? null : details.user(user.userName());
+        if (detail != null) {
+          updateGroupsForUser(data, detail.groupList(), details);
+          updateAttachedPolicies(data, detail.attachedManagedPolicies());
+          updateUserPolicies(data, detail.userPolicyList());
+        } else {
+          discoverGroupsForUser(client, data, user);
+          discoverAttachedUserPolicies(client, data, user);
+          discoverUserPolicies(client, data, user);
+        }
+        // MFA devices aren't part of the authorization details.
         discoverUserMFADevices(client, data, user);
 
-        AWSUtils.update(data.tags, mapper.convertValue(user.tags().stream().collect(Collectors.toMap(Tag::key, Tag::value)), JsonNode.class));
+        // ListUsers leaves tags out; the authorization details have them.
+        final var tags = detail != null ? detail.tags() : user.tags();
+        AWSUtils.update(data.tags, mapper.convertValue(tags.stream().collect(Collectors.toMap(Tag::key, Tag::value)), JsonNode.class));
 
         emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":user"), data.toJsonNode()));
       });
@@ -267,6 +351,18 @@ public class IAMDiscovery implements AWSDiscovery {
     AWSUtils.update(data.supplementaryConfiguration, Map.of("groups", attachedPolicies));
   }
 
+  private void updateGroupsForUser(MagpieAwsResource data, List<String> groupNames, IamAuthorizationDetails details) {
+    List<ImmutableMap<String, String>> groups = groupNames.stream()
+      .map(details::group)
+      .filter(Objects::nonNull)
+      .map(group -> ImmutableMap.of(
+        "name", group.groupName(),
+        "arn", group.arn()))
+      .collect(Collectors.toList());
+
+    AWSUtils.update(data.supplementaryConfiguration, Map.of("groups", groups));
+  }
+
   private void discoverAttachedUserPolicies(IamClient client, MagpieAwsResource data, User user) {
     List<ImmutableMap<String, String>> attachedPolicies = new ArrayList<>();
 
@@ -303,6 +399,18 @@ public class IAMDiscovery implements AWSDiscovery {
     AWSUtils.update(data.supplementaryConfiguration, Map.of("userPolicies", inlinePolicies));
   }
 
+  private void updateUserPolicies(MagpieAwsResource data, List<PolicyDetail> policies) {
+    AWSUtils.update(data.supplementaryConfiguration, Map.of("userPolicies", inlinePolicies(policies)));
+  }
+
+  private static List<ImmutableMap<String, String>> inlinePolicies(List<PolicyDetail> policies) {
+    return policies.stream()
+      .map(policy -> ImmutableMap.of(
+        "name", policy.policyName(),
+        "policyDocument", policy.policyDocument()))
+      .collect(Collectors.toList());
+  }
+
   private void discoverUserMFADevices(IamClient client, MagpieAwsResource data, User user) {
     String keyname = "mfaDevices";
 
@@ -318,10 +426,16 @@ public class IAMDiscovery implements AWSDiscovery {
 
   protected void discoverGroups(IamClient client, ObjectMapper mapper, Session session, Region region, Emitter
     emitter, String account) {
+    discoverGroups(client, mapper, session, region, emitter, account, null);
+  }
+
+  private void discoverGroups(IamClient client, ObjectMapper mapper, Session session, Region region, Emitter
+    emitter, String account, @Nullable IamAuthorizationDetails details) {
     final String RESOURCE_TYPE = IamGroup.RESOURCE_TYPE;
 
     try {
-      client.listGroups().groups().forEach(group -> {
+      final List<Group> groups = details == null ? client.listGroups().groups() : toGroups(details);
+      groups.forEach(group -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, group.arn())
           .withResourceName(group.groupName())
           .withResourceId(group.groupId())
@@ -332,8 +446,14 @@ public class IAMDiscovery implements AWSDiscovery {
           .withAwsRegion(region.toString())
           .build();
 
-        discoverGroupInlinePolicies(client, data, group);
-        discoverGroupAttachedPolicies(client, data, group);
+        final var detail = details == null ? null : details.group(group.groupName());
+        if (detail != null) {
+          AWSUtils.update(data.supplementaryConfiguration, Map.of("inlinePolicies", inlinePolicies(detail.groupPolicyList())));
+          updateAttachedPolicies(data, detail.attachedManagedPolicies());
+        } else {
+          discoverGroupInlinePolicies(client, data, group);
+          discoverGroupAttachedPolicies(client, data, group);
+        }
 
         emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":group"), data.toJsonNode()));
       });
@@ -342,6 +462,18 @@ public class IAMDiscovery implements AWSDiscovery {
     }
   }
 
+  private static List<Group> toGroups(IamAuthorizationDetails details) {
+    final var groups = new ArrayList<Group>();
+    details.groups().forEach(detail -> groups.add(Group.builder()
+      .path(detail.path())
+      .groupName(detail.groupName())
+      .groupId(detail.groupId())
+      .arn(detail.arn())
+      .createDate(detail.createDate())
+      .build()));
+    return groups;
+  }
+
   private void discoverGroupInlinePolicies(IamClient client, MagpieAwsResource data, Group group) {
     List<ImmutableMap<String, String>> inlinePolicies = new ArrayList<>();
 
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.plugins.aws.discovery.services;
+
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.EntityType;
+import software.amazon.awssdk.services.iam.model.GetAccountAuthorizationDetailsRequest;
+import software.amazon.awssdk.services.iam.model.GroupDetail;
+import software.amazon.awssdk.services.iam.model.ManagedPolicyDetail;
+import software.amazon.awssdk.services.iam.model.RoleDetail;
+import software.amazon.awssdk.services.iam.model.UserDetail;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The users, groups, roles and customer managed policies of an account, with their inline and attached policies, as
+ * returned by GetAccountAuthorizationDetails. A few paginated calls stand in for the several per-entity calls
+ * {@link IAMDiscovery} would otherwise make for each of them.
+ *
+ * Entities created after the details were fetched aren't found here, and are left to be discovered one by one.
+ */
+class IamAuthorizationDetails {
+
+  private final Map<String, UserDetail> users = new HashMap<>();
+  private final Map<String, GroupDetail> groups = new HashMap<>();
+  private final Map<String, RoleDetail> roles = new HashMap<>();
+  private final Map<String, ManagedPolicyDetail> policies = new HashMap<>();
+
+  static IamAuthorizationDetails fetch(IamClient client) {
+    final var details = new IamAuthorizationDetails();
+    final var request = GetAccountAuthorizationDetailsRequest.builder()
+      .filter(EntityType.USER, EntityType.GROUP, EntityType.ROLE, EntityType.LOCAL_MANAGED_POLICY)
+      .build();
+    client.getAccountAuthorizationDetailsPaginator(request).forEach(response -> {
+      response.userDetailList().forEach(user -> details.users.put(user.userName(), user));
+      response.groupDetailList().forEach(group -> details.groups.put(group.groupName(), group));
+      response.roleDetailList().forEach(role -> details.roles.put(role.roleName(), role));
+      response.policies().forEach(policy -> details.policies.put(policy.arn(), policy));
+    });
+    return details;
+  }
+
+  @Nullable
+  UserDetail user(String userName) {
+    return users.get(userName);
+  }
+
+  @Nullable
+  GroupDetail group(String groupName) {
+    return groups.get(groupName);
+  }
+
+  @Nullable
+  RoleDetail role(String roleName) {
+    return roles.get(roleName);
+  }
+
+  @Nullable
+  ManagedPolicyDetail policy(String arn) {
+    return policies.get(arn);
+  }
+
+  Iterable<GroupDetail> groups() {
+    return groups.values();
+  }
+
+  int size() {
+    return users.size() + groups.size() + roles.size() + policies.size();
+  }
+}
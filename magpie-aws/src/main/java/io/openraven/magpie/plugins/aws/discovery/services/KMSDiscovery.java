@@ -65,7 +65,8 @@ public class KMSDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = KmsKey.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(KmsClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(KmsClient::builder);
       client.listKeysPaginator().keys().forEach(key -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, key.keyArn())
           .withResourceName(key.toString())
@@ -58,7 +58,8 @@ public class LakeFormationDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = LakeFormationResource.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(LakeFormationClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(LakeFormationClient::builder);
       client.listResourcesPaginator(ListResourcesRequest.builder().build()).stream()
         .forEach(list -> list.resourceInfoList()
           .forEach(resourceInfo -> {
@@ -22,13 +22,16 @@ import io.openraven.magpie.api.MagpieAwsResource;
 import io.openraven.magpie.api.Session;
 import io.openraven.magpie.data.aws.lambda.LambdaFunction;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
+import io.openraven.magpie.plugins.aws.discovery.AsyncEnrichment;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
 import io.openraven.magpie.plugins.aws.discovery.VersionedMagpieEnvelopeProvider;
 import org.slf4j.Logger;
 import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.lambda.LambdaAsyncClient;
 import software.amazon.awssdk.services.lambda.LambdaClient;
 import software.amazon.awssdk.services.lambda.model.EventSourceMappingConfiguration;
 import software.amazon.awssdk.services.lambda.model.FunctionConfiguration;
@@ -41,11 +44,13 @@ import software.amazon.awssdk.services.lambda.model.ListFunctionEventInvokeConfi
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
-import static io.openraven.magpie.plugins.aws.discovery.AWSUtils.getAwsResponse;
+import static io.openraven.magpie.plugins.aws.discovery.AWSUtils.getAwsResponseAsync;
 
-public class LambdaDiscovery implements AWSDiscovery {
+public class LambdaDiscovery implements AWSAsyncDiscovery {
   private static final String SERVICE = "lambda";
 
   @Override
@@ -59,78 +64,83 @@ public class LambdaDiscovery implements AWSDiscovery {
   }
 
   @Override
-  public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
+  public CompletableFuture<Void> discoverAsync(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = LambdaFunction.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(LambdaClient.builder()).build()) {
-      client.listFunctionsPaginator().functions().forEach(function -> {
-        var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, function.functionArn())
-          .withResourceName(function.functionName())
-          .withResourceId(function.revisionId())
-          .withResourceType(RESOURCE_TYPE)
-          .withConfiguration(mapper.valueToTree(function.toBuilder()))
-          .withAccountId(account)
-          .withAwsRegion(region.toString())
-          .build();
-
-        discoverFunctionEventInvokeConfigs(client, function, data);
-        discoverEventSourceMapping(client, function, data);
-        discoverFunction(client, function, data);
-        discoverFunctionInvokeConfig(client, function, data);
-        discoverAccessPolicy(client, function, data);
-
-        emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":function"), data.toJsonNode()));
+    final var client = clientCreator.client(LambdaAsyncClient::builder);
+    final List<AsyncEnrichment<FunctionConfiguration>> enrichments = List.of(
+      (function, data) -> discoverFunctionEventInvokeConfigs(client, function, data),
+      (function, data) -> discoverEventSourceMapping(client, function, data),
+      (function, data) -> discoverFunction(client, function, data),
+      (function, data) -> discoverFunctionInvokeConfig(client, function, data),
+      (function, data) -> discoverAccessPolicy(client, function, data));
+
+    return asyncEnricher(mapper, region, logger).enrichAll(client.listFunctionsPaginator().functions(),
+      function -> new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, function.functionArn())
+        .withResourceName(function.functionName())
+        .withResourceId(function.revisionId())
+        .withResourceType(RESOURCE_TYPE)
+        .withConfiguration(mapper.valueToTree(function.toBuilder()))
+        .withAccountId(account)
+        .withAwsRegion(region.toString())
+        .build(),
+      enrichments,
+      enriched -> emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":function"), enriched.toJsonNode())))
+      .exceptionally(ex -> {
+        final var cause = AWSUtils.unwrap(ex);
+        if (cause instanceof SdkServiceException || cause instanceof SdkClientException) {
+          DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, (SdkException) cause);
+          return null;
+        }
+        throw new CompletionException(cause);
       });
-    } catch (SdkServiceException | SdkClientException ex) {
-      DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
-    }
   }
 
-  private void discoverFunctionEventInvokeConfigs(LambdaClient client, FunctionConfiguration resource, MagpieAwsResource data) {
+  private CompletableFuture<Void> discoverFunctionEventInvokeConfigs(LambdaAsyncClient client, FunctionConfiguration resource, MagpieAwsResource data) {
     final String keyname = "EventInvokeConfigs";
-    getAwsResponse(
-      () -> client.listFunctionEventInvokeConfigsPaginator(ListFunctionEventInvokeConfigsRequest.builder().functionName(resource.functionName()).build()).functionEventInvokeConfigs()
-        .stream()
-        .map(FunctionEventInvokeConfig::toBuilder)
-        .collect(Collectors.toList()),
+    return getAwsResponseAsync(
+      () -> AWSUtils.collect(client.listFunctionEventInvokeConfigsPaginator(ListFunctionEventInvokeConfigsRequest.builder().functionName(resource.functionName()).build()).functionEventInvokeConfigs())
+        .thenApply(configs -> configs.stream()
+          .map(FunctionEventInvokeConfig::toBuilder)
+          .collect(Collectors.toList())),
       (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
       (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
     );
   }
 
-  private void discoverEventSourceMapping(LambdaClient client, FunctionConfiguration resource, MagpieAwsResource data) {
+  private CompletableFuture<Void> discoverEventSourceMapping(LambdaAsyncClient client, FunctionConfiguration resource, MagpieAwsResource data) {
     final String keyname = "EventSourceMapping";
-    getAwsResponse(
-      () -> client.listEventSourceMappingsPaginator(ListEventSourceMappingsRequest.builder().functionName(resource.functionName()).build()).eventSourceMappings()
-        .stream()
-        .map(EventSourceMappingConfiguration::toBuilder)
-        .collect(Collectors.toList()),
+    return getAwsResponseAsync(
+      () -> AWSUtils.collect(client.listEventSourceMappingsPaginator(ListEventSourceMappingsRequest.builder().functionName(resource.functionName()).build()).eventSourceMappings())
+        .thenApply(mappings -> mappings.stream()
+          .map(EventSourceMappingConfiguration::toBuilder)
+          .collect(Collectors.toList())),
       (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
       (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
     );
   }
 
-  private void discoverFunctionInvokeConfig(LambdaClient client, FunctionConfiguration resource, MagpieAwsResource data) {
+  private CompletableFuture<Void> discoverFunctionInvokeConfig(LambdaAsyncClient client, FunctionConfiguration resource, MagpieAwsResource data) {
     final String keyname = "FunctionInvokeConfig";
-    getAwsResponse(
+    return getAwsResponseAsync(
       () -> client.getFunctionEventInvokeConfig(GetFunctionEventInvokeConfigRequest.builder().functionName(resource.functionName()).build()),
       (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
       (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
     );
   }
 
-  private void discoverFunction(LambdaClient client, FunctionConfiguration resource, MagpieAwsResource data) {
+  private CompletableFuture<Void> discoverFunction(LambdaAsyncClient client, FunctionConfiguration resource, MagpieAwsResource data) {
     final String keyname = "Function";
-    getAwsResponse(
+    return getAwsResponseAsync(
       () -> client.getFunction(GetFunctionRequest.builder().functionName(resource.functionName()).build()),
       (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
       (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
     );
   }
 
-  private void discoverAccessPolicy(LambdaClient client, FunctionConfiguration resource, MagpieAwsResource data) {
+  private CompletableFuture<Void> discoverAccessPolicy(LambdaAsyncClient client, FunctionConfiguration resource, MagpieAwsResource data) {
     final String keyname = "AccessPolicy";
-    getAwsResponse(
+    return getAwsResponseAsync(
       () -> client.getPolicy(GetPolicyRequest.builder().functionName(resource.functionName()).build()),
       (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
       (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
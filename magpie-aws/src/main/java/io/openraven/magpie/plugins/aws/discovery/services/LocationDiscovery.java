@@ -27,7 +27,9 @@ import io.openraven.magpie.data.aws.location.LocationRouteCalculator;
 import io.openraven.magpie.data.aws.location.LocationTracker;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
+import io.openraven.magpie.plugins.aws.discovery.Enrichment;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
+import io.openraven.magpie.plugins.aws.discovery.ResourceEnricher;
 import io.openraven.magpie.plugins.aws.discovery.VersionedMagpieEnvelopeProvider;
 import org.slf4j.Logger;
 import software.amazon.awssdk.core.exception.SdkClientException;
@@ -37,8 +39,11 @@ import software.amazon.awssdk.services.location.LocationClient;
 import software.amazon.awssdk.services.location.model.DescribeGeofenceCollectionRequest;
 import software.amazon.awssdk.services.location.model.DescribeGeofenceCollectionResponse;
 import software.amazon.awssdk.services.location.model.DescribeMapRequest;
+import software.amazon.awssdk.services.location.model.DescribeMapResponse;
 import software.amazon.awssdk.services.location.model.DescribePlaceIndexRequest;
+import software.amazon.awssdk.services.location.model.DescribePlaceIndexResponse;
 import software.amazon.awssdk.services.location.model.DescribeRouteCalculatorRequest;
+import software.amazon.awssdk.services.location.model.DescribeRouteCalculatorResponse;
 import software.amazon.awssdk.services.location.model.DescribeTrackerRequest;
 import software.amazon.awssdk.services.location.model.DescribeTrackerResponse;
 import software.amazon.awssdk.services.location.model.ListDevicePositionsRequest;
@@ -86,18 +91,24 @@ public class LocationDiscovery implements AWSDiscovery {
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(LocationClient.builder()).build()) {
-      discoverTrackers(mapper, session, region, emitter, account, client);
-      discoverMaps(mapper, session, region, emitter, account, client);
-      discoverGeofenceCollections(mapper, session, region, emitter, account, client);
-      discoverPlaceIndex(mapper, session, region, emitter, account, client);
-      discoverRouteCalculators(mapper, session, region, emitter, account, client);
+    final var client = clientCreator.client(LocationClient::builder);
+    try (final var enricher = enricher(mapper, region, logger)) {
+      discoverTrackers(mapper, session, region, emitter, account, client, enricher);
+      discoverMaps(mapper, session, region, emitter, account, client, enricher);
+      discoverGeofenceCollections(mapper, session, region, emitter, account, client, enricher);
+      discoverPlaceIndex(mapper, session, region, emitter, account, client, enricher);
+      discoverRouteCalculators(mapper, session, region, emitter, account, client, enricher);
     }
   }
 
-  private void discoverTrackers(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client) {
+  private void discoverTrackers(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client, ResourceEnricher enricher) {
     final String RESOURCE_TYPE = LocationTracker.RESOURCE_TYPE;
 
+    final List<Enrichment<DescribeTrackerResponse>> enrichments = List.of(
+      (tracker, data) -> discoverDevicePositions(client, tracker, data),
+      (tracker, data) -> discoverTrackerConsumers(client, tracker, data),
+      (tracker, data) -> discoverTags(client, tracker.trackerArn(), data, mapper));
+
     try {
       client.listTrackersPaginator(ListTrackersRequest.builder().build())
         .entries()
@@ -113,11 +124,8 @@ public class LocationDiscovery implements AWSDiscovery {
             .withAwsRegion(region.toString())
             .build();
 
-          discoverDevicePositions(client, tracker, data);
-          discoverTrackerConsumers(client, tracker, data);
-          discoverTags(client, tracker.trackerArn(), data, mapper);
-
-          emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":tracker"), data.toJsonNode()));
+          enricher.enrich(tracker, data, enrichments, enriched ->
+            emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":tracker"), enriched.toJsonNode())));
         });
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
@@ -149,9 +157,12 @@ public class LocationDiscovery implements AWSDiscovery {
     );
   }
 
-  private void discoverMaps(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client) {
+  private void discoverMaps(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client, ResourceEnricher enricher) {
     final String RESOURCE_TYPE = LocationMap.RESOURCE_TYPE;
 
+    final List<Enrichment<DescribeMapResponse>> enrichments = List.of(
+      (map, data) -> discoverTags(client, map.mapArn(), data, mapper));
+
     try {
       client.listMapsPaginator(ListMapsRequest.builder().build())
         .entries()
@@ -167,18 +178,21 @@ public class LocationDiscovery implements AWSDiscovery {
             .withAwsRegion(region.toString())
             .build();
 
-          discoverTags(client, map.mapArn(), data, mapper);
-
-          emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":map"), data.toJsonNode()));
+          enricher.enrich(map, data, enrichments, enriched ->
+            emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":map"), enriched.toJsonNode())));
         });
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
     }
   }
 
-  private void discoverGeofenceCollections(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client) {
+  private void discoverGeofenceCollections(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client, ResourceEnricher enricher) {
     final String RESOURCE_TYPE = LocationGeofenceCollection.RESOURCE_TYPE;
 
+    final List<Enrichment<DescribeGeofenceCollectionResponse>> enrichments = List.of(
+      (geofenceCollection, data) -> discoverGeofences(client, geofenceCollection, data),
+      (geofenceCollection, data) -> discoverTags(client, geofenceCollection.collectionArn(), data, mapper));
+
     try {
       client.listGeofenceCollectionsPaginator(ListGeofenceCollectionsRequest.builder().build())
         .entries()
@@ -194,10 +208,8 @@ public class LocationDiscovery implements AWSDiscovery {
             .withAwsRegion(region.toString())
             .build();
 
-          discoverGeofences(client, geofenceCollection, data);
-          discoverTags(client, geofenceCollection.collectionArn(), data, mapper);
-
-          emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":geofenceCollection"), data.toJsonNode()));
+          enricher.enrich(geofenceCollection, data, enrichments, enriched ->
+            emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":geofenceCollection"), enriched.toJsonNode())));
         });
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
@@ -217,9 +229,12 @@ public class LocationDiscovery implements AWSDiscovery {
     );
   }
 
-  private void discoverPlaceIndex(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client) {
+  private void discoverPlaceIndex(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client, ResourceEnricher enricher) {
     final String RESOURCE_TYPE = LocationPlaceIndex.RESOURCE_TYPE;
 
+    final List<Enrichment<DescribePlaceIndexResponse>> enrichments = List.of(
+      (placeIndex, data) -> discoverTags(client, placeIndex.indexArn(), data, mapper));
+
     try {
       client.listPlaceIndexesPaginator(ListPlaceIndexesRequest.builder().build())
         .entries()
@@ -235,18 +250,20 @@ public class LocationDiscovery implements AWSDiscovery {
             .withAwsRegion(region.toString())
             .build();
 
-          discoverTags(client, placeIndex.indexArn(), data, mapper);
-
-          emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":placeIndex"), data.toJsonNode()));
+          enricher.enrich(placeIndex, data, enrichments, enriched ->
+            emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":placeIndex"), enriched.toJsonNode())));
         });
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
     }
   }
 
-  private void discoverRouteCalculators(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client) {
+  private void discoverRouteCalculators(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, LocationClient client, ResourceEnricher enricher) {
     final String RESOURCE_TYPE = LocationRouteCalculator.RESOURCE_TYPE;
 
+    final List<Enrichment<DescribeRouteCalculatorResponse>> enrichments = List.of(
+      (routeCalculator, data) -> discoverTags(client, routeCalculator.calculatorArn(), data, mapper));
+
     try {
       client.listRouteCalculatorsPaginator(ListRouteCalculatorsRequest.builder().build())
         .entries()
@@ -262,9 +279,8 @@ public class LocationDiscovery implements AWSDiscovery {
             .withAwsRegion(region.toString())
             .build();
 
-          discoverTags(client, routeCalculator.calculatorArn(), data, mapper);
-
-          emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":routeCalculator"), data.toJsonNode()));
+          enricher.enrich(routeCalculator, data, enrichments, enriched ->
+            emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":routeCalculator"), enriched.toJsonNode())));
         });
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
@@ -28,24 +28,32 @@ import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
 import io.openraven.magpie.plugins.aws.discovery.Conversions;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
+import io.openraven.magpie.plugins.aws.discovery.MetricDataPrefetcher;
 import io.openraven.magpie.plugins.aws.discovery.VersionedMagpieEnvelopeProvider;
-import org.javatuples.Pair;
 import org.slf4j.Logger;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.model.Dimension;
-import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsResponse;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
 import software.amazon.awssdk.services.rds.RdsClient;
+import software.amazon.awssdk.services.rds.model.DBCluster;
 import software.amazon.awssdk.services.rds.model.DBInstance;
+import software.amazon.awssdk.services.rds.model.DBSnapshot;
 import software.amazon.awssdk.services.rds.model.DescribeDbClustersRequest;
+import software.amazon.awssdk.services.rds.model.DescribeDbClustersResponse;
 import software.amazon.awssdk.services.rds.model.DescribeDbSnapshotsRequest;
+import software.amazon.awssdk.services.rds.model.DescribeDbSnapshotsResponse;
 import software.amazon.awssdk.services.rds.model.ListTagsForResourceRequest;
 import software.amazon.awssdk.services.rds.model.Tag;
 
-import java.util.ArrayList;
+import javax.annotation.Nullable;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static io.openraven.magpie.plugins.aws.discovery.AWSUtils.getAwsResponse;
@@ -67,39 +75,58 @@ public class RDSDiscovery implements AWSDiscovery {
   @Override
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(RdsClient.builder()).build()) {
-      discoverDbSnapshot(mapper, session, region, emitter, account, client);
-      discoverDbInstances(mapper, session, region, emitter, logger, account, client, clientCreator);
-    }
+    final var client = clientCreator.client(RdsClient::builder);
+    final var instanceSnapshots = discoverDbSnapshot(mapper, session, region, emitter, account, client);
+    discoverDbInstances(mapper, session, region, emitter, logger, account, client, clientCreator, instanceSnapshots);
   }
 
-  private void discoverDbSnapshot(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, RdsClient client) {
+  /**
+   * @return the region's snapshots keyed by the identifier of the instance they were taken from, so instances can be
+   * joined to their snapshots without a DescribeDBSnapshots call each; null if the snapshots couldn't be listed.
+   */
+  @Nullable
+  Map<String, List<DBSnapshot>> discoverDbSnapshot(ObjectMapper mapper, Session session, Region region, Emitter emitter, String account, RdsClient client) {
     final String RESOURCE_TYPE = RDSSnapshot.RESOURCE_TYPE;
 
     try {
-      client.describeDBSnapshots(DescribeDbSnapshotsRequest.builder().includeShared(true).includePublic(false).build()).dbSnapshots()
-        .forEach(snapshot -> {
-          var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, snapshot.dbSnapshotArn())
-            .withResourceName(snapshot.dbSnapshotIdentifier())
-            .withResourceId(snapshot.dbSnapshotArn())
-            .withResourceType(RESOURCE_TYPE)
-            .withConfiguration(mapper.valueToTree(snapshot.toBuilder()))
-            .withCreatedIso(snapshot.instanceCreateTime())
-            .withAccountId(account)
-            .withAwsRegion(region.toString())
-            .build();
-
-          emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":dbSnapshot"), data.toJsonNode()));
-        });
+      final var snapshots = client.describeDBSnapshotsPaginator(DescribeDbSnapshotsRequest.builder().includeShared(true).includePublic(false).build())
+        .dbSnapshots().stream()
+        .collect(Collectors.toList());
+
+      snapshots.forEach(snapshot -> {
+        var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, snapshot.dbSnapshotArn())
+          .withResourceName(snapshot.dbSnapshotIdentifier())
+          .withResourceId(snapshot.dbSnapshotArn())
+          .withResourceType(RESOURCE_TYPE)
+          .withConfiguration(mapper.valueToTree(snapshot.toBuilder()))
+          .withCreatedIso(snapshot.instanceCreateTime())
+          .withAccountId(account)
+          .withAwsRegion(region.toString())
+          .build();
+
+        emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":dbSnapshot"), data.toJsonNode()));
+      });
+
+      return snapshots.stream()
+        .filter(snapshot -> snapshot.dbInstanceIdentifier() != null)
+        .collect(Collectors.groupingBy(DBSnapshot::dbInstanceIdentifier));
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
+      return null;
     }
   }
 
-  private void discoverDbInstances(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, RdsClient client, MagpieAWSClientCreator clientCreator) {
+  private void discoverDbInstances(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, RdsClient client, MagpieAWSClientCreator clientCreator,
+                                   @Nullable Map<String, List<DBSnapshot>> instanceSnapshots) {
     final String RESOURCE_TYPE = RDSInstance.RESOURCE_TYPE;
     try {
-      client.describeDBInstancesPaginator().dbInstances().stream()
+      final var instances = client.describeDBInstancesPaginator().dbInstances().stream().collect(Collectors.toList());
+      final var clusters = instances.stream().anyMatch(db -> db.dbClusterIdentifier() != null) ? listDbClusters(client) : Map.<String, DBCluster>of();
+      final var metrics = new MetricDataPrefetcher(clientCreator.client(CloudWatchClient::builder, region), logger);
+      instances.forEach(db -> requestInstanceSize(db, metrics));
+      metrics.fetch();
+
+      instances
         .forEach(db -> {
           var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, db.dbInstanceArn())
             .withResourceName(db.dbInstanceIdentifier())
@@ -116,9 +143,9 @@ public class RDSDiscovery implements AWSDiscovery {
           }
 
           discoverTags(client, db, data, mapper);
-          discoverInstanceDbClusters(client, db, data);
-          discoverInstanceDbSnapshots(client, db, data);
-          discoverInstanceSize(db, data, logger, clientCreator);
+          discoverInstanceDbClusters(db, data, clusters, mapper);
+          discoverInstanceDbSnapshots(db, data, instanceSnapshots, mapper);
+          discoverInstanceSize(db, data, logger, metrics);
 
           discoverBackupJobs(db.dbInstanceArn(), region, data, clientCreator, logger);
 
@@ -141,58 +168,90 @@ public class RDSDiscovery implements AWSDiscovery {
     );
   }
 
-  private void discoverInstanceDbClusters(RdsClient client, DBInstance resource, MagpieAwsResource data) {
-    final String keyname = "dbClusters";
+  /**
+   * @return the region's clusters by identifier, or null if they couldn't be listed
+   */
+  @Nullable
+  Map<String, DBCluster> listDbClusters(RdsClient client) {
+    final var clusters = new HashMap<String, DBCluster>();
+    final var listed = new AtomicBoolean();
     getAwsResponse(
-      () -> client.describeDBClusters(DescribeDbClustersRequest.builder().dbClusterIdentifier(resource.dbClusterIdentifier()).build()),
-      (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
-      (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
+      () -> client.describeDBClustersPaginator(DescribeDbClustersRequest.builder().build()).dbClusters().stream()
+        .collect(Collectors.toMap(DBCluster::dbClusterIdentifier, Function.identity(), (a, b) -> a)),
+      (resp) -> {
+        clusters.putAll(resp);
+        listed.set(true);
+      },
+      (noresp) -> listed.set(false)
     );
+    return listed.get() ? clusters : null;
+  }
+
+  void discoverInstanceDbClusters(DBInstance resource, MagpieAwsResource data, @Nullable Map<String, DBCluster> clusters, ObjectMapper mapper) {
+    final String keyname = "dbClusters";
+    if (clusters == null) {
+      AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, mapper.nullNode()));
+      return;
+    }
+
+    final var cluster = resource.dbClusterIdentifier() == null ? null : clusters.get(resource.dbClusterIdentifier());
+    final var resp = DescribeDbClustersResponse.builder().dbClusters(cluster == null ? List.of() : List.of(cluster)).build();
+    AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp));
   }
 
-  private void discoverInstanceDbSnapshots(RdsClient client, DBInstance resource, MagpieAwsResource data) {
+  void discoverInstanceDbSnapshots(DBInstance resource, MagpieAwsResource data, @Nullable Map<String, List<DBSnapshot>> instanceSnapshots, ObjectMapper mapper) {
     final String keyname = "dbSnapshot";
-    getAwsResponse(
-      () -> client.describeDBSnapshots(DescribeDbSnapshotsRequest.builder()
-        .dbInstanceIdentifier(resource.dbInstanceIdentifier())
-        .includePublic(false)
-        .includeShared(true)
-        .build()),
-      (resp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp)),
-      (noresp) -> AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, noresp))
-    );
+    if (instanceSnapshots == null) {
+      AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, mapper.nullNode()));
+      return;
+    }
+
+    final var resp = DescribeDbSnapshotsResponse.builder()
+      .dbSnapshots(instanceSnapshots.getOrDefault(resource.dbInstanceIdentifier(), List.of()))
+      .build();
+    AWSUtils.update(data.supplementaryConfiguration, Map.of(keyname, resp));
   }
 
-  private void discoverInstanceSize(DBInstance resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
+  private void requestInstanceSize(DBInstance resource, MetricDataPrefetcher metrics) {
+    String engine = resource.engine();
+    if (engine == null) {
+      return;
+    }
+    if ("docdb".equalsIgnoreCase(engine)) {
+      metrics.add("AWS/DocDB", "VolumeBytesUsed", Statistic.MAXIMUM, clusterDimensions(resource));
+    } else if (engine.startsWith("aurora")) {
+      metrics.add("AWS/RDS", "VolumeBytesUsed", Statistic.MAXIMUM, clusterDimensions(resource));
+    } else {
+      metrics.add("AWS/RDS", "FreeStorageSpace", Statistic.MINIMUM, instanceDimensions(resource));
+    }
+  }
+
+  private void discoverInstanceSize(DBInstance resource, MagpieAwsResource data, Logger logger, MetricDataPrefetcher metrics) {
     // get the DB engine and call the relevant function (as although RDS uses same client, the metrics available are different)
     String engine = resource.engine();
     if (engine != null) {
       if ("docdb".equalsIgnoreCase(engine)) {
         // although DocDB uses RDS client, it's metrics are subtly different, so get metrics via setDocDBSize
-        setDocDBSize(resource, data, logger, clientCreator);
+        setDocDBSize(resource, data, logger, metrics);
       } else if (engine.startsWith("aurora")) {
-        setAuroraDBSize(resource, data, logger, clientCreator);
+        setAuroraDBSize(resource, data, logger, metrics);
       } else {
-        setRDSSize(resource, data, logger, clientCreator);
+        setRDSSize(resource, data, logger, metrics);
       }
     } else {
       logger.warn("{} RDS instance is missing engine property", resource.dbInstanceIdentifier());
     }
   }
 
-  private void setRDSSize(DBInstance resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
+  private void setRDSSize(DBInstance resource, MagpieAwsResource data, Logger logger, MetricDataPrefetcher metrics) {
     try {
-      List<Dimension> dimensions = new ArrayList<>();
-      dimensions.add(Dimension.builder().name("DBInstanceIdentifier").value(resource.dbInstanceIdentifier()).build());
-      Pair<Long, GetMetricStatisticsResponse> freeStorageSpace =
-        AWSUtils.getCloudwatchMetricMinimum(data.awsRegion, "AWS/RDS", "FreeStorageSpace", dimensions, clientCreator);
+      final var freeStorageSpace = metrics.getLong("AWS/RDS", "FreeStorageSpace", Statistic.MINIMUM, instanceDimensions(resource));
 
-      if (freeStorageSpace.getValue0() != null) {
-        logger.warn("{} RDS instance is missing engine property", resource.dbInstanceIdentifier());
-        AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("FreeStorageSpace", freeStorageSpace.getValue0())));
+      if (freeStorageSpace.isPresent()) {
+        AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("FreeStorageSpace", freeStorageSpace.get())));
 
         // pull the relevant node(s) from the payload object. See https://boto3.amazonaws.com/v1/documentation/api/latest/reference/services/rds.html
-        long freeStorageCapacity = freeStorageSpace.getValue0();
+        long freeStorageCapacity = freeStorageSpace.get();
         long storageCapacity = resource.allocatedStorage();
 
         data.sizeInBytes = Conversions.GibToBytes(storageCapacity) - freeStorageCapacity;
@@ -205,17 +264,14 @@ public class RDSDiscovery implements AWSDiscovery {
     }
   }
 
-  private void setDocDBSize(DBInstance resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
+  private void setDocDBSize(DBInstance resource, MagpieAwsResource data, Logger logger, MetricDataPrefetcher metrics) {
     try {
-      List<Dimension> dimensions = new ArrayList<>();
-      dimensions.add(Dimension.builder().name("DBClusterIdentifier").value(resource.dbInstanceIdentifier()).build());
-      Pair<Long, GetMetricStatisticsResponse> volumeBytesUsed =
-        AWSUtils.getCloudwatchMetricMaximum(data.awsRegion, "AWS/DocDB", "VolumeBytesUsed", dimensions, clientCreator);
+      final var volumeBytesUsed = metrics.getLong("AWS/DocDB", "VolumeBytesUsed", Statistic.MAXIMUM, clusterDimensions(resource));
 
-      if (volumeBytesUsed.getValue0() != null) {
-        AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("VolumeBytesUsed", volumeBytesUsed.getValue0())));
+      if (volumeBytesUsed.isPresent()) {
+        AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("VolumeBytesUsed", volumeBytesUsed.get())));
 
-        data.sizeInBytes = volumeBytesUsed.getValue0();
+        data.sizeInBytes = volumeBytesUsed.get();
         data.maxSizeInBytes = Conversions.GibToBytes(resource.allocatedStorage());
       }
     } catch (Exception se) {
@@ -223,17 +279,14 @@ public class RDSDiscovery implements AWSDiscovery {
     }
   }
 
-  private void setAuroraDBSize(DBInstance resource, MagpieAwsResource data, Logger logger, MagpieAWSClientCreator clientCreator) {
+  private void setAuroraDBSize(DBInstance resource, MagpieAwsResource data, Logger logger, MetricDataPrefetcher metrics) {
     try {
-      List<Dimension> dimensions = new ArrayList<>();
-      dimensions.add(Dimension.builder().name("DBClusterIdentifier").value(resource.dbInstanceIdentifier()).build());
-      Pair<Long, GetMetricStatisticsResponse> volumeBytesUsed =
-        AWSUtils.getCloudwatchMetricMaximum(data.awsRegion, "AWS/RDS", "VolumeBytesUsed", dimensions, clientCreator);
+      final var volumeBytesUsed = metrics.getLong("AWS/RDS", "VolumeBytesUsed", Statistic.MAXIMUM, clusterDimensions(resource));
 
-      if (volumeBytesUsed.getValue0() != null) {
-        AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("VolumeBytesUsed", volumeBytesUsed.getValue0())));
+      if (volumeBytesUsed.isPresent()) {
+        AWSUtils.update(data.supplementaryConfiguration, Map.of("size", Map.of("VolumeBytesUsed", volumeBytesUsed.get())));
 
-        data.sizeInBytes = volumeBytesUsed.getValue0();
+        data.sizeInBytes = volumeBytesUsed.get();
         data.maxSizeInBytes = Conversions.GibToBytes(resource.allocatedStorage());
 
       }
@@ -241,4 +294,12 @@ public class RDSDiscovery implements AWSDiscovery {
       logger.warn("{} RDS instance is missing size metrics, with error {}", resource.dbInstanceArn(), se.getMessage());
     }
   }
+
+  private List<Dimension> instanceDimensions(DBInstance resource) {
+    return List.of(Dimension.builder().name("DBInstanceIdentifier").value(resource.dbInstanceIdentifier()).build());
+  }
+
+  private List<Dimension> clusterDimensions(DBInstance resource) {
+    return List.of(Dimension.builder().name("DBClusterIdentifier").value(resource.dbInstanceIdentifier()).build());
+  }
 }
@@ -23,6 +23,7 @@ import io.openraven.magpie.api.Session;
 import io.openraven.magpie.data.aws.route53.Route53HostedZone;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
+import io.openraven.magpie.plugins.aws.discovery.Enrichment;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
 import io.openraven.magpie.plugins.aws.discovery.VersionedMagpieEnvelopeProvider;
 import org.slf4j.Logger;
@@ -59,23 +60,28 @@ public class Route53Discovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final  String RESOURCE_TYPE = Route53HostedZone.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(Route53Client.builder()).build()) {
-      client.listHostedZonesPaginator().hostedZones().stream().forEach(hostedZone -> {
-        String arn = String.format("arn:aws:route53:::hostedZone/%s", hostedZone.id());
-        var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, arn)
-          .withResourceName(hostedZone.name())
-          .withResourceId(hostedZone.id())
-          .withResourceType(RESOURCE_TYPE)
-          .withConfiguration(mapper.valueToTree(hostedZone.toBuilder()))
-          .withAccountId(account)
-          .withAwsRegion(region.toString())
-          .build();
-
-        discoverRecordSets(client, hostedZone, data);
-        discoverTrafficPolicyInstances(client, hostedZone, data);
-
-        emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":hostedZone"), data.toJsonNode()));
-      });
+    try {
+      final var client = clientCreator.client(Route53Client::builder);
+      final List<Enrichment<HostedZone>> enrichments = List.of(
+        (hostedZone, data) -> discoverRecordSets(client, hostedZone, data),
+        (hostedZone, data) -> discoverTrafficPolicyInstances(client, hostedZone, data));
+
+      try (final var enricher = enricher(mapper, region, logger)) {
+        client.listHostedZonesPaginator().hostedZones().stream().forEach(hostedZone -> {
+          String arn = String.format("arn:aws:route53:::hostedZone/%s", hostedZone.id());
+          var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, arn)
+            .withResourceName(hostedZone.name())
+            .withResourceId(hostedZone.id())
+            .withResourceType(RESOURCE_TYPE)
+            .withConfiguration(mapper.valueToTree(hostedZone.toBuilder()))
+            .withAccountId(account)
+            .withAwsRegion(region.toString())
+            .build();
+
+          enricher.enrich(hostedZone, data, enrichments, enriched ->
+            emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":hostedZone"), enriched.toJsonNode())));
+        });
+      }
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
     }
@@ -26,23 +26,27 @@ import io.openraven.magpie.api.Emitter;
 import io.openraven.magpie.api.MagpieAwsResource;
 import io.openraven.magpie.api.Session;
 import io.openraven.magpie.data.aws.s3.S3Bucket;
+import io.openraven.magpie.plugins.aws.discovery.AWSDiscoveryConfig;
 import io.openraven.magpie.plugins.aws.discovery.AWSUtils;
+import io.openraven.magpie.plugins.aws.discovery.BucketRegionResolver;
 import io.openraven.magpie.plugins.aws.discovery.DiscoveryExceptions;
+import io.openraven.magpie.plugins.aws.discovery.Enrichment;
 import io.openraven.magpie.plugins.aws.discovery.MagpieAWSClientCreator;
+import io.openraven.magpie.plugins.aws.discovery.MetricDataPrefetcher;
+import io.openraven.magpie.plugins.aws.discovery.SdkPojoConverter;
 import io.openraven.magpie.plugins.aws.discovery.VersionedMagpieEnvelopeProvider;
-import org.javatuples.Pair;
 import org.slf4j.Logger;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.model.Dimension;
-import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsResponse;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.Bucket;
 import software.amazon.awssdk.services.s3.model.GetBucketAclRequest;
 import software.amazon.awssdk.services.s3.model.GetBucketAclResponse;
 import software.amazon.awssdk.services.s3.model.GetBucketEncryptionRequest;
-import software.amazon.awssdk.services.s3.model.GetBucketLocationRequest;
 import software.amazon.awssdk.services.s3.model.GetBucketLoggingRequest;
 import software.amazon.awssdk.services.s3.model.GetBucketMetricsConfigurationRequest;
 import software.amazon.awssdk.services.s3.model.GetBucketNotificationConfigurationRequest;
@@ -61,10 +65,8 @@ import software.amazon.awssdk.services.s3.model.Tag;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -80,11 +82,30 @@ public class S3Discovery implements AWSDiscovery {
 
   // This is required due to the way S3 bucket data is implemented in the AWS SDK.  Finding the region for n-buckets
   // requires n+1 API calls, and you can't filter bucket lists by region.  Using this cache we perform this operation once
-  // per session and cache it for a fixed number of minutes.
+  // per account and session and cache it for a fixed number of minutes.
   private static final Cache<String, Map<Region, List<Bucket>>> bucketCache = CacheBuilder.newBuilder()
     .expireAfterAccess(Duration.ofMinutes(20))
     .build();
 
+  private volatile BucketRegionResolver regionResolver;
+
+  @Override
+  public void configure(AWSDiscoveryConfig config, Logger logger) {
+    final var cache = config.getS3RegionCache();
+    regionResolver = new BucketRegionResolver(logger, config.getS3RegionConcurrency(),
+      cache == null || cache.isBlank() ? null : expandHome(cache));
+  }
+
+  /**
+   * Resolves a leading {@code ~} to the user's home directory; any other tilde is part of the path.
+   */
+  static Path expandHome(String path) {
+    if (path.equals("~") || path.startsWith("~/")) {
+      return Path.of(System.getProperty("user.home") + path.substring(1));
+    }
+    return Path.of(path);
+  }
+
   @Override
   public String service() {
     return SERVICE;
@@ -101,40 +122,48 @@ public class S3Discovery implements AWSDiscovery {
     final String RESOURCE_TYPE = S3Bucket.RESOURCE_TYPE;
 
     try(final var client = configureS3Client(clientCreator, region)) {
-      final var bucketOpt = getBuckets(session, client, region, logger);
+      final var bucketOpt = getBuckets(session, account, client, region, logger);
       if (bucketOpt.isEmpty()) {
         logger.debug("No buckets found for {}", region);
         return;
       }
 
-      bucketOpt.get().forEach(bucket -> {
-        var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, "arn:aws:s3:::" + bucket.name())
-          .withResourceName(bucket.name())
-          .withResourceId(bucket.name())
-          .withResourceType(RESOURCE_TYPE)
-          .withConfiguration(mapper.valueToTree(bucket.toBuilder()))
-          .withCreatedIso(bucket.creationDate())
-          .withAccountId(account)
-          .withAwsRegion(region.toString())
-          .build();
-
-        discoverEncryption(client, bucket, data);
-        discoverHosting(client, bucket, data);
-        discoverACLS(client, bucket, data);
-        discoverPublicAccess(client, bucket, data);
-        discoverLogging(client, bucket, data);
-        discoverMetrics(client, bucket, data);
-        discoverNotifications(client, bucket, data);
-        discoverBucketPolicy(client, bucket, data, mapper);
-        discoverObjectLockConfiguration(client, bucket, data);
-        discoverReplication(client, bucket, data);
-        discoverPublic(client, bucket, data, logger);
-        discoverVersioning(client, bucket, data);
-        discoverBucketTags(client, bucket, data, mapper);
-        discoverSize(bucket, data, clientCreator);
-
-        emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":bucket"), data.toJsonNode()));
-      });
+      final var metrics = new MetricDataPrefetcher(clientCreator.client(CloudWatchClient::builder, region), logger);
+      bucketOpt.get().forEach(bucket -> requestSize(bucket, metrics));
+      metrics.fetch();
+
+      final List<Enrichment<Bucket>> enrichments = List.of(
+        (bucket, data) -> discoverEncryption(client, bucket, data),
+        (bucket, data) -> discoverHosting(client, bucket, data),
+        (bucket, data) -> discoverACLS(client, bucket, data),
+        (bucket, data) -> discoverPublicAccess(client, bucket, data),
+        (bucket, data) -> discoverLogging(client, bucket, data),
+        (bucket, data) -> discoverMetrics(client, bucket, data),
+        (bucket, data) -> discoverNotifications(client, bucket, data),
+        (bucket, data) -> discoverBucketPolicy(client, bucket, data, mapper),
+        (bucket, data) -> discoverObjectLockConfiguration(client, bucket, data),
+        (bucket, data) -> discoverReplication(client, bucket, data),
+        (bucket, data) -> discoverPublic(client, bucket, data, logger),
+        (bucket, data) -> discoverVersioning(client, bucket, data),
+        (bucket, data) -> discoverBucketTags(client, bucket, data, mapper),
+        (bucket, data) -> discoverSize(bucket, data, metrics));
+
+      try (final var enricher = enricher(mapper, region, logger)) {
+        bucketOpt.get().forEach(bucket -> {
+          var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, "arn:aws:s3:::" + bucket.name())
+            .withResourceName(bucket.name())
+            .withResourceId(bucket.name())
+            .withResourceType(RESOURCE_TYPE)
+            .withConfiguration(SdkPojoConverter.forMapper(mapper).toTree(bucket))
+            .withCreatedIso(bucket.creationDate())
+            .withAccountId(account)
+            .withAwsRegion(region.toString())
+            .build();
+
+          enricher.enrich(bucket, data, enrichments, enriched ->
+            emitter.emit(VersionedMagpieEnvelopeProvider.create(session, List.of(fullService() + ":bucket"), enriched.toJsonNode())));
+        });
+      }
     } catch (SdkServiceException | SdkClientException ex) {
       DiscoveryExceptions.onDiscoveryException(RESOURCE_TYPE, null, region, ex);
     }
@@ -159,31 +188,20 @@ public class S3Discovery implements AWSDiscovery {
     return builder.region(region).build();
   }
 
-  private Optional<List<Bucket>> getBuckets(Session session, S3Client client, Region bucketRegion, Logger logger) {
+  private Optional<List<Bucket>> getBuckets(Session session, String account, S3Client client, Region bucketRegion, Logger logger) {
     try {
       //
-      // This method is executed whenever the bucket cache does not contain entries for a given session ID.  This ensures
-      // that we only make this expensive computation the lesser of once per scan or once per timeout period (defined above).
+      // This method is executed whenever the bucket cache does not contain entries for a given account and session.  This
+      // ensures that we only make this expensive computation the lesser of once per scan or once per timeout period (defined above).
       //
-      var buckets = bucketCache.get(session.getId(), () -> {
-        logger.debug("No cache found for {}, creating one now.", session);
-        var map = new HashMap<Region, List<Bucket>>();
-        client.listBuckets().buckets().forEach(bucket -> {
-          final var resp = client.getBucketLocation(GetBucketLocationRequest.builder().bucket(bucket.name()).build());
-          final var location = resp.locationConstraint();
-          // Thanks to https://sdk.amazonaws.com/java/api/latest/software/amazon/awssdk/services/s3/model/GetBucketLocationResponse.html#locationConstraint--
-          // we need to be aware of both null and UNKNOWN_TO_SDK_VERSION values.
-          var region =
-            Region.US_EAST_1.toString().equals(resp.locationConstraintAsString())
-              || resp.locationConstraintAsString().isEmpty()
-            ? Region.US_EAST_1
-            : Region.of(location.toString());
-          logger.debug("Associating {} to region {}", bucket.name(), region);
-          var list = map.getOrDefault(region, new LinkedList<>());
-          list.add(bucket);
-          map.put(region, list);
-        });
-        return map;
+      var buckets = bucketCache.get(account + ":" + session.getId(), () -> {
+        logger.debug("No cache found for {} in {}, creating one now.", account, session);
+        var resolver = regionResolver;
+        if (resolver == null) {
+          resolver = new BucketRegionResolver(logger, BucketRegionResolver.DEFAULT_CONCURRENCY, null);
+          regionResolver = resolver;
+        }
+        return resolver.resolve(client, client.listBuckets().buckets());
       });
       return Optional.ofNullable(buckets.get(bucketRegion));
     } catch (ExecutionException ex) {
@@ -360,29 +378,33 @@ public class S3Discovery implements AWSDiscovery {
     );
   }
 
-  private void discoverSize(Bucket resource, MagpieAwsResource data, MagpieAWSClientCreator clientCreator) {
-    List<Dimension> dimensions = new ArrayList<>();
-    dimensions.add(Dimension.builder().name("BucketName").value(resource.name()).build());
-    dimensions.add(Dimension.builder().name("StorageType").value("StandardStorage").build());
-    Pair<Long, GetMetricStatisticsResponse> bucketSizeBytes =
-      AWSUtils.getCloudwatchMetricMaximum(data.awsRegion, "AWS/S3", "BucketSizeBytes", dimensions, clientCreator);
+  private void requestSize(Bucket resource, MetricDataPrefetcher metrics) {
+    metrics.add("AWS/S3", "BucketSizeBytes", Statistic.MAXIMUM, sizeDimensions(resource, "StandardStorage"));
+    metrics.add("AWS/S3", "NumberOfObjects", Statistic.MAXIMUM, sizeDimensions(resource, "AllStorageTypes"));
+  }
 
-    List<Dimension> dimensions2 = new ArrayList<>();
-    dimensions2.add(Dimension.builder().name("BucketName").value(resource.name()).build());
-    dimensions2.add(Dimension.builder().name("StorageType").value("AllStorageTypes").build());
-    Pair<Long, GetMetricStatisticsResponse> numberOfObjects =
-      AWSUtils.getCloudwatchMetricMaximum(data.awsRegion, "AWS/S3", "NumberOfObjects", dimensions2, clientCreator);
+  private void discoverSize(Bucket resource, MagpieAwsResource data, MetricDataPrefetcher metrics) {
+    final var bucketSizeBytes =
+      metrics.getLong("AWS/S3", "BucketSizeBytes", Statistic.MAXIMUM, sizeDimensions(resource, "StandardStorage"));
+    final var numberOfObjects =
+      metrics.getLong("AWS/S3", "NumberOfObjects", Statistic.MAXIMUM, sizeDimensions(resource, "AllStorageTypes"));
 
-    if (numberOfObjects.getValue0() != null && bucketSizeBytes.getValue0() != null) {
+    if (numberOfObjects.isPresent() && bucketSizeBytes.isPresent()) {
       AWSUtils.update(data.supplementaryConfiguration,
         Map.of("size",
-          Map.of("BucketSizeBytes", bucketSizeBytes.getValue0(),
-            "NumberOfObjects", numberOfObjects.getValue0())));
+          Map.of("BucketSizeBytes", bucketSizeBytes.get(),
+            "NumberOfObjects", numberOfObjects.get())));
 
-      data.sizeInBytes = bucketSizeBytes.getValue0();
+      data.sizeInBytes = bucketSizeBytes.get();
     }
   }
 
+  private List<Dimension> sizeDimensions(Bucket resource, String storageType) {
+    return List.of(
+      Dimension.builder().name("BucketName").value(resource.name()).build(),
+      Dimension.builder().name("StorageType").value(storageType).build());
+  }
+
   private JsonNode parsePolicyDocument(ObjectMapper mapper, String policyDocument) {
     try {
       return mapper.readTree(URLDecoder.decode(policyDocument, StandardCharsets.UTF_8));
@@ -56,7 +56,8 @@ public class StorageGatewayDiscovery implements AWSDiscovery {
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
     final String RESOURCE_TYPE = StorageGatewayGateway.RESOURCE_TYPE;
 
-    try (final var client = clientCreator.apply(StorageGatewayClient.builder()).build()) {
+    try {
+      final var client = clientCreator.client(StorageGatewayClient::builder);
       client.listGatewaysPaginator().gateways().stream().forEach(gateway -> {
         var data = new MagpieAwsResource.MagpieAwsResourceBuilder(mapper, gateway.gatewayARN())
           .withResourceName(gateway.gatewayName())
@@ -51,10 +51,9 @@ public class VPCDiscovery implements AWSDiscovery {
 
   public void discover(ObjectMapper mapper, Session session, Region region, Emitter emitter, Logger logger, String account, MagpieAWSClientCreator clientCreator) {
 
-    try (final var client = clientCreator.apply(Ec2Client.builder()).build()) {
-      discoverVpcs(mapper, session, client, region, emitter, account);
-      discoverVpcPeeringConnections(mapper, session, client, region, emitter, account);
-    }
+    final var client = clientCreator.client(Ec2Client::builder);
+    discoverVpcs(mapper, session, client, region, emitter, account);
+    discoverVpcPeeringConnections(mapper, session, client, region, emitter, account);
   }
 
   @Override
@@ -9,10 +9,23 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
 import software.amazon.awssdk.regions.Region;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static software.amazon.awssdk.regions.Region.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -60,10 +73,72 @@ public class AWSDiscoveryPluginTest {
 
   }
 
+  @Test
+  public void testFilteringForAccountEnabledRegions() {
+    Mockito.when(awsDiscoveryMock.getSupportedRegions()).thenReturn(List.of(US_EAST_1, AP_EAST_1, AWS_GLOBAL));
+
+    awsDiscoveryPlugin.init(awsDiscoveryConfig, logger);
+    final var skipped = new TreeSet<String>();
+    List<Region> regions = awsDiscoveryPlugin.getRegionsForDiscovery(awsDiscoveryMock, Set.of(US_EAST_1, EU_WEST_1), skipped);
+
+    assertEquals(List.of(US_EAST_1, AWS_GLOBAL), regions);
+    assertEquals(Set.of(AP_EAST_1.id()), skipped);
+  }
+
+  @Test
+  public void testLookupRegionSkipsRegionsWithoutEc2() {
+    assertEquals(US_WEST_2, AWSDiscoveryPlugin.lookupRegion(List.of(AWS_GLOBAL.id(), US_WEST_2.id())));
+    assertEquals(CN_NORTH_1, AWSDiscoveryPlugin.lookupRegion(List.of(AWS_CN_GLOBAL.id(), CN_NORTH_1.id())));
+    assertEquals(US_EAST_1, AWSDiscoveryPlugin.lookupRegion(List.of(AWS_GLOBAL.id())));
+    assertEquals(US_EAST_1, AWSDiscoveryPlugin.lookupRegion(List.of()));
+  }
+
   // Forced to copy this method due to unavailability of testing
   private boolean isNotIgnoredRegion(String region) {
     return awsDiscoveryConfig.getIgnoredRegions()
       .stream()
       .noneMatch(pattern -> Pattern.matches(pattern, region));
   }
+
+  @Test
+  public void testRoleAccountIsLookedUpOnceByConcurrentCallers() throws Exception {
+    final Map<String, CompletableFuture<String>> roleAccounts = new ConcurrentHashMap<>();
+    final var lookups = new AtomicInteger();
+    final var release = new CountDownLatch(1);
+    final Supplier<String> lookup = () -> {
+      lookups.incrementAndGet();
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return "123456789012";
+    };
+
+    final var executor = Executors.newFixedThreadPool(8);
+    try {
+      final var results = new ArrayList<Future<String>>();
+      for (int i = 0; i < 8; i++) {
+        results.add(executor.submit(() -> AWSDiscoveryPlugin.roleAccount(roleAccounts, "arn:role", lookup)));
+      }
+      Thread.sleep(100);
+      release.countDown();
+      for (var result : results) {
+        assertEquals("123456789012", result.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, lookups.get());
+  }
+
+  @Test
+  public void testFailedRoleAccountLookupIsRetried() {
+    final Map<String, CompletableFuture<String>> roleAccounts = new ConcurrentHashMap<>();
+
+    assertThrows(IllegalStateException.class, () -> AWSDiscoveryPlugin.roleAccount(roleAccounts, "arn:role", () -> {
+      throw new IllegalStateException("denied");
+    }));
+    assertEquals("123456789012", AWSDiscoveryPlugin.roleAccount(roleAccounts, "arn:role", () -> "123456789012"));
+  }
 }
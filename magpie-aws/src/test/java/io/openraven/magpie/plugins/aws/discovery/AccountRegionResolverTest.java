@@ -0,0 +1,69 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeRegionsResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class AccountRegionResolverTest {
+
+  @Mock
+  private Ec2Client ec2;
+
+  @Test
+  public void testRegionsAreCachedUntilTheyExpire() {
+    when(ec2.describeRegions()).thenReturn(DescribeRegionsResponse.builder()
+      .regions(
+        software.amazon.awssdk.services.ec2.model.Region.builder().regionName("us-east-1").build(),
+        software.amazon.awssdk.services.ec2.model.Region.builder().regionName("eu-west-1").build())
+      .build());
+
+    final var start = Instant.parse("2021-06-01T00:00:00Z");
+    final var resolver = new AccountRegionResolver(LoggerFactory.getLogger(AccountRegionResolverTest.class), Duration.ofMinutes(60),
+      Clock.fixed(start, ZoneOffset.UTC));
+    final var regions = resolver.enabledRegions("123456789012", () -> ec2);
+    assertEquals(Set.of(Region.US_EAST_1, Region.EU_WEST_1), regions);
+    assertEquals(regions, resolver.enabledRegions("123456789012", () -> ec2));
+    verify(ec2, times(1)).describeRegions();
+
+    final var later = new AccountRegionResolver(LoggerFactory.getLogger(AccountRegionResolverTest.class), Duration.ofMinutes(60),
+      Clock.offset(Clock.fixed(start, ZoneOffset.UTC), Duration.ofMinutes(61)));
+    later.enabledRegions("123456789012", () -> ec2);
+    verify(ec2, times(2)).describeRegions();
+
+    assertTrue(AccountRegionResolver.isEnabled(Region.US_EAST_1, regions));
+    assertTrue(AccountRegionResolver.isEnabled(Region.AWS_GLOBAL, regions));
+    assertFalse(AccountRegionResolver.isEnabled(Region.AP_EAST_1, regions));
+  }
+
+  @Test
+  public void testFailureSkipsNothing() {
+    when(ec2.describeRegions()).thenThrow(Ec2Exception.builder().statusCode(403).message("denied").build());
+
+    final var resolver = new AccountRegionResolver(LoggerFactory.getLogger(AccountRegionResolverTest.class), Duration.ofMinutes(60));
+    assertNull(resolver.enabledRegions("123456789012", () -> ec2));
+    assertNull(resolver.enabledRegions("123456789012", () -> ec2));
+    verify(ec2, times(1)).describeRegions();
+    assertTrue(AccountRegionResolver.isEnabled(Region.AP_EAST_1, null));
+  }
+}
@@ -0,0 +1,77 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveRateLimiterTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  public void testThrottlingHalvesTheRateOncePerBurst() {
+    final var limiter = new AdaptiveRateLimiter(40, 100, now::get);
+
+    limiter.onThrottle();
+    limiter.onThrottle();
+    limiter.onThrottle();
+    assertEquals(20, limiter.getRate());
+    assertEquals(3, limiter.getThrottles());
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    limiter.onThrottle();
+    assertEquals(10, limiter.getRate());
+  }
+
+  @Test
+  public void testSuccessRampsBackUpToTheMaximum() {
+    final var limiter = new AdaptiveRateLimiter(10, 12, now::get);
+
+    // About one call per second more for each second's worth of successful calls.
+    for (int i = 0; i < 10; i++) {
+      limiter.onSuccess();
+    }
+    assertTrue(limiter.getRate() > 10.9 && limiter.getRate() < 11.1, String.valueOf(limiter.getRate()));
+
+    for (int i = 0; i < 1000; i++) {
+      limiter.onSuccess();
+    }
+    assertEquals(12, limiter.getRate());
+  }
+
+  @Test
+  public void testCallsWaitOnceTheBurstIsSpent() {
+    // With the clock standing still, only the initial burst is free.
+    final var limiter = new AdaptiveRateLimiter(1000, 1000, now::get);
+    for (int i = 0; i < 1000; i++) {
+      limiter.acquire();
+    }
+    assertEquals(0, limiter.getWaits());
+
+    limiter.acquire();
+    limiter.acquire();
+    assertEquals(2, limiter.getWaits());
+  }
+
+  @Test
+  public void testAsyncCallsAreDelayedWithoutBlocking() {
+    final var limiter = new AdaptiveRateLimiter(10, 10, now::get);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(limiter.acquireAsync().isDone());
+    }
+
+    final var start = System.nanoTime();
+    final var delayed = limiter.acquireAsync();
+    assertFalse(delayed.isDone());
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+    assertEquals(1, limiter.getWaits());
+
+    delayed.join();
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+  }
+}
@@ -0,0 +1,123 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieAwsResource;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncResourceEnricherTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static MagpieAwsResource resource(String name) {
+    return new MagpieAwsResource.MagpieAwsResourceBuilder(MAPPER, "arn:aws:test:::" + name)
+      .withResourceName(name)
+      .withResourceType("Test::Resource")
+      .build();
+  }
+
+  @Test
+  public void testEveryResourceIsEnrichedWithBoundedDemand() throws Exception {
+    final var demand = new AtomicLong();
+    final var enriching = new AtomicInteger();
+    final var peak = new AtomicInteger();
+    final var names = new ArrayList<String>();
+    for (int i = 0; i < 200; i++) {
+      names.add("r" + i);
+    }
+
+    final List<AsyncEnrichment<String>> enrichments = List.of(
+      (name, data) -> CompletableFuture.runAsync(() -> {
+        peak.accumulateAndGet(enriching.incrementAndGet(), Math::max);
+        AWSUtils.update(data.supplementaryConfiguration, Map.<String, Object>of("first", name));
+        enriching.decrementAndGet();
+      }),
+      (name, data) -> CompletableFuture.failedFuture(new IllegalStateException("boom")),
+      (name, data) -> CompletableFuture.runAsync(() -> data.sizeInBytes = 42L));
+
+    final var completed = new ArrayList<MagpieAwsResource>();
+    new AsyncResourceEnricher(MAPPER, Region.US_EAST_1, LoggerFactory.getLogger(AsyncResourceEnricherTest.class), 8)
+      .enrichAll(publisher(names, demand), AsyncResourceEnricherTest::resource, enrichments, enriched -> {
+        synchronized (completed) {
+          completed.add(enriched);
+        }
+      })
+      .get(10, TimeUnit.SECONDS);
+
+    assertEquals(200, completed.size());
+    completed.forEach(enriched -> {
+      assertEquals(enriched.resourceName, enriched.supplementaryConfiguration.get("first").asText());
+      assertEquals(42L, enriched.sizeInBytes);
+    });
+    assertTrue(peak.get() <= 8);
+  }
+
+  @Test
+  public void testFailedListingFailsTheFuture() {
+    final Publisher<String> failing = subscriber -> subscriber.onSubscribe(new Subscription() {
+      @Override
+      public void request(long n) {
+        subscriber.onError(new IllegalStateException("listing failed"));
+      }
+
+      @Override
+      public void cancel() {
+      }
+    });
+
+    final var future = new AsyncResourceEnricher(MAPPER, Region.US_EAST_1, LoggerFactory.getLogger(AsyncResourceEnricherTest.class))
+      .enrichAll(failing, AsyncResourceEnricherTest::resource, List.of(), enriched -> {
+      });
+
+    assertTrue(future.isCompletedExceptionally());
+  }
+
+  /**
+   * Publishes {@code items} on request, failing the test if more are ever requested than the subscriber could have
+   * room for.
+   */
+  private static Publisher<String> publisher(List<String> items, AtomicLong demand) {
+    return subscriber -> subscriber.onSubscribe(new Subscription() {
+      private int next;
+      private boolean emitting;
+
+      @Override
+      public synchronized void request(long n) {
+        demand.addAndGet(n);
+        assertTrue(demand.get() <= 8);
+        // Requests made from within onNext are served by the loop already running.
+        if (emitting) {
+          return;
+        }
+        emitting = true;
+        while (demand.get() > 0 && next < items.size()) {
+          demand.decrementAndGet();
+          subscriber.onNext(items.get(next++));
+        }
+        emitting = false;
+        if (next == items.size()) {
+          next++;
+          subscriber.onComplete();
+        }
+      }
+
+      @Override
+      public void cancel() {
+      }
+    });
+  }
+}
@@ -0,0 +1,117 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.backup.BackupClient;
+import software.amazon.awssdk.services.backup.model.BackupException;
+import software.amazon.awssdk.services.backup.model.BackupJob;
+import software.amazon.awssdk.services.backup.model.ListBackupJobsRequest;
+import software.amazon.awssdk.services.backup.model.ListBackupJobsResponse;
+import software.amazon.awssdk.services.backup.paginators.ListBackupJobsIterable;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BackupJobIndexTest {
+
+  private static final Instant NOW = Instant.parse("2021-06-01T00:00:00Z");
+
+  @Mock
+  private BackupClient client;
+
+  @Test
+  public void testJobsAreListedOnceAndGroupedByResource() {
+    when(client.listBackupJobsPaginator(any(ListBackupJobsRequest.class)))
+      .thenAnswer(invocation -> new ListBackupJobsIterable(client, invocation.getArgument(0)));
+    when(client.listBackupJobs(argThat((ListBackupJobsRequest request) -> request != null && request.nextToken() == null)))
+      .thenReturn(ListBackupJobsResponse.builder()
+        .backupJobs(job("1", "arn:volume/a"), job("2", "arn:volume/b"))
+        .nextToken("page-2")
+        .build());
+    when(client.listBackupJobs(argThat((ListBackupJobsRequest request) -> request != null && "page-2".equals(request.nextToken()))))
+      .thenReturn(ListBackupJobsResponse.builder()
+        .backupJobs(job("3", "arn:volume/a"))
+        .build());
+
+    final var index = new BackupJobIndex(Period.ofDays(45), Duration.ofMinutes(15), Clock.fixed(NOW, ZoneOffset.UTC));
+    final var logger = LoggerFactory.getLogger(BackupJobIndexTest.class);
+
+    assertEquals(2, index.jobs("arn:volume/a", Region.US_EAST_1, client, logger).size());
+    assertEquals("2", index.jobs("arn:volume/b", Region.US_EAST_1, client, logger).get(0).build().backupJobId());
+    assertTrue(index.jobs("arn:volume/c", Region.US_EAST_1, client, logger).isEmpty());
+
+    verify(client, times(1)).listBackupJobsPaginator(argThat((ListBackupJobsRequest request) ->
+      request.byResourceArn() == null && request.byCreatedAfter().equals(NOW.minus(Period.ofDays(45)))));
+  }
+
+  @Test
+  public void testFailedListingIsNotKept() {
+    when(client.listBackupJobsPaginator(any(ListBackupJobsRequest.class)))
+      .thenThrow(BackupException.builder().statusCode(503).message("unavailable").build())
+      .thenAnswer(invocation -> new ListBackupJobsIterable(client, invocation.getArgument(0)));
+    when(client.listBackupJobs(any(ListBackupJobsRequest.class)))
+      .thenReturn(ListBackupJobsResponse.builder().backupJobs(job("1", "arn:volume/a")).build());
+
+    final var index = new BackupJobIndex(Period.ofDays(45), Duration.ofMinutes(15), Clock.fixed(NOW, ZoneOffset.UTC));
+    final var logger = LoggerFactory.getLogger(BackupJobIndexTest.class);
+
+    assertNull(index.jobs("arn:volume/a", Region.US_EAST_1, client, logger));
+    assertEquals(1, index.jobs("arn:volume/a", Region.US_EAST_1, client, logger).size());
+    verify(client, times(2)).listBackupJobsPaginator(any(ListBackupJobsRequest.class));
+  }
+
+  @Test
+  public void testRefusedListingIsKeptUntilItExpires() {
+    when(client.listBackupJobsPaginator(any(ListBackupJobsRequest.class)))
+      .thenThrow(BackupException.builder().statusCode(403).message("denied").build())
+      .thenAnswer(invocation -> new ListBackupJobsIterable(client, invocation.getArgument(0)));
+    when(client.listBackupJobs(any(ListBackupJobsRequest.class)))
+      .thenReturn(ListBackupJobsResponse.builder().backupJobs(job("1", "arn:volume/a")).build());
+    final var clock = mock(Clock.class);
+    when(clock.instant()).thenReturn(NOW, NOW.plusSeconds(60), NOW.plus(Duration.ofMinutes(15)));
+
+    final var index = new BackupJobIndex(Period.ofDays(45), Duration.ofMinutes(15), clock);
+    final var logger = LoggerFactory.getLogger(BackupJobIndexTest.class);
+
+    assertNull(index.jobs("arn:volume/a", Region.US_EAST_1, client, logger));
+    assertNull(index.jobs("arn:volume/b", Region.US_EAST_1, client, logger));
+    verify(client, times(1)).listBackupJobsPaginator(any(ListBackupJobsRequest.class));
+
+    assertEquals(1, index.jobs("arn:volume/a", Region.US_EAST_1, client, logger).size());
+    verify(client, times(2)).listBackupJobsPaginator(any(ListBackupJobsRequest.class));
+  }
+
+  @Test
+  public void testJobsWithoutResourceAreIgnored() {
+    when(client.listBackupJobsPaginator(any(ListBackupJobsRequest.class)))
+      .thenAnswer(invocation -> new ListBackupJobsIterable(client, invocation.getArgument(0)));
+    when(client.listBackupJobs(any(ListBackupJobsRequest.class)))
+      .thenReturn(ListBackupJobsResponse.builder().backupJobs(job("1", null), job("2", "arn:volume/a")).build());
+
+    final var index = new BackupJobIndex(Period.ofDays(45), Duration.ofMinutes(15), Clock.fixed(NOW, ZoneOffset.UTC));
+
+    assertEquals(1, index.jobs("arn:volume/a", Region.US_EAST_1, client, LoggerFactory.getLogger(BackupJobIndexTest.class)).size());
+  }
+
+  private static BackupJob job(String id, String resourceArn) {
+    return BackupJob.builder().backupJobId(id).resourceArn(resourceArn).build();
+  }
+}
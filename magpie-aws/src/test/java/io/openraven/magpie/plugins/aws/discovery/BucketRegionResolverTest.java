@@ -0,0 +1,84 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Bucket;
+import software.amazon.awssdk.services.s3.model.GetBucketLocationRequest;
+import software.amazon.awssdk.services.s3.model.GetBucketLocationResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BucketRegionResolverTest {
+
+  private static final Instant CREATED = Instant.parse("2021-06-01T00:00:00Z");
+
+  @Mock
+  private S3Client client;
+
+  private static Bucket bucket(String name, Instant created) {
+    return Bucket.builder().name(name).creationDate(created).build();
+  }
+
+  private void stubLocations() {
+    when(client.getBucketLocation(any(GetBucketLocationRequest.class))).thenAnswer(invocation -> {
+      final GetBucketLocationRequest request = invocation.getArgument(0);
+      switch (request.bucket()) {
+        case "east":
+          return GetBucketLocationResponse.builder().locationConstraint("").build();
+        case "denied":
+          throw S3Exception.builder().message("Access Denied").statusCode(403).build();
+        default:
+          return GetBucketLocationResponse.builder().locationConstraint("eu-west-1").build();
+      }
+    });
+  }
+
+  private BucketRegionResolver resolver(Path cacheFile) {
+    return new BucketRegionResolver(LoggerFactory.getLogger(BucketRegionResolverTest.class), 4, cacheFile);
+  }
+
+  @Test
+  public void testBucketsAreGroupedByRegion() {
+    stubLocations();
+    final var buckets = List.of(bucket("east", CREATED), bucket("west-a", CREATED), bucket("west-b", CREATED), bucket("denied", CREATED));
+
+    final var regions = resolver(null).resolve(client, buckets);
+
+    assertEquals(Map.of(
+      Region.US_EAST_1, List.of(buckets.get(0)),
+      Region.EU_WEST_1, List.of(buckets.get(1), buckets.get(2))), regions);
+  }
+
+  @Test
+  public void testRegionsPersistAcrossRuns(@TempDir Path dir) {
+    stubLocations();
+    final var cacheFile = dir.resolve("cache").resolve("s3-regions.json");
+    final var buckets = List.of(bucket("east", CREATED), bucket("west", CREATED));
+    resolver(cacheFile).resolve(client, buckets);
+    verify(client, times(2)).getBucketLocation(any(GetBucketLocationRequest.class));
+
+    // A later run trusts the stored regions, but looks up a bucket that has since been recreated.
+    final var recreated = bucket("west", CREATED.plusSeconds(60));
+    final var regions = resolver(cacheFile).resolve(client, List.of(buckets.get(0), recreated));
+
+    verify(client, times(3)).getBucketLocation(any(GetBucketLocationRequest.class));
+    assertEquals(Map.of(Region.US_EAST_1, List.of(buckets.get(0)), Region.EU_WEST_1, List.of(recreated)), regions);
+  }
+}
@@ -0,0 +1,132 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClientBuilder;
+import software.amazon.awssdk.services.sts.StsClient;
+import software.amazon.awssdk.services.sts.StsClientBuilder;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClientRegistryTest {
+
+  @Test
+  public void testClientsAreSharedPerCredentialsRegionAndType() {
+    final var registry = new ClientRegistry(4);
+    try {
+      final var sts = registry.client("a", Region.US_EAST_1, StsClient::builder, ClientRegistryTest::configureSts);
+      assertSame(sts, registry.client("a", Region.US_EAST_1, StsClient::builder, ClientRegistryTest::configureSts));
+
+      assertNotSame(sts, registry.client("b", Region.US_EAST_1, StsClient::builder, ClientRegistryTest::configureSts));
+      assertNotSame(sts, registry.client("a", Region.US_WEST_2, StsClient::builder,
+        b -> configureSts(b).region(Region.US_WEST_2)));
+      registry.client("a", Region.US_EAST_1, CloudWatchClient::builder, ClientRegistryTest::configureCloudWatch);
+
+      assertEquals(4, registry.size());
+    } finally {
+      registry.close();
+    }
+  }
+
+  @Test
+  public void testCachedClientsDontCreateBuilders() {
+    final var registry = new ClientRegistry(4);
+    final var created = new AtomicInteger();
+    final Supplier<StsClientBuilder> builder = () -> {
+      created.incrementAndGet();
+      return StsClient.builder();
+    };
+    try {
+      final var sts = registry.client("a", Region.US_EAST_1, builder, ClientRegistryTest::configureSts);
+      final var built = created.get();
+      for (int i = 0; i < 10; i++) {
+        assertSame(sts, registry.client("a", Region.US_EAST_1, builder, ClientRegistryTest::configureSts));
+      }
+
+      assertEquals(built, created.get());
+    } finally {
+      registry.close();
+    }
+  }
+
+  @Test
+  public void testSharedValuesArePerCredentialsAndRegion() {
+    final var registry = new ClientRegistry(4);
+    final var value = registry.shared("a", Region.US_EAST_1, StringBuilder.class, StringBuilder::new);
+
+    assertSame(value, registry.shared("a", Region.US_EAST_1, StringBuilder.class, StringBuilder::new));
+    assertNotSame(value, registry.shared("a", Region.US_WEST_2, StringBuilder.class, StringBuilder::new));
+    assertNotSame(value, registry.shared("b", Region.US_EAST_1, StringBuilder.class, StringBuilder::new));
+
+    registry.close();
+    assertThrows(IllegalStateException.class,
+      () -> registry.shared("a", Region.US_EAST_1, StringBuilder.class, StringBuilder::new));
+  }
+
+  @Test
+  public void testCloseReleasesClients() {
+    final var registry = new ClientRegistry(4);
+    registry.client("a", Region.US_EAST_1, StsClient::builder, ClientRegistryTest::configureSts);
+    registry.close();
+
+    assertEquals(0, registry.size());
+    assertThrows(IllegalStateException.class,
+      () -> registry.client("a", Region.US_EAST_1, StsClient::builder, ClientRegistryTest::configureSts));
+  }
+
+  @Test
+  public void testCredentialsProvidersAreSharedAndClosed() {
+    final var registry = new ClientRegistry(4);
+    final var created = new AtomicInteger();
+    final var closed = new AtomicInteger();
+    final Supplier<AwsCredentialsProvider> provider = () -> {
+      created.incrementAndGet();
+      return new ClosingProvider(closed);
+    };
+
+    final var first = registry.credentialsProvider("role-a", provider);
+    assertSame(first, registry.credentialsProvider("role-a", provider));
+    assertNotSame(first, registry.credentialsProvider("role-b", provider));
+    assertEquals(2, created.get());
+
+    registry.close();
+    assertEquals(2, closed.get());
+  }
+
+  private static class ClosingProvider implements AwsCredentialsProvider, SdkAutoCloseable {
+    private final AtomicInteger closed;
+
+    ClosingProvider(AtomicInteger closed) {
+      this.closed = closed;
+    }
+
+    @Override
+    public AwsCredentials resolveCredentials() {
+      return AnonymousCredentialsProvider.create().resolveCredentials();
+    }
+
+    @Override
+    public void close() {
+      closed.incrementAndGet();
+    }
+  }
+
+  private static StsClientBuilder configureSts(StsClientBuilder builder) {
+    return builder.region(Region.US_EAST_1).credentialsProvider(AnonymousCredentialsProvider.create());
+  }
+
+  private static CloudWatchClientBuilder configureCloudWatch(CloudWatchClientBuilder builder) {
+    return builder.region(Region.US_EAST_1).credentialsProvider(AnonymousCredentialsProvider.create());
+  }
+}
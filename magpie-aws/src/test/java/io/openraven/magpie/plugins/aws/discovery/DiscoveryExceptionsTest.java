@@ -0,0 +1,48 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DiscoveryExceptionsTest {
+
+  @Test
+  public void testExceptionsAreKeyedByTheirRuntimeType() {
+    DiscoveryExceptions.shutdown(NOPLogger.NOP_LOGGER);
+
+    final Exception denied = S3Exception.builder()
+      .statusCode(403)
+      .awsErrorDetails(AwsErrorDetails.builder().errorCode("AccessDenied").build())
+      .build();
+    final Exception unreachable = SdkClientException.create("unreachable");
+    DiscoveryExceptions.onDiscoveryException("AWS::S3::Bucket", "bucket", Region.US_EAST_1, denied);
+    DiscoveryExceptions.onDiscoveryException("AWS::S3::Bucket", "bucket", Region.US_EAST_1, unreachable);
+    DiscoveryExceptions.onDiscoveryException("AWS::S3::Bucket", "bucket", Region.US_EAST_1, new IllegalStateException());
+
+    final var summary = mock(Logger.class);
+    DiscoveryExceptions.shutdown(summary);
+
+    final var keys = ArgumentCaptor.forClass(Object.class);
+    verify(summary, atLeastOnce()).info(eq("  {} x{}"), keys.capture(), any());
+    assertEquals(List.of(
+        "AWS::S3::Bucket in us-east-1: AwsServiceException AccessDenied",
+        "AWS::S3::Bucket in us-east-1: Exception IllegalStateException",
+        "AWS::S3::Bucket in us-east-1: SdkException SdkClientException"),
+      keys.getAllValues().stream().map(String::valueOf).sorted().collect(Collectors.toList()));
+  }
+}
@@ -0,0 +1,173 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DiscoverySchedulerTest {
+
+  private final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> peak = new ConcurrentHashMap<>();
+
+  private void enter(String key) {
+    final var now = running.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    peak.computeIfAbsent(key, k -> new AtomicInteger()).accumulateAndGet(now, Math::max);
+  }
+
+  private void exit(String key) {
+    running.get(key).decrementAndGet();
+  }
+
+  @Test
+  public void testLimitsAreRespected() throws Exception {
+    final var completed = new AtomicInteger();
+    final var tasks = new ArrayList<DiscoveryScheduler.Task>();
+    for (var account : new String[]{"a", "b", "c"}) {
+      for (var service : new String[]{"ec2", "s3", "rds", "iam"}) {
+        for (int region = 0; region < 5; region++) {
+          tasks.add(new DiscoveryScheduler.Task(account, service, () -> {
+            enter("*");
+            enter("account:" + account);
+            enter("service:" + service);
+            try {
+              Thread.sleep(5L);
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+            exit("service:" + service);
+            exit("account:" + account);
+            exit("*");
+            completed.incrementAndGet();
+          }));
+        }
+      }
+    }
+
+    new DiscoveryScheduler(6, 3, 2, LoggerFactory.getLogger(DiscoverySchedulerTest.class)).run(tasks);
+
+    assertEquals(tasks.size(), completed.get());
+    assertTrue(peak.get("*").get() <= 6);
+    // Enough independent work exists that the global limit should be reached.
+    assertEquals(6, peak.get("*").get());
+    peak.forEach((key, value) -> {
+      if (key.startsWith("account:")) {
+        assertTrue(value.get() <= 3, key);
+      } else if (key.startsWith("service:")) {
+        assertTrue(value.get() <= 2, key);
+      }
+    });
+  }
+
+  @Test
+  public void testFailingTaskDoesNotStopOthers() throws Exception {
+    final var completed = new AtomicInteger();
+    final var tasks = new ArrayList<DiscoveryScheduler.Task>();
+    tasks.add(new DiscoveryScheduler.Task("a", "ec2", () -> {
+      throw new IllegalStateException("boom");
+    }));
+    for (int i = 0; i < 10; i++) {
+      tasks.add(new DiscoveryScheduler.Task("a", "s3", completed::incrementAndGet));
+    }
+
+    new DiscoveryScheduler(1, 0, 0, LoggerFactory.getLogger(DiscoverySchedulerTest.class)).run(tasks);
+
+    assertEquals(10, completed.get());
+  }
+
+  @Test
+  public void testTaskThrowingAnErrorFailsTheRun() {
+    final var error = new StackOverflowError();
+    final var tasks = List.of(
+      new DiscoveryScheduler.Task("a", "ec2", () -> {
+        throw error;
+      }),
+      new DiscoveryScheduler.Task("a", "s3", () -> {
+      }));
+
+    final var scheduler = new DiscoveryScheduler(1, 0, 0, LoggerFactory.getLogger(DiscoverySchedulerTest.class));
+    final var thrown = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(StackOverflowError.class, () -> scheduler.run(tasks)));
+    assertSame(error, thrown);
+  }
+
+  @Test
+  public void testAsyncTaskHoldsItsSlotUntilComplete() throws Exception {
+    final var order = Collections.synchronizedList(new ArrayList<String>());
+    final var tasks = List.of(
+      DiscoveryScheduler.Task.async("a", "lambda", () -> {
+        order.add("start");
+        // Completes on another thread once the scheduler's thread has been handed back.
+        return CompletableFuture.runAsync(() -> {
+          try {
+            Thread.sleep(20L);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          order.add("complete");
+        });
+      }),
+      new DiscoveryScheduler.Task("a", "lambda", () -> order.add("next")));
+
+    new DiscoveryScheduler(1, 0, 0, LoggerFactory.getLogger(DiscoverySchedulerTest.class)).run(tasks);
+
+    assertEquals(List.of("start", "complete", "next"), order);
+  }
+
+  @Test
+  public void testAccountsTakeTurns() throws Exception {
+    final var order = Collections.synchronizedList(new ArrayList<String>());
+    final var tasks = new ArrayList<DiscoveryScheduler.Task>();
+    for (int i = 0; i < 10; i++) {
+      tasks.add(new DiscoveryScheduler.Task("large", "ec2", () -> order.add("large")));
+    }
+    tasks.add(new DiscoveryScheduler.Task("small", "ec2", () -> order.add("small")));
+
+    new DiscoveryScheduler(1, 0, 0, LoggerFactory.getLogger(DiscoverySchedulerTest.class)).run(tasks);
+
+    // Queued behind all of the large account's tasks, but only made to wait for its first.
+    assertEquals(1, order.indexOf("small"));
+  }
+
+  @Test
+  public void testAccountsInFlightAreLimited() throws Exception {
+    final var remaining = new ConcurrentHashMap<String, AtomicInteger>();
+    final var inFlight = ConcurrentHashMap.<String>newKeySet();
+    final var peakInFlight = new AtomicInteger();
+    final var tasks = new ArrayList<DiscoveryScheduler.Task>();
+    for (var account : new String[]{"a", "b", "c", "d", "e"}) {
+      remaining.put(account, new AtomicInteger(4));
+      for (int i = 0; i < 4; i++) {
+        tasks.add(new DiscoveryScheduler.Task(account, "s3", () -> {
+          inFlight.add(account);
+          peakInFlight.accumulateAndGet(inFlight.size(), Math::max);
+          try {
+            Thread.sleep(2L);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          if (remaining.get(account).decrementAndGet() == 0) {
+            inFlight.remove(account);
+          }
+        }));
+      }
+    }
+
+    new DiscoveryScheduler(8, 0, 0, 2, LoggerFactory.getLogger(DiscoverySchedulerTest.class)).run(tasks);
+
+    remaining.values().forEach(count -> assertEquals(0, count.get()));
+    assertEquals(2, peakInFlight.get());
+  }
+}
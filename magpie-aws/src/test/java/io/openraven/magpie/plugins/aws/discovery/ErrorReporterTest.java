@@ -0,0 +1,63 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import io.sentry.event.Event;
+import io.sentry.event.EventBuilder;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ErrorReporterTest {
+
+  private final AtomicLong now = new AtomicLong(1_000_000);
+  private final List<Event> sent = new ArrayList<>();
+  private final ErrorReporter reporter = new ErrorReporter(60_000, now::get, builder -> sent.add(builder.build()), null);
+
+  @Test
+  public void testRepeatsAreSentOnceWithTheirCount() {
+    for (int i = 0; i < 1000; i++) {
+      final var first = reporter.report("AWS::S3::Bucket", Region.US_EAST_1, "AwsServiceException", "AccessDenied", Event.Level.WARNING, new RuntimeException("denied " + i));
+      assertEquals(i == 0, first);
+    }
+    assertTrue(reporter.report("AWS::S3::Bucket", Region.US_WEST_2, "AwsServiceException", "AccessDenied", Event.Level.WARNING, new RuntimeException("denied")));
+
+    now.addAndGet(59_999);
+    reporter.flush(false);
+    assertTrue(sent.isEmpty());
+
+    now.addAndGet(1);
+    reporter.flush(false);
+    assertEquals(2, sent.size());
+    final var event = sent.stream().filter(e -> "us-east-1".equals(e.getExtra().get("Region"))).findFirst().orElseThrow();
+    assertEquals(1000L, event.getExtra().get("Occurrences"));
+    assertEquals("AccessDenied", event.getExtra().get("ErrorCode"));
+    assertEquals(List.of("AWS::S3::Bucket", "us-east-1", "AccessDenied"), event.getFingerprint());
+    assertEquals(1001, reporter.getTotal());
+  }
+
+  @Test
+  public void testCloseSendsWhateverIsPending() {
+    reporter.report("AWS::Lambda::Function", Region.EU_WEST_1, "SdkServiceException", "500", Event.Level.ERROR, new RuntimeException("boom"));
+    reporter.close();
+
+    assertEquals(1, sent.size());
+    assertEquals(1L, sent.get(0).getExtra().get("Occurrences"));
+  }
+
+  @Test
+  public void testKindsBeyondTheLimitAreOnlyCounted() {
+    for (int i = 0; i <= ErrorReporter.MAX_PENDING; i++) {
+      reporter.report("type" + i, Region.US_EAST_1, "Exception", "IllegalStateException", Event.Level.ERROR, new IllegalStateException());
+    }
+    reporter.close();
+
+    assertEquals(ErrorReporter.MAX_PENDING, sent.size());
+    assertEquals(1, reporter.getDropped());
+    assertEquals(ErrorReporter.MAX_PENDING + 1, reporter.getTotal());
+  }
+}
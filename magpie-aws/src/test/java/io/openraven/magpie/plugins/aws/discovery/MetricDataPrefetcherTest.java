@@ -0,0 +1,80 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.CloudWatchException;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+import software.amazon.awssdk.services.cloudwatch.model.Statistic;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class MetricDataPrefetcherTest {
+
+  @Mock
+  private CloudWatchClient client;
+
+  private static List<Dimension> bucket(int i) {
+    return List.of(Dimension.builder().name("BucketName").value("bucket-" + i).build());
+  }
+
+  @Test
+  public void testMetricsAreBatched() {
+    // Every query resolves to its bucket number, split over two pages: the value on the second page is the larger one.
+    when(client.getMetricData(any(GetMetricDataRequest.class))).thenAnswer(invocation -> {
+      final GetMetricDataRequest request = invocation.getArgument(0);
+      final var firstPage = request.nextToken() == null;
+      final var results = request.metricDataQueries().stream()
+        .map(query -> {
+          final var value = Double.parseDouble(query.metricStat().metric().dimensions().get(0).value().substring(7));
+          return MetricDataResult.builder().id(query.id()).values(firstPage ? value - 1 : value).build();
+        })
+        .collect(Collectors.toList());
+      return GetMetricDataResponse.builder().metricDataResults(results).nextToken(firstPage ? "next" : null).build();
+    });
+
+    final var metrics = new MetricDataPrefetcher(client, LoggerFactory.getLogger(MetricDataPrefetcherTest.class));
+    for (int i = 0; i < 1201; i++) {
+      metrics.add("AWS/S3", "BucketSizeBytes", Statistic.MAXIMUM, bucket(i));
+      metrics.add("AWS/S3", "BucketSizeBytes", Statistic.MAXIMUM, bucket(i));
+    }
+    metrics.fetch();
+    // Nothing is left to fetch, so this must not call CloudWatch again.
+    metrics.fetch();
+
+    // Three batches (500, 500 and 201 queries) of two pages each.
+    verify(client, times(6)).getMetricData(any(GetMetricDataRequest.class));
+    for (int i = 0; i < 1201; i++) {
+      assertEquals(Optional.of((long) i), metrics.getLong("AWS/S3", "BucketSizeBytes", Statistic.MAXIMUM, bucket(i)));
+    }
+    assertTrue(metrics.get("AWS/S3", "NumberOfObjects", Statistic.MAXIMUM, bucket(0)).isEmpty());
+  }
+
+  @Test
+  public void testFailedBatchLeavesMetricsEmpty() {
+    when(client.getMetricData(any(GetMetricDataRequest.class)))
+      .thenThrow(CloudWatchException.builder().message("Rate exceeded").statusCode(400).build());
+
+    final var metrics = new MetricDataPrefetcher(client, LoggerFactory.getLogger(MetricDataPrefetcherTest.class));
+    metrics.add("AWS/RDS", "FreeStorageSpace", Statistic.MINIMUM, bucket(0));
+    metrics.fetch();
+
+    assertTrue(metrics.get("AWS/RDS", "FreeStorageSpace", Statistic.MINIMUM, bucket(0)).isEmpty());
+  }
+}
@@ -0,0 +1,47 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.organizations.OrganizationsClient;
+import software.amazon.awssdk.services.organizations.model.Account;
+import software.amazon.awssdk.services.organizations.model.AccountStatus;
+import software.amazon.awssdk.services.organizations.model.ListAccountsRequest;
+import software.amazon.awssdk.services.organizations.model.ListAccountsResponse;
+import software.amazon.awssdk.services.organizations.paginators.ListAccountsIterable;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class OrganizationAccountsTest {
+
+  private static final String TEMPLATE = "arn:aws:iam::{accountId}:role/magpie";
+
+  @Mock
+  private OrganizationsClient client;
+
+  @Test
+  public void testRolesAreDerivedForActiveAccounts() {
+    when(client.listAccountsPaginator()).thenReturn(new ListAccountsIterable(client, ListAccountsRequest.builder().build()));
+    when(client.listAccounts(any(ListAccountsRequest.class))).thenReturn(ListAccountsResponse.builder()
+      .accounts(
+        Account.builder().id("111111111111").status(AccountStatus.ACTIVE).build(),
+        Account.builder().id("222222222222").status(AccountStatus.SUSPENDED).build(),
+        Account.builder().id("333333333333").status(AccountStatus.ACTIVE).build())
+      .build());
+
+    assertEquals(List.of("arn:aws:iam::111111111111:role/magpie", "arn:aws:iam::333333333333:role/magpie"),
+      OrganizationAccounts.roleArns(client, TEMPLATE));
+  }
+
+  @Test
+  public void testTemplateNeedsAPlaceholder() {
+    assertThrows(IllegalArgumentException.class, () -> OrganizationAccounts.roleArn("arn:aws:iam::111111111111:role/magpie", "222222222222"));
+  }
+}
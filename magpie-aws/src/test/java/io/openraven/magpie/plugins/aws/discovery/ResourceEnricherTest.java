@@ -0,0 +1,90 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieAwsResource;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResourceEnricherTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static MagpieAwsResource resource(String name) {
+    return new MagpieAwsResource.MagpieAwsResourceBuilder(MAPPER, "arn:aws:test:::" + name)
+      .withResourceName(name)
+      .withResourceType("Test::Resource")
+      .build();
+  }
+
+  @Test
+  public void testStepsRunConcurrentlyAndMergeBeforeCompletion() throws Exception {
+    // Both steps must be running at the same time for either to finish.
+    final var bothStarted = new CountDownLatch(2);
+    final List<Enrichment<String>> enrichments = List.of(
+      (name, data) -> {
+        bothStarted.countDown();
+        await(bothStarted);
+        AWSUtils.update(data.supplementaryConfiguration, Map.<String, Object>of("first", name));
+      },
+      (name, data) -> {
+        bothStarted.countDown();
+        await(bothStarted);
+        AWSUtils.update(data.tags, (JsonNode) MAPPER.valueToTree(Map.of("owner", name)));
+        data.sizeInBytes = 42L;
+      });
+
+    final var completed = new ConcurrentHashMap<String, MagpieAwsResource>();
+    try (final var enricher = new ResourceEnricher(MAPPER, Region.US_EAST_1, LoggerFactory.getLogger(ResourceEnricherTest.class), 2)) {
+      final var data = resource("a");
+      enricher.enrich("a", data, enrichments, enriched -> completed.put(enriched.resourceName, enriched));
+    }
+
+    final var enriched = completed.get("a");
+    assertEquals("a", enriched.supplementaryConfiguration.get("first").asText());
+    assertEquals("a", enriched.tags.get("owner").asText());
+    assertEquals(42L, enriched.sizeInBytes);
+  }
+
+  @Test
+  public void testFailedStepStillCompletesResource() {
+    final List<Enrichment<String>> enrichments = List.of(
+      (name, data) -> {
+        throw new IllegalStateException("boom");
+      },
+      (name, data) -> AWSUtils.update(data.supplementaryConfiguration, Map.<String, Object>of("ok", true)));
+
+    final var completed = new ArrayList<MagpieAwsResource>();
+    try (final var enricher = new ResourceEnricher(MAPPER, Region.US_EAST_1, LoggerFactory.getLogger(ResourceEnricherTest.class), 4)) {
+      for (int i = 0; i < 100; i++) {
+        enricher.enrich("r" + i, resource("r" + i), enrichments, enriched -> {
+          synchronized (completed) {
+            completed.add(enriched);
+          }
+        });
+      }
+    }
+
+    assertEquals(100, completed.size());
+    completed.forEach(enriched -> assertTrue(enriched.supplementaryConfiguration.get("ok").asBoolean()));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.SdkPojo;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+import software.amazon.awssdk.services.ec2.model.Placement;
+import software.amazon.awssdk.services.rds.model.DBInstance;
+import software.amazon.awssdk.services.rds.model.Endpoint;
+import software.amazon.awssdk.services.rds.model.VpcSecurityGroupMembership;
+import software.amazon.awssdk.services.s3.model.Bucket;
+import software.amazon.awssdk.services.s3.model.GetBucketAclResponse;
+import software.amazon.awssdk.services.s3.model.Grant;
+import software.amazon.awssdk.services.s3.model.Grantee;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.Permission;
+import software.amazon.awssdk.services.s3.model.Type;
+import software.amazon.awssdk.utils.builder.ToCopyableBuilder;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SdkPojoConverterTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+    .findAndRegisterModules();
+
+  private static final Instant CREATED = Instant.parse("2021-06-01T12:34:56.789Z");
+
+  @Test
+  public void testOutputMatchesSerializedBuilders() {
+    assertMatches(Bucket.builder().name("bucket").creationDate(CREATED).build());
+    assertMatches(HeadObjectResponse.builder().eTag("etag").contentLength(42L).lastModified(CREATED).metadata(Map.of("k", "v")).build());
+    assertMatches(GetBucketAclResponse.builder()
+      .grants(Grant.builder()
+        .grantee(Grantee.builder().type(Type.GROUP).uri("http://acs.amazonaws.com/groups/global/AllUsers").build())
+        .permission(Permission.READ)
+        .build())
+      .build());
+    assertMatches(DBInstance.builder()
+      .dbInstanceIdentifier("db")
+      .dbInstanceArn("arn:aws:rds:us-east-1:123456789012:db:db")
+      .allocatedStorage(20)
+      .multiAZ(true)
+      .instanceCreateTime(CREATED)
+      .endpoint(Endpoint.builder().address("db.example.com").port(5432).build())
+      .vpcSecurityGroups(VpcSecurityGroupMembership.builder().vpcSecurityGroupId("sg-1").status("active").build())
+      .readReplicaDBInstanceIdentifiers(List.of("replica"))
+      .build());
+    assertMatches(Instance.builder()
+      .instanceId("i-1")
+      .state(InstanceState.builder().code(16).name(InstanceStateName.RUNNING).build())
+      .placement(Placement.builder().availabilityZone("us-east-1a").build())
+      .launchTime(CREATED)
+      .build());
+  }
+
+  @Test
+  public void testBuildersAreConvertedAsTheirModels() {
+    final var converter = new SdkPojoConverter(MAPPER);
+    final var bucket = Bucket.builder().name("bucket").creationDate(CREATED);
+
+    assertEquals(converter.toTree(bucket.build()), converter.toTree(bucket));
+  }
+
+  @Test
+  public void testUnsetCollectionsAreNull() {
+    final var node = new SdkPojoConverter(MAPPER).toTree(DBInstance.builder().dbInstanceIdentifier("db").build());
+
+    assertTrue(node.get("tagList").isNull());
+    assertTrue(node.get("vpcSecurityGroups").isNull());
+  }
+
+  private static <T extends SdkPojo & ToCopyableBuilder<?, ?>> void assertMatches(T model) {
+    final var expected = MAPPER.valueToTree(model.toBuilder());
+    final var actual = new SdkPojoConverter(MAPPER).toTree(model);
+
+    assertEquals(expected, actual);
+    assertEquals(expected.toString(), actual.toString());
+  }
+}
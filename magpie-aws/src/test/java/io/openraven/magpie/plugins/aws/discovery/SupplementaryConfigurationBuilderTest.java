@@ -0,0 +1,65 @@
+package io.openraven.magpie.plugins.aws.discovery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.GetBucketVersioningResponse;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryptionByDefault;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryptionConfiguration;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryptionRule;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SupplementaryConfigurationBuilderTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+    .findAndRegisterModules();
+
+  @Test
+  public void testMatchesMergingEachEntry() throws IOException {
+    final var entries = new LinkedHashMap<String, Object>();
+    entries.put("ServerSideEncryptionConfiguration", ServerSideEncryptionConfiguration.builder()
+      .rules(ServerSideEncryptionRule.builder()
+        .applyServerSideEncryptionByDefault(ServerSideEncryptionByDefault.builder().sseAlgorithm("aws:kms").build())
+        .build())
+      .build());
+    entries.put("BucketVersioning", GetBucketVersioningResponse.builder().status("Enabled").build().toBuilder());
+    entries.put("size", Map.of("BucketSizeBytes", 1024L, "NumberOfObjects", 3L));
+    entries.put("isPublic", false);
+    entries.put("BucketPolicy", MAPPER.nullNode());
+
+    final var payload = MAPPER.createObjectNode();
+    payload.putObject("size").put("StandardStorage", 512L);
+    final var expected = payload.deepCopy();
+
+    for (var entry : entries.entrySet()) {
+      final var value = entry.getValue() instanceof ServerSideEncryptionConfiguration
+        ? ((ServerSideEncryptionConfiguration) entry.getValue()).toBuilder()
+        : entry.getValue();
+      final var node = MAPPER.createObjectNode();
+      node.set(entry.getKey(), MAPPER.valueToTree(value));
+      MAPPER.readerForUpdating(expected).readValue((JsonNode) node);
+    }
+
+    final JsonNode actual = new SupplementaryConfigurationBuilder(MAPPER).putAll(entries).applyTo(payload);
+
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testKeysPutTwiceAreMerged() {
+    final var node = new SupplementaryConfigurationBuilder(MAPPER)
+      .put("size", Map.of("BucketSizeBytes", 1024L))
+      .put("size", Map.of("NumberOfObjects", 3L))
+      .build();
+
+    assertEquals(1024L, node.get("size").get("BucketSizeBytes").asLong());
+    assertEquals(3L, node.get("size").get("NumberOfObjects").asLong());
+  }
+}
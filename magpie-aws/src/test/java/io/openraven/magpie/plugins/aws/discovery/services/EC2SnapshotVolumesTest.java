@@ -0,0 +1,94 @@
+package io.openraven.magpie.plugins.aws.discovery.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.Emitter;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeSnapshotsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSnapshotsResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesResponse;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.Volume;
+import software.amazon.awssdk.services.ec2.paginators.DescribeSnapshotsIterable;
+import software.amazon.awssdk.services.ec2.paginators.DescribeVolumesIterable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class EC2SnapshotVolumesTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+  private static final String ACCOUNT = "123456789012";
+
+  @Mock
+  private Ec2Client client;
+
+  @Mock
+  private Emitter emitter;
+
+  @Captor
+  private ArgumentCaptor<MagpieEnvelope> envelopeCapture;
+
+  @Test
+  public void testSnapshotsAreJoinedToTheRegionsVolumes() {
+    when(client.describeVolumesPaginator()).thenReturn(new DescribeVolumesIterable(client, DescribeVolumesRequest.builder().build()));
+    when(client.describeVolumes(any(DescribeVolumesRequest.class))).thenReturn(DescribeVolumesResponse.builder()
+      .volumes(
+        Volume.builder().volumeId("vol-1").snapshotId("snap-1").build(),
+        Volume.builder().volumeId("vol-2").snapshotId("snap-1").build(),
+        Volume.builder().volumeId("vol-3").snapshotId("").build())
+      .build());
+    final var snapshots = DescribeSnapshotsRequest.builder().ownerIds(ACCOUNT).build();
+    when(client.describeSnapshotsPaginator(any(DescribeSnapshotsRequest.class))).thenReturn(new DescribeSnapshotsIterable(client, snapshots));
+    when(client.describeSnapshots(any(DescribeSnapshotsRequest.class))).thenReturn(DescribeSnapshotsResponse.builder()
+      .snapshots(Snapshot.builder().snapshotId("snap-1").build(), Snapshot.builder().snapshotId("snap-2").build())
+      .build());
+
+    final var discovery = new EC2Discovery();
+    final var session = new Session();
+    final var snapshotVolumes = discovery.discoverVolumes(MAPPER, session, client, Region.US_EAST_1, emitter, ACCOUNT);
+    discovery.discoverSnapshots(MAPPER, session, client, Region.US_EAST_1, emitter, ACCOUNT, LoggerFactory.getLogger(getClass()), snapshotVolumes);
+
+    verify(emitter, times(5)).emit(envelopeCapture.capture());
+    final var emitted = envelopeCapture.getAllValues();
+
+    final var first = emitted.get(3).getContents().get("supplementaryConfiguration").get("volumes");
+    assertEquals(1, first.size());
+    assertEquals("vol-1", first.get(0).get("volumes").get(0).get("volumeId").asText());
+    assertEquals("vol-2", first.get(0).get("volumes").get(1).get("volumeId").asText());
+
+    final var second = emitted.get(4).getContents().get("supplementaryConfiguration").get("volumes");
+    assertTrue(second.get(0).get("volumes").isEmpty());
+
+    verify(client, times(1)).describeVolumes(any(DescribeVolumesRequest.class));
+  }
+
+  @Test
+  public void testVolumesAreNullWhenTheyCouldNotBeListed() {
+    when(client.describeSnapshotsPaginator(any(DescribeSnapshotsRequest.class)))
+      .thenReturn(new DescribeSnapshotsIterable(client, DescribeSnapshotsRequest.builder().ownerIds(ACCOUNT).build()));
+    when(client.describeSnapshots(any(DescribeSnapshotsRequest.class))).thenReturn(DescribeSnapshotsResponse.builder()
+      .snapshots(Snapshot.builder().snapshotId("snap-1").build())
+      .build());
+
+    new EC2Discovery().discoverSnapshots(MAPPER, new Session(), client, Region.US_EAST_1, emitter, ACCOUNT, LoggerFactory.getLogger(getClass()), null);
+
+    verify(emitter).emit(envelopeCapture.capture());
+    assertTrue(envelopeCapture.getValue().getContents().get("supplementaryConfiguration").get("volumes").isNull());
+  }
+}
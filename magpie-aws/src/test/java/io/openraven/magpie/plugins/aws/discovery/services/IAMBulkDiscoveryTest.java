@@ -0,0 +1,99 @@
+package io.openraven.magpie.plugins.aws.discovery.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.Emitter;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.iam.model.AttachedPolicy;
+import software.amazon.awssdk.services.iam.model.GetAccountAuthorizationDetailsRequest;
+import software.amazon.awssdk.services.iam.model.GetAccountAuthorizationDetailsResponse;
+import software.amazon.awssdk.services.iam.model.GetRoleRequest;
+import software.amazon.awssdk.services.iam.model.ListAttachedRolePoliciesRequest;
+import software.amazon.awssdk.services.iam.model.ListRolePoliciesRequest;
+import software.amazon.awssdk.services.iam.model.ListRolesRequest;
+import software.amazon.awssdk.services.iam.model.ListRolesResponse;
+import software.amazon.awssdk.services.iam.model.PolicyDetail;
+import software.amazon.awssdk.services.iam.model.Role;
+import software.amazon.awssdk.services.iam.model.RoleDetail;
+import software.amazon.awssdk.services.iam.model.Tag;
+import software.amazon.awssdk.services.iam.paginators.GetAccountAuthorizationDetailsIterable;
+import software.amazon.awssdk.services.iam.paginators.ListRolesIterable;
+
+import java.time.Instant;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class IAMBulkDiscoveryTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+  private static final String POLICY = "%7B%22Version%22%3A%222012-10-17%22%7D";
+
+  @Mock
+  private IamClient client;
+
+  @Mock
+  private Emitter emitter;
+
+  @Captor
+  private ArgumentCaptor<MagpieEnvelope> envelopeCapture;
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRolesAreBuiltFromAuthorizationDetails() {
+    final var listed = Role.builder()
+      .roleName("app")
+      .roleId("AROA1")
+      .arn("arn:aws:iam::123456789012:role/app")
+      .path("/")
+      .createDate(Instant.parse("2021-06-01T00:00:00Z"))
+      .description("application role")
+      .build();
+    final var details = GetAccountAuthorizationDetailsRequest.builder().build();
+    when(client.getAccountAuthorizationDetailsPaginator(any(GetAccountAuthorizationDetailsRequest.class)))
+      .thenReturn(new GetAccountAuthorizationDetailsIterable(client, details));
+    when(client.getAccountAuthorizationDetails(any(GetAccountAuthorizationDetailsRequest.class)))
+      .thenReturn(GetAccountAuthorizationDetailsResponse.builder()
+        .roleDetailList(RoleDetail.builder()
+          .roleName("app")
+          .arn(listed.arn())
+          .tags(Tag.builder().key("team").value("platform").build())
+          .rolePolicyList(PolicyDetail.builder().policyName("inline").policyDocument(POLICY).build())
+          .attachedManagedPolicies(AttachedPolicy.builder().policyName("ReadOnly").policyArn("arn:aws:iam::aws:policy/ReadOnly").build())
+          .build())
+        .isTruncated(false)
+        .build());
+    when(client.listRolesPaginator()).thenReturn(new ListRolesIterable(client, ListRolesRequest.builder().build()));
+    when(client.listRoles(any(ListRolesRequest.class))).thenReturn(ListRolesResponse.builder().roles(listed).isTruncated(false).build());
+
+    new IAMDiscovery().discoverRoles(client, MAPPER, new Session(), Region.AWS_GLOBAL, emitter, "123456789012",
+      IamAuthorizationDetails.fetch(client));
+
+    verify(emitter).emit(envelopeCapture.capture());
+    final var contents = envelopeCapture.getValue().getContents();
+    assertEquals("application role", contents.get("configuration").get("description").asText());
+    assertEquals("platform", contents.get("tags").get("team").asText());
+    final var supplementary = contents.get("supplementaryConfiguration");
+    assertEquals("inline", supplementary.get("inlinePolicies").get(0).get("name").asText());
+    assertEquals("2012-10-17", supplementary.get("inlinePolicies").get(0).get("policyDocument").get("Version").asText());
+    assertEquals("ReadOnly", supplementary.get("attachedPolicies").get(0).get("name").asText());
+
+    verify(client, never()).getRole(any(Consumer.class));
+    verify(client, never()).getRole(any(GetRoleRequest.class));
+    verify(client, never()).listRolePoliciesPaginator(any(ListRolePoliciesRequest.class));
+    verify(client, never()).listAttachedRolePoliciesPaginator(any(ListAttachedRolePoliciesRequest.class));
+  }
+}
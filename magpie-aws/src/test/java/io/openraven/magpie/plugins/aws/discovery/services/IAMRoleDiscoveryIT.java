@@ -63,6 +63,28 @@ public class IAMRoleDiscoveryIT extends BaseIAMServiceIT {
     assertInlinePolicy(envelope);
   }
 
+  @Test
+  public void testRoleDiscoveryFromAuthorizationDetails() {
+    // when
+    iamDiscovery.discoverRoles(
+      IAMCLIENT,
+      MAPPER,
+      SESSION,
+      BASE_REGION,
+      emitter,
+      ACCOUNT,
+      IamAuthorizationDetails.fetch(IAMCLIENT)
+    );
+    // then
+    Mockito.verify(emitter, atLeast(1)).emit(envelopeCapture.capture());
+    assertEquals(1, envelopeCapture.getAllValues().size());
+    MagpieEnvelope envelope = envelopeCapture.getValue();
+
+    assertRole(envelope);
+    assertConfiguration(envelope);
+    assertInlinePolicy(envelope);
+  }
+
   private void assertRole(MagpieEnvelope envelope) {
     var contents = envelope.getContents();
     assertNotNull(contents.get("documentId"));
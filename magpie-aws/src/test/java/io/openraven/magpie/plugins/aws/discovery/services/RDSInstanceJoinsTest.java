@@ -0,0 +1,153 @@
+package io.openraven.magpie.plugins.aws.discovery.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.Emitter;
+import io.openraven.magpie.api.MagpieAwsResource;
+import io.openraven.magpie.api.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.rds.RdsClient;
+import software.amazon.awssdk.services.rds.model.DBCluster;
+import software.amazon.awssdk.services.rds.model.DBInstance;
+import software.amazon.awssdk.services.rds.model.DBSnapshot;
+import software.amazon.awssdk.services.rds.model.DescribeDbClustersRequest;
+import software.amazon.awssdk.services.rds.model.DescribeDbClustersResponse;
+import software.amazon.awssdk.services.rds.model.DescribeDbSnapshotsRequest;
+import software.amazon.awssdk.services.rds.model.DescribeDbSnapshotsResponse;
+import software.amazon.awssdk.services.rds.paginators.DescribeDBClustersIterable;
+import software.amazon.awssdk.services.rds.paginators.DescribeDBSnapshotsIterable;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class RDSInstanceJoinsTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+  private static final String ACCOUNT = "123456789012";
+
+  @Mock
+  private RdsClient client;
+
+  @Mock
+  private Emitter emitter;
+
+  @Test
+  public void testSnapshotsAreJoinedToTheirInstances() {
+    when(client.describeDBSnapshotsPaginator(any(DescribeDbSnapshotsRequest.class)))
+      .thenReturn(new DescribeDBSnapshotsIterable(client, DescribeDbSnapshotsRequest.builder().build()));
+    when(client.describeDBSnapshots(any(DescribeDbSnapshotsRequest.class))).thenReturn(DescribeDbSnapshotsResponse.builder()
+      .dbSnapshots(
+        snapshot("snap-1", "db-1"),
+        snapshot("snap-2", "db-1"),
+        snapshot("snap-3", null))
+      .build());
+
+    final var discovery = new RDSDiscovery();
+    final var snapshots = discovery.discoverDbSnapshot(MAPPER, new Session(), Region.US_EAST_1, emitter, ACCOUNT, client);
+    verify(emitter, times(3)).emit(any());
+    verify(client, times(1)).describeDBSnapshots(any(DescribeDbSnapshotsRequest.class));
+
+    final var first = join(discovery, instance("db-1", null), snapshots).get("dbSnapshot").get("dbSnapshots");
+    assertEquals(2, first.size());
+    assertEquals("snap-1", first.get(0).get("dbSnapshotIdentifier").asText());
+    assertEquals("snap-2", first.get(1).get("dbSnapshotIdentifier").asText());
+
+    assertTrue(join(discovery, instance("db-2", null), snapshots).get("dbSnapshot").get("dbSnapshots").isEmpty());
+  }
+
+  @Test
+  public void testSnapshotsAreNullWhenTheyCouldNotBeListed() {
+    when(client.describeDBSnapshotsPaginator(any(DescribeDbSnapshotsRequest.class)))
+      .thenReturn(new DescribeDBSnapshotsIterable(client, DescribeDbSnapshotsRequest.builder().build()));
+    when(client.describeDBSnapshots(any(DescribeDbSnapshotsRequest.class)))
+      .thenThrow(SdkServiceException.builder().statusCode(500).message("unavailable").build());
+
+    final var discovery = new RDSDiscovery();
+    final var snapshots = discovery.discoverDbSnapshot(MAPPER, new Session(), Region.US_EAST_1, emitter, ACCOUNT, client);
+    assertNull(snapshots);
+
+    assertTrue(join(discovery, instance("db-1", null), snapshots).get("dbSnapshot").isNull());
+  }
+
+  @Test
+  public void testClustersAreJoinedToTheirInstances() {
+    when(client.describeDBClustersPaginator(any(DescribeDbClustersRequest.class)))
+      .thenReturn(new DescribeDBClustersIterable(client, DescribeDbClustersRequest.builder().build()));
+    when(client.describeDBClusters(any(DescribeDbClustersRequest.class))).thenReturn(DescribeDbClustersResponse.builder()
+      .dbClusters(
+        DBCluster.builder().dbClusterIdentifier("cluster-1").build(),
+        DBCluster.builder().dbClusterIdentifier("cluster-2").build())
+      .build());
+
+    final var discovery = new RDSDiscovery();
+    final var clusters = discovery.listDbClusters(client);
+    verify(client, times(1)).describeDBClusters(any(DescribeDbClustersRequest.class));
+
+    final var clustered = clusterJoin(discovery, instance("db-1", "cluster-2"), clusters).get("dbClusters").get("dbClusters");
+    assertEquals(1, clustered.size());
+    assertEquals("cluster-2", clustered.get(0).get("dbClusterIdentifier").asText());
+
+    assertTrue(clusterJoin(discovery, instance("db-2", null), clusters).get("dbClusters").get("dbClusters").isEmpty());
+    assertTrue(clusterJoin(discovery, instance("db-3", "cluster-3"), clusters).get("dbClusters").get("dbClusters").isEmpty());
+  }
+
+  @Test
+  public void testClustersAreNullWhenTheyCouldNotBeListed() {
+    when(client.describeDBClustersPaginator(any(DescribeDbClustersRequest.class)))
+      .thenReturn(new DescribeDBClustersIterable(client, DescribeDbClustersRequest.builder().build()));
+    when(client.describeDBClusters(any(DescribeDbClustersRequest.class)))
+      .thenThrow(SdkServiceException.builder().statusCode(403).message("denied").build());
+
+    final var discovery = new RDSDiscovery();
+    final var clusters = discovery.listDbClusters(client);
+    assertNull(clusters);
+
+    assertTrue(clusterJoin(discovery, instance("db-1", "cluster-1"), clusters).get("dbClusters").isNull());
+  }
+
+  private static DBInstance instance(String identifier, String clusterIdentifier) {
+    return DBInstance.builder()
+      .dbInstanceIdentifier(identifier)
+      .dbInstanceArn("arn:aws:rds:us-east-1:" + ACCOUNT + ":db:" + identifier)
+      .dbClusterIdentifier(clusterIdentifier)
+      .build();
+  }
+
+  private static DBSnapshot snapshot(String identifier, String instanceIdentifier) {
+    return DBSnapshot.builder()
+      .dbSnapshotIdentifier(identifier)
+      .dbSnapshotArn("arn:aws:rds:us-east-1:" + ACCOUNT + ":snapshot:" + identifier)
+      .dbInstanceIdentifier(instanceIdentifier)
+      .build();
+  }
+
+  private static MagpieAwsResource resource(DBInstance db) {
+    return new MagpieAwsResource.MagpieAwsResourceBuilder(MAPPER, db.dbInstanceArn()).build();
+  }
+
+  private static JsonNode join(RDSDiscovery discovery, DBInstance db, Map<String, List<DBSnapshot>> snapshots) {
+    final var data = resource(db);
+    discovery.discoverInstanceDbSnapshots(db, data, snapshots, MAPPER);
+    return data.supplementaryConfiguration;
+  }
+
+  private static JsonNode clusterJoin(RDSDiscovery discovery, DBInstance db, Map<String, DBCluster> clusters) {
+    final var data = resource(db);
+    discovery.discoverInstanceDbClusters(db, data, clusters, MAPPER);
+    return data.supplementaryConfiguration;
+  }
+}
@@ -0,0 +1,20 @@
+package io.openraven.magpie.plugins.aws.discovery.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class S3DiscoveryTest {
+
+  @Test
+  public void testOnlyALeadingTildeIsExpanded() {
+    final var home = System.getProperty("user.home");
+
+    assertEquals(Path.of(home, ".magpie", "s3-regions~1.json"), S3Discovery.expandHome("~/.magpie/s3-regions~1.json"));
+    assertEquals(Path.of(home), S3Discovery.expandHome("~"));
+    assertEquals(Path.of("/var/cache/~magpie/s3-regions.json"), S3Discovery.expandHome("/var/cache/~magpie/s3-regions.json"));
+    assertEquals(Path.of("~other/s3-regions.json"), S3Discovery.expandHome("~other/s3-regions.json"));
+  }
+}
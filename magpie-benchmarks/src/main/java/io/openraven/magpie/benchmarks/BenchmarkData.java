@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.openraven.magpie.api.MagpieAwsResource;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.data.aws.ec2.Ec2Instance;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Envelopes shaped like the output of AWS discovery, so benchmarks exercise realistically sized documents.
+ */
+final class BenchmarkData {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+
+  private BenchmarkData() {
+  }
+
+  static MagpieEnvelope ec2Envelope(Session session, int i) {
+    final var instanceId = String.format("i-%017x", i);
+    final var arn = "arn:aws:ec2:us-west-2:123456789012:instance/" + instanceId;
+
+    var configuration = MAPPER.createObjectNode();
+    configuration.put("instanceId", instanceId);
+    configuration.put("imageId", "ami-0abcdef1234567890");
+    configuration.put("instanceType", "m5.large");
+    configuration.put("privateIpAddress", "10.0.0." + (i % 255));
+    configuration.put("launchTime", "2022-01-01T00:00:00Z");
+    configuration.putObject("state").put("code", 16).put("name", "running");
+    var interfaces = configuration.putArray("networkInterfaces");
+    for (int n = 0; n < 2; n++) {
+      interfaces.addObject()
+        .put("networkInterfaceId", "eni-" + n + instanceId)
+        .put("subnetId", "subnet-0123456789abcdef0")
+        .put("vpcId", "vpc-0123456789abcdef0")
+        .put("macAddress", "02:00:00:00:00:0" + n);
+    }
+    var tags = MAPPER.createObjectNode();
+    tags.put("Name", "worker-" + i);
+    tags.put("team", "platform");
+
+    var data = new MagpieAwsResource.MagpieAwsResourceBuilder(MAPPER, arn)
+      .withResourceName(instanceId)
+      .withResourceId(instanceId)
+      .withResourceType(Ec2Instance.RESOURCE_TYPE)
+      .withConfiguration(configuration)
+      .withCreatedIso(Instant.parse("2022-01-01T00:00:00Z"))
+      .withAccountId("123456789012")
+      .withAwsRegion("us-west-2")
+      .withTags(tags)
+      .build();
+
+    var contents = data.toJsonNode();
+    contents.put("documentId", arn);
+    return new MagpieEnvelope(session, List.of("magpie.aws.discovery"), contents);
+  }
+}
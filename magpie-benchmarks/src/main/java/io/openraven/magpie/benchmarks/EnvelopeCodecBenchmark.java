@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.benchmarks;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.core.fifos.EnvelopeCodec;
+import io.openraven.magpie.core.fifos.FifoException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envelope (de)serialization for each codec, the per-record work done by {@code KafkaQueue} and {@code KafkaDequeue}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnvelopeCodecBenchmark {
+
+  @Param({"JSON", "SMILE", "CBOR"})
+  public EnvelopeCodec codec;
+
+  private MagpieEnvelope envelope;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws FifoException {
+    envelope = BenchmarkData.ec2Envelope(new Session(), 0);
+    encoded = codec.encode(envelope);
+  }
+
+  @Benchmark
+  public byte[] encode() throws FifoException {
+    return codec.encode(envelope);
+  }
+
+  @Benchmark
+  public MagpieEnvelope decode() throws FifoException {
+    return codec.decode(encoded);
+  }
+}
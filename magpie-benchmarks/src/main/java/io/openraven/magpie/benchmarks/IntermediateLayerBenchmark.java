@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.benchmarks;
+
+import io.openraven.magpie.api.Emitter;
+import io.openraven.magpie.api.IntermediatePlugin;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.core.fifos.FifoDequeue;
+import io.openraven.magpie.core.fifos.FifoException;
+import io.openraven.magpie.core.fifos.FifoQueue;
+import io.openraven.magpie.core.layers.IntermediateLayer;
+import io.openraven.magpie.core.layers.SessionDrain;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Dispatch overhead of {@link IntermediateLayer#exec(int)}: one dequeued batch through a chain of pass-through
+ * plugins, with the fifos replaced by an in-memory source and a sink.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IntermediateLayerBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  @Param({"1", "4"})
+  public int plugins;
+
+  private IntermediateLayer layer;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    final var session = new Session();
+    final var batch = new ArrayList<MagpieEnvelope>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      batch.add(BenchmarkData.ec2Envelope(session, i));
+    }
+    final var dequeue = new FifoDequeue() {
+      @Override
+      public Optional<MagpieEnvelope> poll() {
+        return Optional.of(batch.get(0));
+      }
+
+      @Override
+      public List<MagpieEnvelope> pollBatch(int maxRecords, Duration timeout) {
+        return batch;
+      }
+    };
+    FifoQueue sink = blackhole::consume;
+    final var chain = IntStream.range(0, plugins)
+      .mapToObj(i -> new PassThrough("benchmark.intermediate." + i))
+      .collect(Collectors.<IntermediatePlugin>toList());
+
+    layer = new IntermediateLayer("intermediate", List.of(dequeue), chain, sink,
+      new SessionDrain("intermediate", session.getId(), Set.of()), new MetricsRegistry());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void exec() throws FifoException {
+    layer.exec(0);
+  }
+
+  private static class PassThrough implements IntermediatePlugin<Void> {
+    private final String id;
+
+    PassThrough(String id) {
+      this.id = id;
+    }
+
+    @Override
+    public void accept(MagpieEnvelope env, Emitter emitter) {
+      emitter.emit(env);
+    }
+
+    @Override
+    public String id() {
+      return id;
+    }
+
+    @Override
+    public void init(Void unused, Logger logger) {
+    }
+
+    @Override
+    public Class<Void> configType() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.benchmarks;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.core.fifos.FifoException;
+import io.openraven.magpie.core.fifos.LocalQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producers and consumers sharing one {@link LocalQueue}, as an origin layer and its downstream workers do.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class LocalQueueBenchmark {
+
+  private static final int PRODUCERS = 2;
+  private static final int BATCH_SIZE = 100;
+  private static final Duration POLL_TIMEOUT = Duration.ofMillis(1L);
+
+  private LocalQueue queue;
+  private MagpieEnvelope envelope;
+
+  @Setup
+  public void setup() {
+    queue = new LocalQueue(LocalQueue.DEFAULT_CAPACITY);
+    envelope = BenchmarkData.ec2Envelope(new Session(), 0);
+  }
+
+  // add() blocks once the queue is full.  Leave headroom for the other producers so a producer never parks after the
+  // consumers have stopped at the end of an iteration.
+  private boolean addIfRoom(Control control) throws FifoException {
+    while (!control.stopMeasurement) {
+      if (queue.size() <= LocalQueue.DEFAULT_CAPACITY - PRODUCERS) {
+        queue.add(envelope);
+        return true;
+      }
+      Thread.onSpinWait();
+    }
+    return false;
+  }
+
+  @Benchmark
+  @Group("single")
+  @GroupThreads(PRODUCERS)
+  public boolean singleAdd(Control control) throws FifoException {
+    return addIfRoom(control);
+  }
+
+  @Benchmark
+  @Group("single")
+  @GroupThreads(2)
+  public Optional<MagpieEnvelope> singlePoll() throws FifoException {
+    return queue.poll(POLL_TIMEOUT);
+  }
+
+  @Benchmark
+  @Group("batch")
+  @GroupThreads(PRODUCERS)
+  public boolean batchAdd(Control control) throws FifoException {
+    return addIfRoom(control);
+  }
+
+  @Benchmark
+  @Group("batch")
+  @GroupThreads(2)
+  public List<MagpieEnvelope> batchPoll() throws FifoException {
+    return queue.pollBatch(BATCH_SIZE, POLL_TIMEOUT);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.benchmarks;
+
+import io.openraven.magpie.api.Emitter;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.OriginPlugin;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.core.fifos.FifoException;
+import io.openraven.magpie.core.fifos.FifoQueue;
+import io.openraven.magpie.core.layers.OriginLayer;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-envelope cost of the origin layer's emitter, which stamps each envelope with the session before queueing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OriginLayerBenchmark {
+
+  private static final int ENVELOPES = 1000;
+
+  private OriginLayer layer;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    final var session = new Session();
+    final var envelopes = new ArrayList<MagpieEnvelope>(ENVELOPES);
+    for (int i = 0; i < ENVELOPES; i++) {
+      envelopes.add(BenchmarkData.ec2Envelope(session, i));
+    }
+    FifoQueue sink = blackhole::consume;
+    layer = new OriginLayer("origin", session, List.of(new ReplayOrigin(envelopes)), sink, new MetricsRegistry());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ENVELOPES)
+  public void emit() throws FifoException {
+    layer.exec();
+  }
+
+  private static class ReplayOrigin implements OriginPlugin<Void> {
+    private final List<MagpieEnvelope> envelopes;
+
+    ReplayOrigin(List<MagpieEnvelope> envelopes) {
+      this.envelopes = envelopes;
+    }
+
+    @Override
+    public void discover(Session session, Emitter emitter) {
+      envelopes.forEach(emitter::emit);
+    }
+
+    @Override
+    public String id() {
+      return "benchmark.origin";
+    }
+
+    @Override
+    public void init(Void unused, Logger logger) {
+    }
+
+    @Override
+    public Class<Void> configType() {
+      return null;
+    }
+  }
+}
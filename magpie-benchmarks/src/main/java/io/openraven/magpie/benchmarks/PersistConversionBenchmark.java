@@ -0,0 +1,128 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.benchmarks;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.data.Resource;
+import io.openraven.magpie.plugins.persist.AssetsRepo;
+import io.openraven.magpie.plugins.persist.PersistPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link PersistPlugin}'s envelope to {@link Resource} conversion, with the database replaced by a repository that
+ * only consumes what it's given.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PersistConversionBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  private PersistPlugin plugin;
+  private List<MagpieEnvelope> batch;
+
+  @Setup
+  public void setup(Blackhole blackhole) throws ReflectiveOperationException {
+    final var session = new Session();
+    batch = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      batch.add(BenchmarkData.ec2Envelope(session, i));
+    }
+
+    // init() would connect to Postgres, so wire the plugin's collaborators in directly.
+    final var converted = new AtomicInteger();
+    plugin = new PersistPlugin();
+    setField(plugin, "logger", LoggerFactory.getLogger(PersistPlugin.class));
+    setField(plugin, "assetsRepo", new AssetsRepo() {
+      @Override
+      public void upsert(Resource resource) {
+        blackhole.consume(resource);
+      }
+
+      @Override
+      public void upsert(List<Resource> resources) {
+        converted.set(resources.size());
+        blackhole.consume(resources);
+      }
+
+      @Override
+      public void executeNative(String query) {
+      }
+
+      @Override
+      public List<Map<String, Object>> queryNative(String query) {
+        return List.of();
+      }
+
+      @Override
+      public Long getAssetCount(String resourceType) {
+        return 0L;
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+
+    // A failed conversion is only logged, which would quietly turn this into a benchmark of the error path.
+    plugin.accept(batch);
+    if (converted.get() != BATCH_SIZE) {
+      throw new IllegalStateException("Only " + converted.get() + " of " + BATCH_SIZE + " envelopes converted");
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void acceptEach() {
+    batch.forEach(plugin::accept);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void acceptBatch() {
+    plugin.accept(batch);
+  }
+
+  private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+    var field = target.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(target, value);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openraven.magpie.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.openraven.magpie.plugins.aws.discovery.SdkPojoConverter;
+import io.openraven.magpie.plugins.aws.discovery.SupplementaryConfigurationBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.s3.model.Bucket;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+import software.amazon.awssdk.services.s3.model.GetBucketAclResponse;
+import software.amazon.awssdk.services.s3.model.GetBucketLoggingResponse;
+import software.amazon.awssdk.services.s3.model.GetBucketTaggingResponse;
+import software.amazon.awssdk.services.s3.model.GetBucketVersioningResponse;
+import software.amazon.awssdk.services.s3.model.GetPublicAccessBlockResponse;
+import software.amazon.awssdk.services.s3.model.Grant;
+import software.amazon.awssdk.services.s3.model.Grantee;
+import software.amazon.awssdk.services.s3.model.LoggingEnabled;
+import software.amazon.awssdk.services.s3.model.Owner;
+import software.amazon.awssdk.services.s3.model.Permission;
+import software.amazon.awssdk.services.s3.model.PublicAccessBlockConfiguration;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryptionByDefault;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryptionConfiguration;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryptionRule;
+import software.amazon.awssdk.services.s3.model.Tag;
+import software.amazon.awssdk.services.s3.model.Type;
+import software.amazon.awssdk.utils.builder.ToCopyableBuilder;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building an S3 bucket's configuration and supplementary configuration from SDK responses: Jackson serializing each
+ * response's builder and deep-merging it into the payload, as discovery used to, against {@link SdkPojoConverter} and
+ * {@link SupplementaryConfigurationBuilder}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SdkConversionBenchmark {
+
+  private final ObjectMapper mapper = new ObjectMapper()
+    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+    .findAndRegisterModules();
+
+  private Bucket bucket;
+  private Map<String, Object> responses;
+
+  @Setup
+  public void setup() throws IOException {
+    final var owner = Owner.builder().id("c0ffee").displayName("owner").build();
+    bucket = Bucket.builder().name("magpie-benchmark").creationDate(Instant.parse("2021-06-01T00:00:00Z")).build();
+
+    responses = new LinkedHashMap<>();
+    responses.put("BucketACLConfiguration", GetBucketAclResponse.builder()
+      .owner(owner)
+      .grants(
+        Grant.builder().grantee(Grantee.builder().type(Type.CANONICAL_USER).id(owner.id()).build()).permission(Permission.FULL_CONTROL).build(),
+        Grant.builder().grantee(Grantee.builder().type(Type.GROUP).uri("http://acs.amazonaws.com/groups/s3/LogDelivery").build()).permission(Permission.WRITE).build())
+      .build());
+    responses.put("ServerSideEncryptionConfiguration", ServerSideEncryptionConfiguration.builder()
+      .rules(ServerSideEncryptionRule.builder()
+        .applyServerSideEncryptionByDefault(ServerSideEncryptionByDefault.builder().sseAlgorithm("aws:kms").kmsMasterKeyID("alias/s3").build())
+        .bucketKeyEnabled(true)
+        .build())
+      .build());
+    responses.put("BucketLoggingConfiguration", GetBucketLoggingResponse.builder()
+      .loggingEnabled(LoggingEnabled.builder().targetBucket("magpie-logs").targetPrefix("s3/").build())
+      .build());
+    responses.put("PublicAccessBlockConfiguration", GetPublicAccessBlockResponse.builder()
+      .publicAccessBlockConfiguration(PublicAccessBlockConfiguration.builder()
+        .blockPublicAcls(true).ignorePublicAcls(true).blockPublicPolicy(true).restrictPublicBuckets(true).build())
+      .build());
+    responses.put("BucketVersioning", GetBucketVersioningResponse.builder().status(BucketVersioningStatus.ENABLED).build());
+    responses.put("BucketTagging", GetBucketTaggingResponse.builder()
+      .tagSet(Tag.builder().key("team").value("platform").build(), Tag.builder().key("env").value("prod").build())
+      .build());
+    responses.put("BucketPolicy", mapper.nullNode());
+    responses.put("isPublic", false);
+    responses.put("size", Map.of("BucketSizeBytes", 1L << 30, "NumberOfObjects", 12_345L));
+
+    // Both halves of the comparison have to produce the same document for it to mean anything.
+    if (!viaJackson().equals(viaConverter())) {
+      throw new IllegalStateException("Converted payloads differ");
+    }
+  }
+
+  @Benchmark
+  public ObjectNode viaJackson() throws IOException {
+    final var node = mapper.createObjectNode();
+    node.set("configuration", mapper.valueToTree(bucket.toBuilder()));
+
+    JsonNode supplementary = mapper.createObjectNode();
+    for (var entry : responses.entrySet()) {
+      final var value = entry.getValue() instanceof ToCopyableBuilder
+        ? ((ToCopyableBuilder<?, ?>) entry.getValue()).toBuilder()
+        : entry.getValue();
+      final var nodeToAdd = mapper.createObjectNode();
+      nodeToAdd.set(entry.getKey(), mapper.convertValue(value, JsonNode.class));
+      supplementary = mapper.readerForUpdating(supplementary).readValue((JsonNode) nodeToAdd);
+    }
+    node.set("supplementaryConfiguration", supplementary);
+    return node;
+  }
+
+  @Benchmark
+  public ObjectNode viaConverter() {
+    final var node = mapper.createObjectNode();
+    node.set("configuration", SdkPojoConverter.forMapper(mapper).toTree(bucket));
+    node.set("supplementaryConfiguration", new SupplementaryConfigurationBuilder(mapper).putAll(responses).applyTo(mapper.createObjectNode()));
+    return node;
+  }
+}
@@ -26,16 +26,23 @@ import io.openraven.magpie.core.fifos.FifoManager;
 import io.openraven.magpie.core.layers.Layer;
 import io.openraven.magpie.core.layers.LayerManager;
 import io.openraven.magpie.core.layers.LayerType;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
+import io.openraven.magpie.core.metrics.MetricsServer;
 import io.openraven.magpie.core.plugins.PluginManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Orchestrator {
 
@@ -45,22 +52,28 @@ public class Orchestrator {
   private class LayerCallable implements Callable<LayerType> {
 
     private final Layer layer;
+    private final int worker;
+    private final boolean once;
     private volatile boolean repeat;
 
-    public LayerCallable(Layer layer, Boolean repeat) {
+    public LayerCallable(Layer layer, int worker, Boolean repeat) {
       this.layer = layer;
+      this.worker = worker;
       this.repeat = repeat;
+      this.once = !repeat;
     }
 
     @Override
     public LayerType call() throws Exception {
       do {
         try {
-          layer.exec();
-          Thread.sleep(100L);
-        } catch (InterruptedException ex) {
-          LOGGER.warn("Layer exec wait interrupted for {}", layer.getName(), ex);
+          // Dequeuing layers block inside exec() until data arrives, so there's no need to sleep between calls.
+          layer.exec(worker);
         } catch (Exception ex) {
+          // A layer that runs once has nothing to retry, so its failure is the layer's result.
+          if (once) {
+            throw ex;
+          }
           LOGGER.warn("Layer exception", ex);
         }
       } while (repeat);
@@ -69,32 +82,40 @@ public class Orchestrator {
     }
 
     public void shutdown() {
-      layer.shutdown();
       repeat = false;
     }
   }
 
-  // Allow layers to finish processing
-  private static final long LAYER_GRACE_PERIOD = 3000L;
+  // How long to wait for layer workers to finish their current pass at shutdown.
+  private static final long WORKER_STOP_TIMEOUT = 10000L;
   private static final Logger LOGGER = LoggerFactory.getLogger(Orchestrator.class);
   private final MagpieConfig config;
   private final Session session;
+  private final MetricsRegistry metrics = new MetricsRegistry();
 
   public Orchestrator(MagpieConfig config, Session session) {
     this.config = config;
     this.session = session;
   }
 
+  public MetricsRegistry getMetrics() {
+    return metrics;
+  }
+
   public void scan() {
     final var fifoManager = new FifoManager(config);
+    fifoManager.registerMetrics(metrics);
 
     final var pluginManager = new PluginManager(config);
     pluginManager.loadPlugins(DISCOVERY_PLUGIN_CLASSES);
 
-    final var layerManager = new LayerManager(session, config, fifoManager, pluginManager);
+    final var layerManager = new LayerManager(session, config, fifoManager, pluginManager, metrics);
+    final var metricsServer = startMetricsServer();
+    final var metricsLogger = startMetricsLogger();
 
     final var layers = layerManager.getLayers();
-    final var executors = Executors.newFixedThreadPool(layers.size(), r -> {
+    final var threads = layers.values().stream().mapToInt(Layer::getWorkers).sum();
+    final var executors = Executors.newFixedThreadPool(threads, r -> {
       Thread t = Executors.defaultThreadFactory().newThread(r);
       t.setDaemon(true);
       return t;
@@ -107,7 +128,7 @@ public class Orchestrator {
 
     final var originFutures = originLayers.stream()
       .map(layer -> {
-        var c = new LayerCallable(layer, false);
+        var c = new LayerCallable(layer, 0, false);
         callables.add(c);
         LOGGER.trace("Submitting callable {}", c.layer.getName());
         return executors.submit(c);
@@ -115,12 +136,12 @@ public class Orchestrator {
       .collect(Collectors.toList());
 
     final var otherFutures = otherLayers.stream()
-      .map(layer -> {
-        var c = new LayerCallable(layer, true);
+      .flatMap(layer -> IntStream.range(0, layer.getWorkers()).mapToObj(worker -> {
+        var c = new LayerCallable(layer, worker, true);
         callables.add(c);
-        LOGGER.trace("Submitting callable {}", c.layer.getName());
+        LOGGER.trace("Submitting callable {} worker {}", c.layer.getName(), worker);
         return executors.submit(c);
-      })
+      }))
       .collect(Collectors.toList());
 
     // Run indefinitely if no origin layers exist.  If one or more exist then wait for them all to complete.  In a
@@ -140,16 +161,85 @@ public class Orchestrator {
       }
     });
 
-    try {
-      LOGGER.debug("Entering grace period");
-      Thread.sleep(LAYER_GRACE_PERIOD);
-      LOGGER.debug("Exited grade period");
-    } catch (InterruptedException ex) {
-      LOGGER.error("Grace period interrupted", ex);
+    // Origin output may still be buffered in asynchronous producers, push it out before anything else.
+    if (!fifoManager.flush()) {
+      LOGGER.error("Some envelopes could not be delivered, see earlier errors");
     }
 
+    // Every layer fed by this session forwards an end-of-session marker once it has processed everything ahead of it,
+    // so once each downstream layer has seen its markers the session has fully cleared the pipeline.
+    awaitDrained(otherLayers);
+
     LOGGER.debug(("Shutting down layers"));
-    // Shut down all layers
+    // Stop every worker and wait for in-progress passes to finish, so no thread is still using a fifo when it's closed.
     callables.forEach(LayerCallable::shutdown);
+    executors.shutdown();
+    try {
+      if (!executors.awaitTermination(WORKER_STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        LOGGER.warn("Layer workers did not stop within {}ms", WORKER_STOP_TIMEOUT);
+      }
+    } catch (InterruptedException ex) {
+      LOGGER.error("Interrupted waiting for layer workers to stop", ex);
+      Thread.currentThread().interrupt();
+    }
+
+    // Shut each layer (and so its plugins) down exactly once, then flush and close the fifos.
+    layers.values().forEach(Layer::shutdown);
+    fifoManager.close();
+
+    if (metricsLogger != null) {
+      metricsLogger.shutdownNow();
+    }
+    LOGGER.info("Scan metrics:{}", metrics.summary());
+    if (metricsServer != null) {
+      metricsServer.close();
+    }
+  }
+
+  private MetricsServer startMetricsServer() {
+    final var port = config.getMetrics().getPort();
+    if (port <= 0) {
+      return null;
+    }
+    try {
+      return new MetricsServer(metrics, port);
+    } catch (IOException ex) {
+      // Metrics are diagnostic only, so a busy port shouldn't stop the scan.
+      LOGGER.warn("Couldn't serve metrics on port {}", port, ex);
+      return null;
+    }
+  }
+
+  private ScheduledExecutorService startMetricsLogger() {
+    final var interval = config.getMetrics().getLogInterval();
+    if (interval <= 0) {
+      return null;
+    }
+    final var scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = Executors.defaultThreadFactory().newThread(r);
+      t.setDaemon(true);
+      return t;
+    });
+    scheduler.scheduleAtFixedRate(() -> LOGGER.info("Scan metrics:{}", metrics.summary()), interval, interval, TimeUnit.SECONDS);
+    return scheduler;
+  }
+
+  private void awaitDrained(Collection<Layer> layers) {
+    final var timeout = config.getDrainTimeout();
+    final var deadline = timeout > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout) : Long.MAX_VALUE;
+    for (var layer : layers) {
+      try {
+        final var remaining = timeout > 0 ? Math.max(0L, deadline - System.nanoTime()) : Long.MAX_VALUE;
+        LOGGER.debug("Waiting for layer {} to drain", layer.getName());
+        if (!layer.awaitDrained(remaining, TimeUnit.NANOSECONDS)) {
+          LOGGER.warn("Layer {} did not drain within {}s, shutting down anyway. Envelopes still in flight may be lost",
+            layer.getName(), timeout);
+        }
+      } catch (InterruptedException ex) {
+        LOGGER.error("Interrupted waiting for layer {} to drain", layer.getName(), ex);
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
   }
 }
@@ -24,6 +24,10 @@ public class FifoConfig {
 
   private boolean enabled = true;
   private String type = "local";
+  // Wire format for envelopes on serialized fifos: json, smile or cbor.
+  private String codec = "json";
+  // Optional batch compression for serialized fifos (e.g. lz4, zstd).
+  private String compression;
   private Map<String, Object> properties = new HashMap<>();
 
 
@@ -43,6 +47,22 @@ public class FifoConfig {
     this.type = type;
   }
 
+  public String getCodec() {
+    return codec;
+  }
+
+  public void setCodec(String codec) {
+    this.codec = codec;
+  }
+
+  public String getCompression() {
+    return compression;
+  }
+
+  public void setCompression(String compression) {
+    this.compression = compression;
+  }
+
   public Map<String, Object> getProperties() {
     return properties;
   }
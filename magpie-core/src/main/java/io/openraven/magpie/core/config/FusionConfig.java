@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.config;
+
+public class FusionConfig {
+  // Run a layer directly on the thread of the layer feeding it when the two are joined by a local fifo.
+  private boolean enabled = false;
+  // Envelopes collected before handing them to the fused layer.  1 hands each envelope over as it's emitted.
+  private int buffer = 1;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getBuffer() {
+    return buffer;
+  }
+
+  public void setBuffer(int buffer) {
+    this.buffer = buffer;
+  }
+}
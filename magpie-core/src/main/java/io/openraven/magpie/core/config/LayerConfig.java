@@ -25,6 +25,8 @@ public class LayerConfig {
 
   private String queue;
   private String dequeue;
+  // Number of concurrent consumers for intermediate and terminal layers.
+  private int workers = 1;
 
   private List<String> plugins = new ArrayList<>();
 
@@ -52,6 +54,14 @@ public class LayerConfig {
     this.dequeue = dequeue;
   }
 
+  public int getWorkers() {
+    return workers;
+  }
+
+  public void setWorkers(int workers) {
+    this.workers = workers;
+  }
+
   public String getType() {
     return type;
   }
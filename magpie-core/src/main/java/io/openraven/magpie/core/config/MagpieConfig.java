@@ -26,6 +26,11 @@ public class MagpieConfig {
   private Map<String, PluginConfig> plugins = new HashMap<>();
   private Map<String, ServiceConfig> services = new HashMap<>();
   private PolicyConfig policies = new PolicyConfig();
+  private MetricsConfig metrics = new MetricsConfig();
+  private FusionConfig fusion = new FusionConfig();
+  // Upper bound, in seconds, on waiting for downstream layers to drain at the end of a scan.  0 waits indefinitely, which
+  // hangs the scan if an end-of-session marker is ever lost.
+  private long drainTimeout = 300L;
 
   public Map<String, FifoConfig> getFifos() {
     return fifos;
@@ -59,6 +64,30 @@ public class MagpieConfig {
     this.policies =  policies != null ? this.policies = policies : new PolicyConfig();
   }
 
+  public MetricsConfig getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(MetricsConfig metrics) {
+    this.metrics = metrics == null ? new MetricsConfig() : metrics;
+  }
+
+  public FusionConfig getFusion() {
+    return fusion;
+  }
+
+  public void setFusion(FusionConfig fusion) {
+    this.fusion = fusion == null ? new FusionConfig() : fusion;
+  }
+
+  public long getDrainTimeout() {
+    return drainTimeout;
+  }
+
+  public void setDrainTimeout(long drainTimeout) {
+    this.drainTimeout = drainTimeout;
+  }
+
   public Map<String, ServiceConfig> getServices() {
     return services;
   }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.config;
+
+public class MetricsConfig {
+  // Port for the Prometheus /metrics endpoint.  0 leaves the endpoint disabled.
+  private int port = 0;
+  // Seconds between metric summaries in the log.  A summary is always logged when the scan ends; 0 logs only that one.
+  private long logInterval = 0L;
+
+  public int getPort() {
+    return port;
+  }
+
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  public long getLogInterval() {
+    return logInterval;
+  }
+
+  public void setLogInterval(long logInterval) {
+    this.logInterval = logInterval;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Consumer side of a disk fifo, reading a single partition written by a {@link DiskQueue}.
+ *
+ * The read position is committed when the next batch is requested, i.e. once the previous one has been processed, and
+ * on close.  A consumer that crashes therefore sees its last batch again on restart: delivery is at least once.
+ */
+public class DiskDequeue implements FifoDequeue {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiskDequeue.class);
+
+  // The producer may be in another process, so there's nothing to block on; check back this often for new records.
+  private static final long IDLE_WAIT_MS = 5L;
+
+  private final SegmentReader reader;
+
+  public DiskDequeue(Path dir, int partition, String consumer, boolean deleteConsumed) throws FifoException {
+    this.reader = new SegmentReader(DiskQueue.partitionPath(dir, partition), consumer, deleteConsumed);
+  }
+
+  @Override
+  public Optional<MagpieEnvelope> poll() throws FifoException {
+    return poll(Duration.ZERO);
+  }
+
+  @Override
+  public Optional<MagpieEnvelope> poll(Duration timeout) throws FifoException {
+    var batch = pollBatch(1, timeout);
+    return batch.isEmpty() ? Optional.empty() : Optional.of(batch.get(0));
+  }
+
+  @Override
+  public List<MagpieEnvelope> pollBatch(int maxRecords, Duration timeout) throws FifoException {
+    reader.commit();
+
+    final var deadline = System.nanoTime() + timeout.toNanos();
+    var batch = new ArrayList<MagpieEnvelope>();
+    while (true) {
+      SegmentReader.Record record;
+      while (batch.size() < maxRecords && (record = reader.next()) != null) {
+        try {
+          batch.add(codec(record.codec).decode(record.payload));
+        } catch (FifoException ex) {
+          // Skip the record rather than failing the batch, as KafkaDequeue does.
+          LOGGER.warn("Couldn't deserialize envelope from disk fifo", ex);
+        }
+      }
+
+      final var remaining = deadline - System.nanoTime();
+      if (!batch.isEmpty() || remaining <= 0) {
+        return batch;
+      }
+      try {
+        Thread.sleep(Math.min(IDLE_WAIT_MS, Math.max(1L, remaining / 1_000_000L)));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new FifoException("Interrupted polling disk fifo", ex);
+      }
+    }
+  }
+
+  private static EnvelopeCodec codec(int id) throws FifoException {
+    final var codecs = EnvelopeCodec.values();
+    if (id < 0 || id >= codecs.length) {
+      throw new FifoException("Unknown envelope codec: " + id);
+    }
+    return codecs[id];
+  }
+
+  @Override
+  public void close() throws FifoException {
+    try {
+      reader.commit();
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException ex) {
+        throw new FifoException("Couldn't close disk fifo", ex);
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Producer side of a disk fifo: envelopes are appended to memory-mapped segment files under a directory, so heap use
+ * stays flat however far consumers fall behind, and nothing is lost if either side crashes.  Consumers may run in this
+ * process or others on the same host, see {@link DiskDequeue}.
+ *
+ * As with {@link PartitionedLocalQueue}, envelopes are spread across partitions by document ID, one partition per
+ * consuming worker.  Each partition is a subdirectory named by its index.
+ */
+public class DiskQueue implements FifoQueue {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private final List<SegmentWriter> partitions;
+  private final EnvelopeCodec codec;
+  private final AtomicInteger next = new AtomicInteger();
+
+  public DiskQueue(Path dir, int partitionCount, int segmentSize, EnvelopeCodec codec) throws FifoException {
+    var list = new ArrayList<SegmentWriter>(partitionCount);
+    try {
+      for (int i = 0; i < partitionCount; i++) {
+        list.add(new SegmentWriter(partitionPath(dir, i), segmentSize));
+      }
+    } catch (FifoException ex) {
+      for (var writer : list) {
+        try {
+          writer.close();
+        } catch (IOException suppressed) {
+          ex.addSuppressed(suppressed);
+        }
+      }
+      throw ex;
+    }
+    this.partitions = Collections.unmodifiableList(list);
+    this.codec = codec;
+  }
+
+  static Path partitionPath(Path dir, int partition) {
+    return dir.resolve(Integer.toString(partition));
+  }
+
+  @Override
+  public void add(MagpieEnvelope env) throws FifoException {
+    final var key = Envelopes.documentId(env);
+    final var index = Objects.isNull(key)
+      ? Math.floorMod(next.getAndIncrement(), partitions.size())
+      : Math.floorMod(key.hashCode(), partitions.size());
+    partitions.get(index).append(codec.encode(env), codec.ordinal());
+  }
+
+  @Override
+  public void broadcast(MagpieEnvelope env) throws FifoException {
+    for (int i = 0; i < partitions.size(); i++) {
+      partitions.get(i).append(codec.encode(Envelopes.forPartition(env, i, partitions.size())), codec.ordinal());
+    }
+  }
+
+  @Override
+  public void flush() throws FifoException {
+    partitions.forEach(SegmentWriter::force);
+  }
+
+  @Override
+  public void close() throws FifoException {
+    FifoException failure = null;
+    for (var writer : partitions) {
+      try {
+        writer.close();
+      } catch (IOException ex) {
+        if (failure == null) {
+          failure = new FifoException("Couldn't close disk fifo", ex);
+        } else {
+          failure.addSuppressed(ex);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.openraven.magpie.api.MagpieEnvelope;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire formats for envelopes written to serialized fifos.  JSON is the original format and remains the default;
+ * SMILE and CBOR are binary encodings of the same data model that are cheaper to produce and parse, and smaller on
+ * the wire.
+ */
+public enum EnvelopeCodec {
+  // Disk fifos record each codec by ordinal, so add new codecs at the end.
+  JSON(new JsonFactory()),
+  SMILE(new SmileFactory()),
+  CBOR(new CBORFactory());
+
+  // Record header naming the codec a value was written with.  Records without it predate codecs and are JSON.
+  public static final String HEADER = "magpie.codec";
+
+  private final ObjectMapper mapper;
+  private final byte[] headerValue;
+
+  EnvelopeCodec(JsonFactory factory) {
+    this.mapper = new ObjectMapper(factory)
+      .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+      .findAndRegisterModules();
+    this.headerValue = name().getBytes(StandardCharsets.UTF_8);
+  }
+
+  public byte[] encode(MagpieEnvelope env) throws FifoException {
+    try {
+      return mapper.writeValueAsBytes(env);
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't serialize envelope as " + name(), ex);
+    }
+  }
+
+  public MagpieEnvelope decode(byte[] data) throws FifoException {
+    try {
+      return mapper.readValue(data, MagpieEnvelope.class);
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't deserialize envelope as " + name(), ex);
+    }
+  }
+
+  public byte[] headerValue() {
+    return headerValue.clone();
+  }
+
+  /**
+   * @param headerValue The raw {@link #HEADER} value from a record, or null if the record has no such header.
+   */
+  public static EnvelopeCodec fromHeader(byte[] headerValue) throws FifoException {
+    if (headerValue == null) {
+      return JSON;
+    }
+    final var name = new String(headerValue, StandardCharsets.UTF_8);
+    try {
+      return valueOf(name);
+    } catch (IllegalArgumentException ex) {
+      throw new FifoException("Unknown envelope codec: " + name, ex);
+    }
+  }
+}
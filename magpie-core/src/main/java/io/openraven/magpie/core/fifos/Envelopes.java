@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Helpers for envelope routing and for the control envelopes that travel in-band with discovery data.
+ * <p>
+ * When a layer has produced everything it will for a session it broadcasts an end-of-session marker to every
+ * partition of its output fifo.  Because a marker follows all of the producer's data on its partition, a consumer
+ * that has seen the marker on every partition from every upstream producer knows it has processed the whole session.
+ */
+public final class Envelopes {
+
+  private static final String DOCUMENT_ID = "documentId";
+
+  private static final String CONTROL = "magpie.control";
+  private static final String END_OF_SESSION = "end-of-session";
+  private static final String PRODUCER = "magpie.producer";
+  private static final String PARTITION = "magpie.partition";
+  private static final String PARTITIONS = "magpie.partitions";
+
+  /**
+   * @return The envelope's document ID, or null if it doesn't carry one.  Used as the partitioning key so that all
+   * envelopes for the same asset are handled in order by the same worker.
+   */
+  static String documentId(MagpieEnvelope env) {
+    final var contents = env.getContents();
+    if (contents == null) {
+      return null;
+    }
+    final var node = contents.get(DOCUMENT_ID);
+    return node == null || node.isNull() ? null : node.asText();
+  }
+
+  /**
+   * @param producer Name of the layer that has finished producing for the session.
+   */
+  public static MagpieEnvelope endOfSession(Session session, String producer) {
+    var env = new MagpieEnvelope();
+    env.setSession(session);
+    env.setPluginPath(List.of());
+    env.getMetadata().put(CONTROL, END_OF_SESSION);
+    env.getMetadata().put(PRODUCER, producer);
+    return env;
+  }
+
+  public static boolean isEndOfSession(MagpieEnvelope env) {
+    return env.getMetadata() != null && END_OF_SESSION.equals(env.getMetadata().get(CONTROL));
+  }
+
+  /**
+   * @return A copy of a control envelope stamped with the partition it is being sent to, so consumers can tell when
+   * they have received it from every partition.
+   */
+  static MagpieEnvelope forPartition(MagpieEnvelope env, int partition, int partitions) {
+    var copy = new MagpieEnvelope();
+    copy.setSession(env.getSession());
+    copy.setPluginPath(env.getPluginPath());
+    copy.setContents(env.getContents());
+    copy.setContentClass(env.getContentClass());
+    var metadata = new HashMap<>(env.getMetadata());
+    metadata.put(PARTITION, Integer.toString(partition));
+    metadata.put(PARTITIONS, Integer.toString(partitions));
+    copy.setMetadata(metadata);
+    return copy;
+  }
+
+  public static String producer(MagpieEnvelope env) {
+    return env.getMetadata().get(PRODUCER);
+  }
+
+  public static int partition(MagpieEnvelope env) {
+    return Integer.parseInt(env.getMetadata().getOrDefault(PARTITION, "0"));
+  }
+
+  public static int partitions(MagpieEnvelope env) {
+    return Integer.parseInt(env.getMetadata().getOrDefault(PARTITIONS, "1"));
+  }
+
+  private Envelopes() {}
+}
@@ -17,9 +17,54 @@ package io.openraven.magpie.core.fifos;
 
 import io.openraven.magpie.api.MagpieEnvelope;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 @FunctionalInterface
 public interface FifoDequeue {
   Optional<MagpieEnvelope> poll() throws FifoException;
+
+  /**
+   * Wait up to {@code timeout} for an envelope to become available.  Implementations backed by a blocking structure
+   * should override this so consumers wake as soon as data arrives; the default falls back to a single retry after
+   * sleeping for the full timeout.
+   */
+  default Optional<MagpieEnvelope> poll(Duration timeout) throws FifoException {
+    var env = poll();
+    if (env.isPresent()) {
+      return env;
+    }
+    try {
+      Thread.sleep(timeout.toMillis());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FifoException("Interrupted while waiting on dequeue", ex);
+    }
+    return poll();
+  }
+
+  /**
+   * Wait up to {@code timeout} for at least one envelope, then return it along with any others that are immediately
+   * available, up to {@code maxRecords}.  An empty list means the timeout expired with no data.
+   */
+  default List<MagpieEnvelope> pollBatch(int maxRecords, Duration timeout) throws FifoException {
+    var batch = new ArrayList<MagpieEnvelope>();
+    var env = poll(timeout);
+    while (env.isPresent()) {
+      batch.add(env.get());
+      if (batch.size() >= maxRecords) {
+        break;
+      }
+      env = poll();
+    }
+    return batch;
+  }
+
+  /**
+   * Release any resources held by this dequeue.  Must not be called while another thread is polling.
+   */
+  default void close() throws FifoException {
+  }
 }
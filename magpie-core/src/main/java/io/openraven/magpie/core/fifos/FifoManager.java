@@ -17,15 +17,22 @@
 package io.openraven.magpie.core.fifos;
 
 import io.openraven.magpie.core.config.ConfigException;
+import io.openraven.magpie.core.config.FifoConfig;
 import io.openraven.magpie.core.config.LayerConfig;
 import io.openraven.magpie.core.config.MagpieConfig;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 public class FifoManager {
@@ -33,11 +40,15 @@ public class FifoManager {
   private static final Logger LOGGER = LoggerFactory.getLogger(FifoManager.class);
 
   private final Map<String, FifoQueue> queues = new HashMap<>();
-  private final Map<String, FifoDequeue> dequeues = new HashMap<>();
+  private final Map<String, List<FifoDequeue>> dequeues = new HashMap<>();
+  // Number of consumers for each dequeue name, taken from the workers setting of the layer(s) reading from it.
+  private final Map<String, Integer> workers;
   private final MagpieConfig config;
 
   public FifoManager(MagpieConfig config) {
     this.config = config;
+    this.workers = readerWorkers(config);
+
     List<String> buildQueues = config.getLayers().values().stream()
       .map(LayerConfig::getQueue)
       .filter(Objects::nonNull)
@@ -52,6 +63,30 @@ public class FifoManager {
     buildDequeues(buildDequeues);
   }
 
+  /**
+   * Local and disk fifos are split into one partition per worker and each worker of a reading layer drains one of them,
+   * so every layer reading such a fifo must have the same number of workers or some partitions would never be drained.
+   * Kafka balances its partitions across whichever consumers are in the group, so it has no such constraint.
+   */
+  private static Map<String, Integer> readerWorkers(MagpieConfig config) {
+    final var counts = new HashMap<String, Set<Integer>>();
+    config.getLayers().values().stream()
+      .filter(l -> Objects.nonNull(l.getDequeue()))
+      .forEach(l -> counts.computeIfAbsent(l.getDequeue(), name -> new TreeSet<>()).add(l.getWorkers()));
+
+    final var workers = new HashMap<String, Integer>();
+    counts.forEach((name, values) -> {
+      final var fifoConfig = config.getFifos().get(name);
+      final var kafka = Objects.nonNull(fifoConfig) && Objects.nonNull(fifoConfig.getType())
+        && QueueType.KAFKA.name().equalsIgnoreCase(fifoConfig.getType());
+      if (values.size() > 1 && !kafka) {
+        throw new ConfigException(String.format("Layers reading fifo %s must all have the same number of workers: %s", name, values));
+      }
+      workers.put(name, Collections.max(values));
+    });
+    return workers;
+  }
+
   private void buildQueues (List<String> buildQueues) {
     buildQueues.forEach(name -> {
       if (queues.containsKey(name)) {
@@ -65,18 +100,39 @@ public class FifoManager {
       final var queueType = QueueType.valueOf(fifoConfig.getType().toUpperCase());
       switch(queueType) {
         case LOCAL:
-          var q = new LocalQueue();
-          // A LocalQueue implements both Queue and Dequeue, so it must be placed in both
-          // collections.
-          queues.put(name, q);
-          dequeues.put(name, q);
+          // A local fifo is bounded, so without a reader in this process its writers would block once it fills up.
+          if (!workers.containsKey(name)) {
+            throw new ConfigException("No layer reads from local fifo " + name);
+          }
+          final var capacity = localCapacity(name, fifoConfig);
+          final var partitions = workers.getOrDefault(name, 1);
+          if (partitions > 1) {
+            // Give each worker its own partition so envelopes for the same document are consumed in order.
+            var pq = new PartitionedLocalQueue(partitions, Math.max(1, capacity / partitions));
+            queues.put(name, pq);
+            dequeues.put(name, List.copyOf(pq.getPartitions()));
+          } else {
+            var q = new LocalQueue(capacity);
+            // A LocalQueue implements both Queue and Dequeue, so it must be placed in both
+            // collections.
+            queues.put(name, q);
+            dequeues.put(name, List.of(q));
+          }
           break;
         case KAFKA:
-          var qk = new KafkaQueue(fifoConfig.getProperties());
+          var qk = new KafkaQueue(fifoConfig.getProperties(), codec(name, fifoConfig), fifoConfig.getCompression());
           // A LocalQueue implements both Queue and Dequeue, so it must be placed in both
           // collections.
           queues.put(name, qk);
           break;
+        case DISK:
+          try {
+            queues.put(name, new DiskQueue(diskPath(name, fifoConfig), diskPartitions(name, fifoConfig),
+              intProperty(name, fifoConfig, "segmentSize", DiskQueue.DEFAULT_SEGMENT_SIZE), codec(name, fifoConfig)));
+          } catch (FifoException ex) {
+            throw new ConfigException("Couldn't open disk fifo " + name, ex);
+          }
+          break;
         default:
           throw new ConfigException("Invalid queue type: " + queueType);
       }
@@ -84,6 +140,50 @@ public class FifoManager {
     });
   }
 
+  private EnvelopeCodec codec(String name, FifoConfig fifoConfig) {
+    try {
+      return EnvelopeCodec.valueOf(fifoConfig.getCodec().toUpperCase());
+    } catch (IllegalArgumentException | NullPointerException ex) {
+      throw new ConfigException(String.format("Invalid codec for fifo %s: %s", name, fifoConfig.getCodec()), ex);
+    }
+  }
+
+  private int localCapacity(String name, FifoConfig fifoConfig) {
+    return intProperty(name, fifoConfig, "capacity", LocalQueue.DEFAULT_CAPACITY);
+  }
+
+  private int intProperty(String name, FifoConfig fifoConfig, String key, int defaultValue) {
+    final var property = fifoConfig.getProperties().get(key);
+    if (Objects.isNull(property)) {
+      return defaultValue;
+    }
+    try {
+      final var value = Integer.parseInt(property.toString());
+      if (value <= 0) {
+        throw new ConfigException(String.format("%s for fifo %s must be positive: %d", key, name, value));
+      }
+      return value;
+    } catch (NumberFormatException ex) {
+      throw new ConfigException(String.format("Invalid %s for fifo %s: %s", key, name, property), ex);
+    }
+  }
+
+  private Path diskPath(String name, FifoConfig fifoConfig) {
+    final var path = fifoConfig.getProperties().get("path");
+    if (Objects.isNull(path)) {
+      throw new ConfigException("Disk fifo 'path' value must be set under properties for " + name);
+    }
+    return Path.of(path.toString().replace("~", System.getProperty("user.home")));
+  }
+
+  /**
+   * Producers and consumers of a disk fifo may live in different processes, so the partition count can be set
+   * explicitly.  It defaults to the workers of the consuming layer when that layer is in this process.
+   */
+  private int diskPartitions(String name, FifoConfig fifoConfig) {
+    return intProperty(name, fifoConfig, "partitions", workers.getOrDefault(name, 1));
+  }
+
   private void buildDequeues(List<String> buildDequeues) {
     buildDequeues.stream()
       .filter(name -> !dequeues.containsKey(name))
@@ -100,8 +200,30 @@ public class FifoManager {
             // Local queues are handled by the buildQueues method.
             break;
           case KAFKA:
-            var dk = new KafkaDequeue(fifoConfig.getProperties());
-            dequeues.put(name, dk);
+            // One consumer per worker.  All share the configured group.id, so Kafka balances partitions across them.
+            var dks = new ArrayList<FifoDequeue>();
+            for (int i = 0; i < workers.getOrDefault(name, 1); i++) {
+              dks.add(new KafkaDequeue(fifoConfig.getProperties()));
+            }
+            dequeues.put(name, List.copyOf(dks));
+            break;
+          case DISK:
+            final var partitions = diskPartitions(name, fifoConfig);
+            final var diskWorkers = workers.getOrDefault(name, 1);
+            if (partitions != diskWorkers) {
+              throw new ConfigException(String.format("Disk fifo %s has %d partitions but its consumer has %d workers", name, partitions, diskWorkers));
+            }
+            final var consumer = fifoConfig.getProperties().getOrDefault("consumer", "magpie").toString();
+            final var deleteConsumed = Boolean.parseBoolean(String.valueOf(fifoConfig.getProperties().get("deleteConsumed")));
+            var dds = new ArrayList<FifoDequeue>();
+            try {
+              for (int i = 0; i < partitions; i++) {
+                dds.add(new DiskDequeue(diskPath(name, fifoConfig), i, consumer, deleteConsumed));
+              }
+            } catch (FifoException ex) {
+              throw new ConfigException("Couldn't open disk fifo " + name, ex);
+            }
+            dequeues.put(name, List.copyOf(dds));
             break;
           default:
             throw new ConfigException("Invalid queue type: " + queueType);
@@ -110,11 +232,88 @@ public class FifoManager {
   }
 
 
+  /**
+   * Register gauges describing each fifo: depth for local queues, delivery counts for Kafka producers and record lag
+   * for Kafka consumers.
+   */
+  public void registerMetrics(MetricsRegistry registry) {
+    queues.forEach((name, queue) -> {
+      if (queue instanceof LocalQueue) {
+        registry.gauge("magpie_fifo_depth", ((LocalQueue) queue)::size, "fifo", name);
+      } else if (queue instanceof PartitionedLocalQueue) {
+        var partitions = ((PartitionedLocalQueue) queue).getPartitions();
+        for (int i = 0; i < partitions.size(); i++) {
+          registry.gauge("magpie_fifo_depth", partitions.get(i)::size, "fifo", name, "partition", Integer.toString(i));
+        }
+      } else if (queue instanceof KafkaQueue) {
+        var kq = (KafkaQueue) queue;
+        registry.gauge("magpie_fifo_sent", kq::getSent, "fifo", name);
+        registry.gauge("magpie_fifo_delivered", kq::getDelivered, "fifo", name);
+        registry.gauge("magpie_fifo_failed", kq::getFailed, "fifo", name);
+      }
+    });
+    dequeues.forEach((name, list) -> {
+      for (int i = 0; i < list.size(); i++) {
+        if (list.get(i) instanceof KafkaDequeue) {
+          registry.gauge("magpie_fifo_consumer_lag", ((KafkaDequeue) list.get(i))::getRecordsLagMax,
+            "fifo", name, "worker", Integer.toString(i));
+        }
+      }
+    });
+  }
+
+  /**
+   * Flush every queue so that all envelopes added so far have been handed off.  Failures are logged rather than
+   * thrown so that one broken fifo doesn't prevent the others from flushing.
+   *
+   * @return true if every queue flushed cleanly.
+   */
+  public boolean flush() {
+    var clean = true;
+    for (var entry : queues.entrySet()) {
+      try {
+        entry.getValue().flush();
+      } catch (FifoException ex) {
+        LOGGER.error("Couldn't flush fifo {}", entry.getKey(), ex);
+        clean = false;
+      }
+    }
+    return clean;
+  }
+
+  /**
+   * Flush and close every queue and dequeue.  Callers must make sure no layer is still using them.
+   */
+  public void close() {
+    queues.forEach((name, queue) -> {
+      try {
+        queue.close();
+      } catch (FifoException ex) {
+        LOGGER.error("Couldn't close fifo queue {}", name, ex);
+      }
+    });
+    dequeues.forEach((name, list) -> list.forEach(dequeue -> {
+      try {
+        dequeue.close();
+      } catch (FifoException ex) {
+        LOGGER.error("Couldn't close fifo dequeue {}", name, ex);
+      }
+    }));
+  }
+
   public FifoQueue getQueue(String name) {
     return queues.get(name);
   }
 
   public FifoDequeue getDequeue(String name) {
+    var list = dequeues.get(name);
+    return list == null ? null : list.get(0);
+  }
+
+  /**
+   * @return One dequeue per worker configured on the consuming layer, or null if no such dequeue exists.
+   */
+  public List<FifoDequeue> getDequeues(String name) {
     return dequeues.get(name);
   }
 }
@@ -21,4 +21,26 @@ import io.openraven.magpie.api.MagpieEnvelope;
 @FunctionalInterface
 public interface FifoQueue {
   void add(MagpieEnvelope env) throws FifoException;
+
+  /**
+   * Deliver a control envelope to every partition of this fifo, stamped with the partition it was sent to.  See
+   * {@link Envelopes} for how these are used to detect the end of a session.
+   */
+  default void broadcast(MagpieEnvelope env) throws FifoException {
+    add(Envelopes.forPartition(env, 0, 1));
+  }
+
+  /**
+   * Block until every envelope passed to {@link #add} has been handed off to the underlying fifo.  Only queues that
+   * buffer or send asynchronously need to override this.
+   */
+  default void flush() throws FifoException {
+  }
+
+  /**
+   * Flush and release any resources held by this queue.
+   */
+  default void close() throws FifoException {
+    flush();
+  }
 }
@@ -16,19 +16,21 @@
 
 package io.openraven.magpie.core.fifos;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import io.openraven.magpie.api.MagpieEnvelope;
 import io.openraven.magpie.core.config.ConfigException;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,30 +41,33 @@ public class KafkaDequeue implements FifoDequeue{
 
   private static final Logger LOGGER = LoggerFactory.getLogger(KafkaDequeue.class);
 
-  private static final ObjectMapper MAPPER = new ObjectMapper()
-    .enable(SerializationFeature.INDENT_OUTPUT)
-    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
-    .findAndRegisterModules();
-
   // How long to poll before returning (in ms).
   private static final long POLL_TIMEOUT = 100L;
 
+  private static final String FETCH_METRICS_GROUP = "consumer-fetch-manager-metrics";
+  private static final String LAG_METRIC = "records-lag-max";
+
   private static final Map<String, Object> DEFAULT_PROPERTIES = Map.of(
-    ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName(),
-    ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName(),
-    ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1  // We need to adjust the FifoDequeue API to allow more than 1.
+    ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName()
   );
 
-  private final Consumer<String, String> consumer;
+  private final Consumer<String, byte[]> consumer;
+  // Records fetched by the consumer but not yet handed out.  A single consumer.poll() may return up to
+  // max.poll.records entries, more than a caller asked for.
+  private final Deque<ConsumerRecord<String, byte[]>> pending = new ArrayDeque<>();
 
   public KafkaDequeue(Map<String, Object> properties) {
-    var t = properties.remove("topic");
-    if (Objects.isNull(t)) {
-      throw new ConfigException("Kafka 'topic' value must be set under properties");
-    }
     var props = new HashMap<String, Object>();
     props.putAll(DEFAULT_PROPERTIES);
     props.putAll(properties);
+    // The value is decoded by whichever codec the producer recorded in the record header.
+    props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+
+    // Copy before removing so the same fifo config can build several consumers.
+    var t = props.remove("topic");
+    if (Objects.isNull(t)) {
+      throw new ConfigException("Kafka 'topic' value must be set under properties");
+    }
 
     consumer = new KafkaConsumer<>(props);
     consumer.subscribe(List.of(t.toString()));
@@ -70,17 +75,54 @@ public class KafkaDequeue implements FifoDequeue{
 
   @Override
   public Optional<MagpieEnvelope> poll() throws FifoException {
-    var records = consumer.poll(Duration.ofMillis(POLL_TIMEOUT));
-    if (!records.isEmpty()) {
-      for (var r : records) {
-        try {
-          return Optional.of(MAPPER.readValue(r.value(), MagpieEnvelope.class));
-        } catch (JsonProcessingException ex) {
-          throw new FifoException("Couldn't deserialize envelope", ex);
-        }
+    return poll(Duration.ofMillis(POLL_TIMEOUT));
+  }
+
+  @Override
+  public Optional<MagpieEnvelope> poll(Duration timeout) throws FifoException {
+    var batch = pollBatch(1, timeout);
+    return batch.isEmpty() ? Optional.empty() : Optional.of(batch.get(0));
+  }
+
+  @Override
+  public List<MagpieEnvelope> pollBatch(int maxRecords, Duration timeout) throws FifoException {
+    if (pending.isEmpty()) {
+      consumer.poll(timeout).forEach(pending::add);
+    }
+
+    var batch = new ArrayList<MagpieEnvelope>(Math.min(maxRecords, pending.size()));
+    while (batch.size() < maxRecords && !pending.isEmpty()) {
+      var r = pending.poll();
+      try {
+        final var header = r.headers().lastHeader(EnvelopeCodec.HEADER);
+        batch.add(EnvelopeCodec.fromHeader(header == null ? null : header.value()).decode(r.value()));
+      } catch (FifoException ex) {
+        // Skip the record rather than failing the batch, otherwise the envelopes already deserialized would be lost.
+        LOGGER.warn("Couldn't deserialize envelope at {}-{}:{}", r.topic(), r.partition(), r.offset(), ex);
       }
     }
+    return batch;
+  }
 
-    return Optional.empty();
+  /**
+   * @return The consumer's largest partition lag, in records, over its recent sampling window, or NaN before the
+   * first fetch.  Reads the client's own metrics, so it's safe to call from outside the polling thread.
+   */
+  public double getRecordsLagMax() {
+    return consumer.metrics().entrySet().stream()
+      .filter(e -> LAG_METRIC.equals(e.getKey().name()) && FETCH_METRICS_GROUP.equals(e.getKey().group()))
+      // The consumer-wide value; per-topic variants carry a topic tag.
+      .filter(e -> !e.getKey().tags().containsKey("topic"))
+      .map(e -> e.getValue().metricValue())
+      .filter(v -> v instanceof Number)
+      .mapToDouble(v -> ((Number) v).doubleValue())
+      .filter(Double::isFinite)
+      .findFirst()
+      .orElse(Double.NaN);
+  }
+
+  @Override
+  public void close() throws FifoException {
+    consumer.close();
   }
 }
@@ -16,55 +16,162 @@
 
 package io.openraven.magpie.core.fifos;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import io.openraven.magpie.api.MagpieEnvelope;
 import io.openraven.magpie.core.config.ConfigException;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class KafkaQueue implements FifoQueue {
 
-  private static final ObjectMapper MAPPER = new ObjectMapper()
-    .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
-    .findAndRegisterModules();
+  private static final Logger LOGGER = LoggerFactory.getLogger(KafkaQueue.class);
 
+  // Sends are asynchronous and batched.  Idempotence keeps per-partition ordering intact while several requests are
+  // in flight, which matters because envelopes for the same document share a partition.  All of these may be
+  // overridden under the fifo's properties.
   private static final Map<String, Object> DEFAULT_PROPERTIES = Map.of(
     ProducerConfig.ACKS_CONFIG, "all",
-    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName(),
-    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName()
+    ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true,
+    ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5,
+    ProducerConfig.LINGER_MS_CONFIG, 20,
+    ProducerConfig.BATCH_SIZE_CONFIG, 256 * 1024,
+    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName()
   );
 
-  private final Producer<String, String> producer;
+  // How long close() waits for outstanding records to be delivered.
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(30L);
+
+  private final Producer<String, byte[]> producer;
   private final String topic;
+  private final EnvelopeCodec codec;
+
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
 
   public KafkaQueue(Map<String, Object> properties) {
+    this(properties, EnvelopeCodec.JSON, null);
+  }
+
+  /**
+   * @param compression Optional Kafka batch compression type (e.g. lz4 or zstd).  When null the producer's
+   *                    {@code compression.type} property, if any, is used as-is.
+   */
+  public KafkaQueue(Map<String, Object> properties, EnvelopeCodec codec, String compression) {
     var props = new HashMap<String, Object>();
     props.putAll(DEFAULT_PROPERTIES);
     props.putAll(properties);
+    // Envelope encoding is owned by the codec, so the value serializer can't be overridden.
+    props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+    if (Objects.nonNull(compression)) {
+      props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+    }
 
     var t = props.remove("topic");
     if (Objects.isNull(t)) {
       throw new ConfigException("Kafka 'topic' value must be set under properties");
     }
     this.topic = t.toString();
+    this.codec = codec;
     producer = new KafkaProducer<>(props);
   }
 
+  KafkaQueue(Producer<String, byte[]> producer, String topic, EnvelopeCodec codec) {
+    this.producer = producer;
+    this.topic = topic;
+    this.codec = codec;
+  }
+
   @Override
   public void add(MagpieEnvelope env) throws FifoException {
+    // Keying by document ID sends every envelope for an asset to the same partition, and so to the same consumer.
+    final var key = Envelopes.documentId(env);
+    send(new ProducerRecord<>(topic, key, codec.encode(env)), key);
+  }
+
+  /**
+   * Sends the envelope to every partition of the topic, so that each consumer in the group receives it behind the
+   * data already sent to its partitions.
+   */
+  @Override
+  public void broadcast(MagpieEnvelope env) throws FifoException {
+    final List<PartitionInfo> partitions;
+    try {
+      partitions = producer.partitionsFor(topic);
+    } catch (KafkaException ex) {
+      throw new FifoException("Couldn't list partitions for " + topic, ex);
+    }
+    for (var p : partitions) {
+      final var copy = Envelopes.forPartition(env, p.partition(), partitions.size());
+      send(new ProducerRecord<>(topic, p.partition(), null, codec.encode(copy)), "partition " + p.partition());
+    }
+  }
+
+  private void send(ProducerRecord<String, byte[]> record, Object description) throws FifoException {
+    record.headers().add(EnvelopeCodec.HEADER, codec.headerValue());
+    sent.incrementAndGet();
     try {
-      producer.send(new ProducerRecord<>(topic, MAPPER.writeValueAsString(env)));
-    } catch (JsonProcessingException ex) {
-      throw new FifoException("Couldn't serialize envelope", ex);
+      producer.send(record, (metadata, ex) -> {
+        if (ex == null) {
+          delivered.incrementAndGet();
+        } else {
+          failed.incrementAndGet();
+          LOGGER.warn("Couldn't deliver envelope {} to {}", description, topic, ex);
+        }
+      });
+    } catch (KafkaException ex) {
+      failed.incrementAndGet();
+      throw new FifoException("Couldn't send envelope to " + topic, ex);
     }
   }
+
+  /**
+   * Block until all outstanding records have been acknowledged or have failed.
+   *
+   * @throws FifoException if any record sent through this queue could not be delivered.
+   */
+  @Override
+  public void flush() throws FifoException {
+    producer.flush();
+    LOGGER.debug("Flushed {}: sent={} delivered={} failed={}", topic, sent.get(), delivered.get(), failed.get());
+    if (failed.get() > 0) {
+      throw new FifoException(String.format("%d of %d envelopes couldn't be delivered to %s",
+        failed.get(), sent.get(), topic));
+    }
+  }
+
+  @Override
+  public void close() throws FifoException {
+    try {
+      flush();
+    } finally {
+      producer.close(CLOSE_TIMEOUT);
+    }
+  }
+
+  public long getSent() {
+    return sent.get();
+  }
+
+  public long getDelivered() {
+    return delivered.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
 }
@@ -18,23 +18,71 @@ package io.openraven.magpie.core.fifos;
 
 import io.openraven.magpie.api.MagpieEnvelope;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class LocalQueue implements FifoQueue, FifoDequeue{
 
-  private final Queue<MagpieEnvelope> queue = new ConcurrentLinkedQueue<>();
+  // Upper bound on buffered envelopes when no capacity is configured.  Once reached, add() blocks until a consumer
+  // catches up, which keeps a fast origin layer from exhausting the heap.
+  public static final int DEFAULT_CAPACITY = 1000;
+
+  private final BlockingQueue<MagpieEnvelope> queue;
+
+  public LocalQueue() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LocalQueue(int capacity) {
+    this.queue = new LinkedBlockingQueue<>(capacity);
+  }
 
   @Override
   public Optional<MagpieEnvelope> poll() throws FifoException {
     return Optional.ofNullable(queue.poll());
   }
 
+  @Override
+  public Optional<MagpieEnvelope> poll(Duration timeout) throws FifoException {
+    try {
+      return Optional.ofNullable(queue.poll(timeout.toMillis(), TimeUnit.MILLISECONDS));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FifoException("Interrupted while waiting on dequeue", ex);
+    }
+  }
+
+  @Override
+  public List<MagpieEnvelope> pollBatch(int maxRecords, Duration timeout) throws FifoException {
+    var batch = new ArrayList<MagpieEnvelope>();
+    poll(timeout).ifPresent(env -> {
+      batch.add(env);
+      queue.drainTo(batch, maxRecords - 1);
+    });
+    return batch;
+  }
+
   @Override
   public void add(MagpieEnvelope env) throws FifoException {
-    if (!queue.add(env)) {
-      throw new FifoException("Couldn't enqueue " + env.toString());
+    try {
+      queue.put(env);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FifoException("Couldn't enqueue " + env.toString(), ex);
     }
   }
+
+  @Override
+  public void close() throws FifoException {
+    // Nothing to release; envelopes are handed off synchronously.
+  }
+
+  public int size() {
+    return queue.size();
+  }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local fifo split into one {@link LocalQueue} per consuming worker.  Envelopes are routed by document ID so that
+ * every envelope for a given asset lands on the same partition and is processed in order, much as Kafka does with
+ * keyed records.  Envelopes without a document ID are spread round-robin.
+ */
+public class PartitionedLocalQueue implements FifoQueue {
+
+  private final List<LocalQueue> partitions;
+  private final AtomicInteger next = new AtomicInteger();
+
+  public PartitionedLocalQueue(int partitionCount, int capacity) {
+    var list = new ArrayList<LocalQueue>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) {
+      list.add(new LocalQueue(capacity));
+    }
+    this.partitions = Collections.unmodifiableList(list);
+  }
+
+  @Override
+  public void add(MagpieEnvelope env) throws FifoException {
+    final var key = Envelopes.documentId(env);
+    final var index = Objects.isNull(key)
+      ? Math.floorMod(next.getAndIncrement(), partitions.size())
+      : Math.floorMod(key.hashCode(), partitions.size());
+    partitions.get(index).add(env);
+  }
+
+  @Override
+  public void broadcast(MagpieEnvelope env) throws FifoException {
+    for (int i = 0; i < partitions.size(); i++) {
+      partitions.get(i).add(Envelopes.forPartition(env, i, partitions.size()));
+    }
+  }
+
+  public List<LocalQueue> getPartitions() {
+    return partitions;
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads one partition of a disk fifo on behalf of a named consumer.  The consumer's position is kept in a cursor
+ * file beside the segments, so a restarted consumer resumes where it last committed.  Consumers with different names
+ * each read every record, and a segment is only deleted once every one of them is past it.
+ */
+final class SegmentReader implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentReader.class);
+  private static final int CURSOR_SIZE = Long.BYTES + Integer.BYTES;
+  private static final String CURSOR_SUFFIX = ".cursor";
+
+  static final class Record {
+    final int codec;
+    final byte[] payload;
+
+    Record(int codec, byte[] payload) {
+      this.codec = codec;
+      this.payload = payload;
+    }
+  }
+
+  private final Path dir;
+  private final Path cursorPath;
+  private final boolean deleteConsumed;
+  private final FileChannel cursorChannel;
+  private final FileLock lock;
+  private final ByteBuffer cursor = ByteBuffer.allocate(CURSOR_SIZE);
+
+  private long sequence;
+  private int position;
+  private MappedByteBuffer buffer;
+
+  SegmentReader(Path dir, String consumer, boolean deleteConsumed) throws FifoException {
+    this.dir = dir;
+    this.cursorPath = dir.resolve(consumer + CURSOR_SUFFIX);
+    this.deleteConsumed = deleteConsumed;
+    try {
+      Files.createDirectories(dir);
+      cursorChannel = FileChannel.open(cursorPath,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      lock = tryLock(cursorChannel);
+      if (lock == null) {
+        cursorChannel.close();
+        throw new FifoException(String.format("Consumer %s is already reading %s", consumer, dir));
+      }
+      if (cursorChannel.size() >= CURSOR_SIZE) {
+        cursorChannel.read(cursor, 0);
+        cursor.flip();
+        sequence = cursor.getLong();
+        position = cursor.getInt();
+      } else {
+        sequence = -1L;
+      }
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't open disk fifo at " + dir, ex);
+    }
+  }
+
+  private static FileLock tryLock(FileChannel channel) throws IOException {
+    try {
+      return channel.tryLock();
+    } catch (OverlappingFileLockException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * @return The next record, or null if the reader has caught up with the producer.
+   */
+  Record next() throws FifoException {
+    try {
+      while (buffer != null || open()) {
+        if (position + Segments.HEADER_SIZE > buffer.capacity()) {
+          if (!advance()) {
+            return null;
+          }
+          continue;
+        }
+        final var length = Segments.getLength(buffer, position);
+        if (length == 0) {
+          return null;
+        }
+        if (length == Segments.END_OF_SEGMENT) {
+          if (!advance()) {
+            return null;
+          }
+          continue;
+        }
+        if (!Segments.isValid(buffer, position, length)) {
+          // Lengths are published last, so this is damage rather than a write in progress.  There's no telling where
+          // the next record starts, so give up on the rest of the segment.
+          LOGGER.error("Skipping damaged record and the rest of segment {}:{}", Segments.segmentPath(dir, sequence), position);
+          position = buffer.capacity();
+          continue;
+        }
+
+        final var codec = buffer.getInt(position + 8);
+        final var payload = new byte[length];
+        ((ByteBuffer) buffer).duplicate().position(position + Segments.HEADER_SIZE).get(payload);
+        position += Segments.HEADER_SIZE + Segments.align(length);
+        return new Record(codec, payload);
+      }
+      return null;
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't read disk fifo at " + dir, ex);
+    }
+  }
+
+  /**
+   * Map the segment named by the cursor, or the oldest one if the cursor is unset or its segment has been deleted.
+   */
+  private boolean open() throws IOException {
+    final var sequences = Segments.sequences(dir);
+    if (sequences.isEmpty()) {
+      return false;
+    }
+    final var oldest = sequences.get(0);
+    if (sequence < oldest) {
+      sequence = oldest;
+      position = 0;
+    } else if (!sequences.contains(sequence)) {
+      return false;
+    }
+    buffer = map(Segments.segmentPath(dir, sequence));
+    return true;
+  }
+
+  private boolean advance() throws IOException {
+    final var next = Segments.segmentPath(dir, sequence + 1);
+    if (!Files.exists(next)) {
+      return false;
+    }
+    buffer = map(next);
+    sequence++;
+    position = 0;
+    return true;
+  }
+
+  private static MappedByteBuffer map(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * Record everything returned by {@link #next()} so far as consumed.
+   */
+  void commit() throws FifoException {
+    if (buffer == null) {
+      return;
+    }
+    try {
+      cursor.clear();
+      cursor.putLong(sequence).putInt(position).flip();
+      cursorChannel.write(cursor, 0);
+      if (deleteConsumed) {
+        final var needed = oldestNeeded();
+        for (var seq : Segments.sequences(dir)) {
+          if (seq >= needed) {
+            break;
+          }
+          Files.deleteIfExists(Segments.segmentPath(dir, seq));
+        }
+      }
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't commit position in " + dir, ex);
+    }
+  }
+
+  /**
+   * @return The oldest segment still needed by any consumer of this partition.  A consumer that hasn't committed yet
+   * starts from the oldest segment, so it holds back every deletion.
+   */
+  private long oldestNeeded() throws IOException {
+    var oldest = sequence;
+    try (var files = Files.list(dir)) {
+      for (var path : (Iterable<Path>) files::iterator) {
+        if (path.getFileName().toString().endsWith(CURSOR_SUFFIX) && !path.equals(cursorPath)) {
+          oldest = Math.min(oldest, committedSequence(path));
+        }
+      }
+    }
+    return oldest;
+  }
+
+  private static long committedSequence(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < CURSOR_SIZE) {
+        return -1L;
+      }
+      final var committed = ByteBuffer.allocate(Long.BYTES);
+      channel.read(committed, 0);
+      return committed.flip().getLong();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      lock.release();
+    } finally {
+      cursorChannel.close();
+    }
+  }
+}
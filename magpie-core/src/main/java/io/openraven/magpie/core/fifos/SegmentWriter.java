@@ -0,0 +1,181 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends records to one partition of a disk fifo.  A lock file keeps a second producer, in this or another process,
+ * from writing to the same partition.
+ */
+final class SegmentWriter implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentWriter.class);
+
+  private final Path dir;
+  private final int segmentSize;
+  private final FileChannel lockChannel;
+  private final FileLock lock;
+
+  private long sequence;
+  private MappedByteBuffer buffer;
+  private int position;
+
+  SegmentWriter(Path dir, int segmentSize) throws FifoException {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    try {
+      Files.createDirectories(dir);
+      lockChannel = FileChannel.open(dir.resolve("producer.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      lock = tryLock(lockChannel);
+      if (lock == null) {
+        lockChannel.close();
+        throw new FifoException("Another producer is writing to " + dir);
+      }
+
+      final var sequences = Segments.sequences(dir);
+      if (sequences.isEmpty()) {
+        sequence = 0L;
+        buffer = create(sequence);
+      } else {
+        recover(sequences.get(sequences.size() - 1));
+      }
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't open disk fifo at " + dir, ex);
+    }
+  }
+
+  private static FileLock tryLock(FileChannel channel) throws IOException {
+    try {
+      return channel.tryLock();
+    } catch (OverlappingFileLockException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Find the end of the data in the newest segment and carry on appending there if nothing follows it.  Anything past
+   * the last intact record was torn by a crash; in that case the segment is closed off and a fresh one started, so the
+   * torn bytes never need to be erased.
+   */
+  private void recover(long last) throws IOException {
+    sequence = last;
+    buffer = map(Segments.segmentPath(dir, last));
+    position = 0;
+    var intact = false;
+    while (position + Segments.HEADER_SIZE <= buffer.capacity()) {
+      final var length = Segments.getLength(buffer, position);
+      if (length == 0) {
+        intact = Segments.isClear(buffer, position);
+        break;
+      }
+      if (length == Segments.END_OF_SEGMENT) {
+        break;
+      }
+      if (!Segments.isValid(buffer, position, length)) {
+        LOGGER.warn("Discarding damaged record at {}:{}", Segments.segmentPath(dir, last), position);
+        break;
+      }
+      position += Segments.HEADER_SIZE + Segments.align(length);
+    }
+    if (!intact) {
+      roll();
+    }
+  }
+
+  synchronized void append(byte[] payload, int codec) throws FifoException {
+    final var size = Segments.HEADER_SIZE + Segments.align(payload.length);
+    if (size > segmentSize) {
+      throw new FifoException(String.format("Envelope of %d bytes doesn't fit in a %d byte segment", payload.length, segmentSize));
+    }
+    try {
+      if (position + size > buffer.capacity()) {
+        roll();
+      }
+    } catch (IOException ex) {
+      throw new FifoException("Couldn't start a new segment in " + dir, ex);
+    }
+
+    buffer.putInt(position + 4, Segments.checksum(payload));
+    buffer.putInt(position + 8, codec);
+    ((ByteBuffer) buffer).duplicate().position(position + Segments.HEADER_SIZE).put(payload);
+    // Publish last, so readers never see a partial record.
+    Segments.putLength(buffer, position, payload.length);
+    position += size;
+  }
+
+  private void roll() throws IOException {
+    final var next = create(sequence + 1);
+    // The next segment exists before readers are told to move to it.
+    if (position + Segments.HEADER_SIZE <= buffer.capacity()) {
+      Segments.putLength(buffer, position, Segments.END_OF_SEGMENT);
+    }
+    buffer.force();
+    sequence++;
+    buffer = next;
+    position = 0;
+  }
+
+  private MappedByteBuffer create(long seq) throws IOException {
+    final var path = Segments.segmentPath(dir, seq);
+    // Size the file under a temporary name so a reader never maps a partially sized segment.
+    final var tmp = dir.resolve(path.getFileName() + ".tmp");
+    try (var channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      channel.truncate(0);
+      channel.write(ByteBuffer.allocate(1), segmentSize - 1L);
+    }
+    Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+    return map(path);
+  }
+
+  private static MappedByteBuffer map(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    }
+  }
+
+  /**
+   * Write the current segment through to disk.  Records already survive a crash of this process once appended; this
+   * makes them survive a crash of the host.
+   */
+  synchronized void force() {
+    buffer.force();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    buffer.force();
+    try {
+      lock.release();
+    } finally {
+      lockChannel.close();
+    }
+  }
+}
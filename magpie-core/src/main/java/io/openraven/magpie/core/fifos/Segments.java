@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.fifos;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk layout shared by {@link SegmentWriter} and {@link SegmentReader}.
+ *
+ * A partition is a directory of fixed-size, memory-mapped segment files named by sequence number.  Records are
+ * appended at 4-byte aligned offsets as {@code [length][crc][codec][payload]}.  The length is written last, with
+ * release semantics, so a reader that sees a non-zero length also sees the complete record, and a record torn by a
+ * crash is left with a length of zero.  A length of {@link #END_OF_SEGMENT} tells readers to move to the next file.
+ */
+final class Segments {
+
+  static final int HEADER_SIZE = 12;
+  static final int END_OF_SEGMENT = -1;
+  static final String SUFFIX = ".seg";
+
+  private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+  private Segments() {
+  }
+
+  static Path segmentPath(Path dir, long sequence) {
+    return dir.resolve(String.format("%020d%s", sequence, SUFFIX));
+  }
+
+  /**
+   * @return Sequence numbers of the segments in the directory, oldest first.
+   */
+  static List<Long> sequences(Path dir) throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return List.of();
+    }
+    try (var files = Files.list(dir)) {
+      return files
+        .map(p -> p.getFileName().toString())
+        .filter(n -> n.endsWith(SUFFIX))
+        .map(n -> Long.parseLong(n.substring(0, n.length() - SUFFIX.length())))
+        .sorted()
+        .collect(Collectors.toList());
+    }
+  }
+
+  static int align(int size) {
+    return (size + 3) & ~3;
+  }
+
+  static int getLength(MappedByteBuffer buffer, int position) {
+    return (int) INT.getAcquire(buffer, position);
+  }
+
+  static void putLength(MappedByteBuffer buffer, int position, int length) {
+    INT.setRelease(buffer, position, length);
+  }
+
+  static int checksum(MappedByteBuffer buffer, int offset, int length) {
+    var crc = new CRC32C();
+    // MappedByteBuffer only overrides duplicate() from Java 17, so call it through ByteBuffer to run on 11.
+    crc.update(((ByteBuffer) buffer).duplicate().position(offset).limit(offset + length));
+    return (int) crc.getValue();
+  }
+
+  static int checksum(byte[] payload) {
+    var crc = new CRC32C();
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * @return True if nothing has been written to the segment from the given offset on.
+   */
+  static boolean isClear(MappedByteBuffer buffer, int from) {
+    var position = from;
+    for (; position + Long.BYTES <= buffer.capacity(); position += Long.BYTES) {
+      if (buffer.getLong(position) != 0L) {
+        return false;
+      }
+    }
+    for (; position < buffer.capacity(); position++) {
+      if (buffer.get(position) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return True if the record at the given offset is complete and intact.
+   */
+  static boolean isValid(MappedByteBuffer buffer, int position, int length) {
+    return length > 0
+      && (long) position + HEADER_SIZE + length <= buffer.capacity()
+      && checksum(buffer, position + HEADER_SIZE, length) == buffer.getInt(position + 4);
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.layers;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.core.fifos.FifoException;
+
+import java.util.List;
+
+/**
+ * A layer fed from a fifo.  {@link #process(List)} is the work done on each dequeued batch, split out from
+ * {@link #exec(int)} so that a fused upstream layer can hand envelopes over directly.
+ */
+interface ConsumingLayer extends Layer {
+
+  void process(List<MagpieEnvelope> batch) throws FifoException;
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.layers;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.core.fifos.Envelopes;
+import io.openraven.magpie.core.fifos.FifoException;
+import io.openraven.magpie.core.fifos.FifoQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stands in for a local fifo between two layers in the same process, running the consuming layer on the producer's
+ * thread instead of queueing.  With a buffer size above one, envelopes are handed over in batches of that size;
+ * end-of-session markers always flush the buffer so a session is never left waiting on a partial batch.
+ *
+ * Calls are serialized, matching the single worker a fused consumer is limited to.
+ */
+class FusedQueue implements FifoQueue {
+
+  private final ConsumingLayer target;
+  private final int bufferSize;
+  private final List<MagpieEnvelope> buffer;
+
+  FusedQueue(ConsumingLayer target, int bufferSize) {
+    this.target = target;
+    this.bufferSize = Math.max(1, bufferSize);
+    this.buffer = new ArrayList<>(this.bufferSize);
+  }
+
+  @Override
+  public synchronized void add(MagpieEnvelope env) throws FifoException {
+    if (bufferSize == 1) {
+      target.process(List.of(env));
+      return;
+    }
+    buffer.add(env);
+    if (buffer.size() >= bufferSize || Envelopes.isEndOfSession(env)) {
+      flush();
+    }
+  }
+
+  @Override
+  public synchronized void flush() throws FifoException {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    final var batch = List.copyOf(buffer);
+    buffer.clear();
+    target.process(batch);
+  }
+}
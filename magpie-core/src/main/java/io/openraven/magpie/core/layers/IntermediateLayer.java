@@ -19,46 +19,101 @@ package io.openraven.magpie.core.layers;
 import io.openraven.magpie.api.IntermediatePlugin;
 import io.openraven.magpie.api.MagpieEnvelope;
 import io.openraven.magpie.api.MagpiePlugin;
+import io.openraven.magpie.core.fifos.Envelopes;
 import io.openraven.magpie.core.fifos.FifoDequeue;
 import io.openraven.magpie.core.fifos.FifoException;
 import io.openraven.magpie.core.fifos.FifoQueue;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-public class IntermediateLayer implements Layer {
+public class IntermediateLayer implements ConsumingLayer {
 
   private final static Logger LOGGER = LoggerFactory.getLogger(IntermediateLayer.class);
 
-  private final FifoDequeue dequeue;
+  // How long exec() waits for an envelope before returning control to the caller.
+  private static final Duration POLL_TIMEOUT = Duration.ofMillis(100L);
+  // Maximum number of envelopes drained from the dequeue per exec() call.
+  private static final int MAX_BATCH_SIZE = 100;
+
+  private final List<FifoDequeue> dequeues;
   private final Collection<IntermediatePlugin> plugins;
   private final FifoQueue queue;
   private final String name;
+  private final SessionDrain drain;
+  private final LayerMetrics metrics;
 
-  public IntermediateLayer(String name, FifoDequeue dequeue, Collection<IntermediatePlugin> plugins, FifoQueue queue) {
-    this.dequeue = dequeue;
+  public IntermediateLayer(String name, List<FifoDequeue> dequeues, Collection<IntermediatePlugin> plugins, FifoQueue queue,
+                           SessionDrain drain, MetricsRegistry metrics) {
+    this.dequeues = dequeues;
     this.plugins = plugins;
     this.queue = queue;
     this.name = name;
+    this.drain = drain;
+    this.metrics = new LayerMetrics(metrics, name);
   }
 
   public void exec() throws FifoException {
-    final var opt = dequeue.poll();
-    if (opt.isEmpty()) {
+    exec(0);
+  }
+
+  @Override
+  public void exec(int worker) throws FifoException {
+    process(dequeues.get(worker).pollBatch(MAX_BATCH_SIZE, POLL_TIMEOUT));
+  }
+
+  @Override
+  public void process(List<MagpieEnvelope> batch) throws FifoException {
+    if (batch.isEmpty()) {
       return;
     }
-    final var env = opt.get();
-    final var pluginPath = env.getPluginPath();
-    final var lastPlugin = pluginPath.isEmpty() ? null : pluginPath.get(pluginPath.size()-1);
-    plugins.forEach(p -> {
-      try {
-        p.accept(env, this::emit);
-      } catch (Exception ex) {
-        LOGGER.warn("Plugin exception: {}", p.id(), ex);
+
+    final var start = System.nanoTime();
+    final var markers = new ArrayList<MagpieEnvelope>();
+    batch.forEach(env -> {
+      if (Envelopes.isEndOfSession(env)) {
+        markers.add(env);
+        return;
       }
+      metrics.in.increment();
+      plugins.forEach(p -> {
+        final var pluginStart = System.nanoTime();
+        try {
+          p.accept(env, this::emit);
+        } catch (Exception ex) {
+          LOGGER.warn("Plugin exception: {}", p.id(), ex);
+        } finally {
+          metrics.plugin(p.id()).recordSince(pluginStart);
+        }
+      });
     });
+
+    // Markers are only counted once the data ahead of them has been emitted, so the marker passed downstream always
+    // trails this layer's output for the session.
+    for (var marker : markers) {
+      if (drain.onMarker(marker)) {
+        queue.broadcast(Envelopes.endOfSession(marker.getSession(), name));
+      }
+    }
+    metrics.exec.recordSince(start);
+  }
+
+  @Override
+  public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+    return drain.await(timeout, unit);
+  }
+
+  @Override
+  public int getWorkers() {
+    // Zero when fused: the upstream layer runs this one, so it needs no threads of its own.
+    return dequeues.size();
   }
 
   @Override
@@ -69,6 +124,7 @@ public class IntermediateLayer implements Layer {
   private void emit(MagpieEnvelope env) {
     try {
       queue.add(env);
+      metrics.out.increment();
     } catch (FifoException e) {
       LOGGER.warn("Emitter exception", e);
     }
@@ -18,9 +18,34 @@ package io.openraven.magpie.core.layers;
 
 import io.openraven.magpie.core.fifos.FifoException;
 
+import java.util.concurrent.TimeUnit;
+
 public interface Layer {
 
   void exec() throws FifoException;
+
+  /**
+   * Run a single pass on behalf of one of this layer's workers.  Layers that consume from a dequeue give each worker
+   * its own dequeue; the default ignores the worker index.
+   */
+  default void exec(int worker) throws FifoException {
+    exec();
+  }
+
+  default int getWorkers() {
+    return 1;
+  }
+
+  /**
+   * Wait until this layer has processed everything the current session sent it.  Layers that aren't fed by the
+   * session (origin layers, or layers fed only from other processes) return immediately.
+   *
+   * @return false if the timeout expired first.
+   */
+  default boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+    return true;
+  }
+
   String getName();
   LayerType getType();
   void shutdown();
@@ -27,16 +27,21 @@ import io.openraven.magpie.core.config.MagpieConfig;
 import io.openraven.magpie.core.fifos.FifoDequeue;
 import io.openraven.magpie.core.fifos.FifoManager;
 import io.openraven.magpie.core.fifos.FifoQueue;
+import io.openraven.magpie.core.fifos.QueueType;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
 import io.openraven.magpie.core.plugins.PluginManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class LayerManager {
@@ -45,48 +50,142 @@ public class LayerManager {
 
   private final MagpieConfig config;
   private final FifoManager fifoManager;
+  private final MetricsRegistry metrics;
   private final Map<String, Layer> layers = new LinkedHashMap<>();  // Preserve insertion order
 
 
 
-  public LayerManager(Session session, MagpieConfig config, FifoManager fifoManager, PluginManager pluginManager) {
+  public LayerManager(Session session, MagpieConfig config, FifoManager fifoManager, PluginManager pluginManager,
+                      MetricsRegistry metrics) {
     this.config = config;
     this.fifoManager = fifoManager;
+    this.metrics = metrics;
     buildLayers(session, fifoManager, pluginManager);
   }
 
   private void buildLayers(Session session, FifoManager fifoManager, PluginManager pluginManager) {
-    config.getLayers().forEach((name, layerConfig) -> {
-      List<MagpiePlugin> plugins = layerConfig.getPlugins().stream()
-        .map(pluginManager::byId)
-        .filter(Optional::isPresent)
-        .map(Optional::get)
-        .collect(Collectors.toList());
+    final var fused = fusedFifos();
+    final var built = new HashMap<String, Layer>();
+    config.getLayers().keySet().forEach(name -> buildLayer(name, session, pluginManager, fused, built, new HashSet<>()));
+    // Fusion builds consumers ahead of their producers, so restore the configured order.
+    config.getLayers().keySet().forEach(name -> layers.put(name, built.get(name)));
+  }
 
-      final var layerType = LayerType.valueOf(layerConfig.getType().toUpperCase());
-      switch (layerType) {
-        case ORIGIN:
-          layers.put(name, new OriginLayer(name, session,
-            plugins.stream().map(p -> (OriginPlugin)p).collect(Collectors.toList()),
-            getOrThrowQueue(name, layerConfig)));
-          break;
-        case INTERMEDIATE:
-          layers.put(name, new IntermediateLayer(name,
-            getOrThrowDequeue(name, layerConfig),
-            plugins.stream().map(p -> (IntermediatePlugin)p).collect(Collectors.toList()),
-            getOrThrowQueue(name, layerConfig)));
-          break;
-        case TERMINAL:
-          layers.put(name, new TerminalLayer(name,
-            getOrThrowDequeue(name, layerConfig),
-            plugins.stream().map(p -> (TerminalPlugin)p).collect(Collectors.toList())));
-          break;
-        default:
-          throw new ConfigException(String.format("Illegal type for layer %s: %s", name, layerConfig.getType()));
-      }
+  private Layer buildLayer(String name, Session session, PluginManager pluginManager, Map<String, String> fused,
+                           Map<String, Layer> built, Set<String> path) {
+    if (built.containsKey(name)) {
+      return built.get(name);
+    }
+    if (!path.add(name)) {
+      throw new ConfigException("Layers joined by local fifos form a cycle and can't be fused: " + path);
+    }
+
+    final var layerConfig = config.getLayers().get(name);
+    List<MagpiePlugin> plugins = layerConfig.getPlugins().stream()
+      .map(pluginManager::byId)
+      .filter(Optional::isPresent)
+      .map(Optional::get)
+      .collect(Collectors.toList());
+
+    final Layer layer;
+    final var layerType = LayerType.valueOf(layerConfig.getType().toUpperCase());
+    switch (layerType) {
+      case ORIGIN:
+        layer = new OriginLayer(name, session,
+          plugins.stream().map(p -> (OriginPlugin)p).collect(Collectors.toList()),
+          getQueue(name, layerConfig, session, pluginManager, fused, built, path),
+          metrics);
+        break;
+      case INTERMEDIATE:
+        layer = new IntermediateLayer(name,
+          getDequeues(name, layerConfig, fused),
+          plugins.stream().map(p -> (IntermediatePlugin)p).collect(Collectors.toList()),
+          getQueue(name, layerConfig, session, pluginManager, fused, built, path),
+          new SessionDrain(name, session.getId(), sessionProducers(layerConfig.getDequeue(), Set.of())),
+          metrics);
+        break;
+      case TERMINAL:
+        layer = new TerminalLayer(name,
+          getDequeues(name, layerConfig, fused),
+          plugins.stream().map(p -> (TerminalPlugin)p).collect(Collectors.toList()),
+          new SessionDrain(name, session.getId(), sessionProducers(layerConfig.getDequeue(), Set.of())),
+          metrics);
+        break;
+      default:
+        throw new ConfigException(String.format("Illegal type for layer %s: %s", name, layerConfig.getType()));
+    }
 
-      LOGGER.debug("Built layer {}", name);
+    built.put(name, layer);
+    path.remove(name);
+    LOGGER.debug("Built layer {}", name);
+    return layer;
+  }
+
+  /**
+   * @return Local fifos whose consuming layer will be fused into the producing one, mapped to the consuming layer's
+   * name.  A fifo qualifies when exactly one layer writes to it and exactly one single-worker layer reads from it;
+   * anything else needs the fifo to fan in or out.
+   */
+  private Map<String, String> fusedFifos() {
+    if (!config.getFusion().isEnabled()) {
+      return Map.of();
+    }
+    final var fused = new HashMap<String, String>();
+    config.getFifos().forEach((fifoName, fifoConfig) -> {
+      if (Objects.isNull(fifoConfig.getType()) || QueueType.valueOf(fifoConfig.getType().toUpperCase()) != QueueType.LOCAL) {
+        return;
+      }
+      final var producers = config.getLayers().values().stream()
+        .filter(l -> fifoName.equals(l.getQueue()))
+        .count();
+      final var consumers = config.getLayers().entrySet().stream()
+        .filter(e -> fifoName.equals(e.getValue().getDequeue()))
+        .collect(Collectors.toList());
+      if (producers == 1 && consumers.size() == 1 && consumers.get(0).getValue().getWorkers() == 1) {
+        fused.put(fifoName, consumers.get(0).getKey());
+        LOGGER.debug("Fusing layer {} into its producer over local fifo {}", consumers.get(0).getKey(), fifoName);
+      }
     });
+    return fused;
+  }
+
+  private FifoQueue getQueue(String layerName, LayerConfig layerConfig, Session session, PluginManager pluginManager,
+                             Map<String, String> fused, Map<String, Layer> built, Set<String> path) {
+    final var consumer = fused.get(layerConfig.getQueue());
+    if (Objects.isNull(consumer)) {
+      return getOrThrowQueue(layerName, layerConfig);
+    }
+    final var target = buildLayer(consumer, session, pluginManager, fused, built, path);
+    return new FusedQueue((ConsumingLayer) target, config.getFusion().getBuffer());
+  }
+
+  private List<FifoDequeue> getDequeues(String layerName, LayerConfig layerConfig, Map<String, String> fused) {
+    // A fused layer is fed directly by its producer.
+    return fused.containsKey(layerConfig.getDequeue()) ? List.of() : getOrThrowDequeues(layerName, layerConfig);
+  }
+
+  /**
+   * @return Names of the layers writing to the given fifo that will carry this session's data, i.e. origin layers
+   * and the intermediate layers downstream of them.  Each of these sends an end-of-session marker when it's done.
+   */
+  private Set<String> sessionProducers(String fifoName, Set<String> path) {
+    return config.getLayers().entrySet().stream()
+      .filter(e -> Objects.equals(fifoName, e.getValue().getQueue()))
+      .filter(e -> isFedBySession(e.getKey(), e.getValue(), path))
+      .map(Map.Entry::getKey)
+      .collect(Collectors.toSet());
+  }
+
+  private boolean isFedBySession(String name, LayerConfig layerConfig, Set<String> path) {
+    if (LayerType.valueOf(layerConfig.getType().toUpperCase()) == LayerType.ORIGIN) {
+      return true;
+    }
+    if (path.contains(name) || Objects.isNull(layerConfig.getDequeue())) {
+      return false;
+    }
+    var next = new HashSet<>(path);
+    next.add(name);
+    return !sessionProducers(layerConfig.getDequeue(), next).isEmpty();
   }
 
   private FifoQueue getOrThrowQueue(String layerName, LayerConfig layerConfig) {
@@ -102,17 +201,20 @@ public class LayerManager {
     return queue;
   }
 
-  private FifoDequeue getOrThrowDequeue(String layerName, LayerConfig layerConfig) {
+  private List<FifoDequeue> getOrThrowDequeues(String layerName, LayerConfig layerConfig) {
     final var dequeueName = layerConfig.getDequeue();
     if (Objects.isNull(dequeueName)) {
       throw new ConfigException("No fifo dequeue defined for " + layerName);
     }
+    if (layerConfig.getWorkers() < 1) {
+      throw new ConfigException(String.format("Workers for layer %s must be at least 1: %d", layerName, layerConfig.getWorkers()));
+    }
 
-    var dequeue = fifoManager.getDequeue(dequeueName);
-    if (Objects.isNull(dequeue)) {
+    var dequeues = fifoManager.getDequeues(dequeueName);
+    if (Objects.isNull(dequeues)) {
       throw new ConfigException("Couldn't find dequeue " + dequeueName);
     }
-    return dequeue;
+    return dequeues.subList(0, Math.min(layerConfig.getWorkers(), dequeues.size()));
   }
 
   public Map<String, Layer> getLayers() {
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.layers;
+
+import io.openraven.magpie.core.metrics.Counter;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
+import io.openraven.magpie.core.metrics.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The metrics a single layer records, looked up once so the per-envelope path doesn't go through the registry.
+ */
+class LayerMetrics {
+
+  private final MetricsRegistry registry;
+  private final String layer;
+  private final Map<String, Timer> pluginTimers = new ConcurrentHashMap<>();
+
+  // Data envelopes taken off the layer's dequeue; end-of-session markers aren't counted.
+  final Counter in;
+  // Envelopes handed to the layer's queue by its plugins.
+  final Counter out;
+  // Time spent in each exec() pass that had work to do.
+  final Timer exec;
+
+  LayerMetrics(MetricsRegistry registry, String layer) {
+    this.registry = registry;
+    this.layer = layer;
+    this.in = registry.counter("magpie_layer_envelopes_in_total", "layer", layer);
+    this.out = registry.counter("magpie_layer_envelopes_out_total", "layer", layer);
+    this.exec = registry.timer("magpie_layer_exec_seconds", "layer", layer);
+  }
+
+  /**
+   * @return Time spent inside the given plugin's discover or accept calls.
+   */
+  Timer plugin(String pluginId) {
+    return pluginTimers.computeIfAbsent(pluginId,
+      id -> registry.timer("magpie_plugin_seconds", "layer", layer, "plugin", id));
+  }
+}
@@ -26,8 +26,10 @@ import io.openraven.magpie.api.MagpiePlugin;
 import io.openraven.magpie.api.OriginPlugin;
 import io.openraven.magpie.api.MagpieEnvelope;
 import io.openraven.magpie.api.Session;
+import io.openraven.magpie.core.fifos.Envelopes;
 import io.openraven.magpie.core.fifos.FifoException;
 import io.openraven.magpie.core.fifos.FifoQueue;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,24 +54,39 @@ public class OriginLayer implements Layer {
   private final Collection<OriginPlugin> plugins;
   private final FifoQueue queue;
   private final String name;
+  private final LayerMetrics metrics;
 
-  public OriginLayer(String name, Session session, Collection<OriginPlugin> plugins, FifoQueue queue) {
+  public OriginLayer(String name, Session session, Collection<OriginPlugin> plugins, FifoQueue queue, MetricsRegistry metrics) {
     this.session = session;
     this.plugins = plugins;
     this.queue = queue;
     this.name = name;
+    this.metrics = new LayerMetrics(metrics, name);
   }
 
   @Override
   public void exec() throws FifoException {
+    final var start = System.nanoTime();
     plugins.forEach(p -> {
+      final var pluginStart = System.nanoTime();
       try {
         LOGGER.trace("Running discover for plugin {}", p.id());
         p.discover(session, this::emit);
       } catch (Exception ex) {
         LOGGER.warn("Plugin exception: {}", p.id(), ex);
+      } finally {
+        metrics.plugin(p.id()).recordSince(pluginStart);
       }
     });
+    // Tell downstream layers this session is complete.  The marker trails everything emitted above.  Without it they
+    // can't drain, so failing to send it fails the layer.
+    try {
+      queue.broadcast(Envelopes.endOfSession(session, name));
+    } catch (FifoException | RuntimeException ex) {
+      throw new FifoException("Couldn't send the end-of-session marker for layer " + name, ex);
+    } finally {
+      metrics.exec.recordSince(start);
+    }
   }
 
   @Override
@@ -84,6 +101,7 @@ public class OriginLayer implements Layer {
       env.getContents().set("discoverySessionId", MAPPER.valueToTree(session.getId()));
       env.setSession(session);
       queue.add(env);
+      metrics.out.increment();
     } catch (FifoException e) {
       LOGGER.warn("Emitter exception", e);
     }
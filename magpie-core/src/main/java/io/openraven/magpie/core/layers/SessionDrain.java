@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.layers;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.core.fifos.Envelopes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks end-of-session markers arriving at a consuming layer.  The layer has drained the session once it has seen a
+ * marker on every partition from each of its upstream producers.  Markers are counted across all of the layer's
+ * workers, so partitions moving between Kafka consumers don't matter.
+ */
+public class SessionDrain {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SessionDrain.class);
+
+  private final String layerName;
+  private final String sessionId;
+  private final Set<String> producers;
+  // Partitions seen so far, and the total partition count, for each upstream producer.
+  private final Map<String, Set<Integer>> seen = new HashMap<>();
+  private final Map<String, Integer> partitions = new HashMap<>();
+  private final CountDownLatch drained = new CountDownLatch(1);
+
+  /**
+   * @param producers Names of the layers in this process that feed the consuming layer.  If empty the layer is only
+   *                  fed from elsewhere and is never considered drained by this session.
+   */
+  public SessionDrain(String layerName, String sessionId, Set<String> producers) {
+    this.layerName = layerName;
+    this.sessionId = sessionId;
+    this.producers = Set.copyOf(producers);
+  }
+
+  /**
+   * Record a marker.  Must only be called once all data that preceded the marker on its partition has been processed.
+   *
+   * @return true if this marker completed the session, which happens exactly once.
+   */
+  public synchronized boolean onMarker(MagpieEnvelope marker) {
+    final var session = marker.getSession();
+    if (session == null || !Objects.equals(sessionId, session.getId())) {
+      LOGGER.trace("{} ignoring end-of-session marker for another session", layerName);
+      return false;
+    }
+    final var producer = Envelopes.producer(marker);
+    if (!producers.contains(producer) || isDrained()) {
+      return false;
+    }
+
+    seen.computeIfAbsent(producer, p -> new HashSet<>()).add(Envelopes.partition(marker));
+    partitions.put(producer, Envelopes.partitions(marker));
+    LOGGER.debug("{} received end-of-session from {} ({}/{} partitions)", layerName, producer,
+      seen.get(producer).size(), partitions.get(producer));
+
+    final var complete = producers.stream()
+      .allMatch(p -> seen.containsKey(p) && seen.get(p).size() >= partitions.get(p));
+    if (complete) {
+      LOGGER.debug("{} drained session {}", layerName, sessionId);
+      drained.countDown();
+    }
+    return complete;
+  }
+
+  public boolean isDrained() {
+    return drained.getCount() == 0;
+  }
+
+  /**
+   * @return Whether this layer is fed by the current session at all.  Layers that aren't have nothing to wait for.
+   */
+  public boolean isExpected() {
+    return !producers.isEmpty();
+  }
+
+  public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+    return !isExpected() || drained.await(timeout, unit);
+  }
+}
@@ -16,45 +16,109 @@
 
 package io.openraven.magpie.core.layers;
 
+import io.openraven.magpie.api.BatchTerminalPlugin;
+import io.openraven.magpie.api.MagpieEnvelope;
 import io.openraven.magpie.api.MagpiePlugin;
 import io.openraven.magpie.api.TerminalPlugin;
+import io.openraven.magpie.core.fifos.Envelopes;
 import io.openraven.magpie.core.fifos.FifoDequeue;
 import io.openraven.magpie.core.fifos.FifoException;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-public class TerminalLayer implements Layer {
+public class TerminalLayer implements ConsumingLayer {
 
   private final static Logger LOGGER = LoggerFactory.getLogger(TerminalLayer.class);
 
-  private final FifoDequeue dequeue;
+  private static final Duration POLL_TIMEOUT = Duration.ofMillis(100L);
+  private static final int MAX_BATCH_SIZE = 100;
+
+  private final List<FifoDequeue> dequeues;
   private final Collection<TerminalPlugin> plugins;
   private final String name;
+  private final SessionDrain drain;
+  private final LayerMetrics metrics;
 
-  public TerminalLayer(String name, FifoDequeue dequeue, Collection<TerminalPlugin> plugins) {
-    this.dequeue = dequeue;
+  public TerminalLayer(String name, List<FifoDequeue> dequeues, Collection<TerminalPlugin> plugins, SessionDrain drain,
+                       MetricsRegistry metrics) {
+    this.dequeues = dequeues;
     this.plugins = plugins;
     this.name = name;
+    this.drain = drain;
+    this.metrics = new LayerMetrics(metrics, name);
   }
 
   @Override
   public void exec() throws FifoException {
-    final var opt = dequeue.poll();
-    if (opt.isEmpty()) {
+    exec(0);
+  }
+
+  @Override
+  public void exec(int worker) throws FifoException {
+    process(dequeues.get(worker).pollBatch(MAX_BATCH_SIZE, POLL_TIMEOUT));
+  }
+
+  @Override
+  public void process(List<MagpieEnvelope> batch) throws FifoException {
+    if (batch.isEmpty()) {
       return;
     }
-    final var env = opt.get();
-    final var pluginPath = env.getPluginPath();
-    final var lastPlugin = pluginPath.isEmpty() ? null : pluginPath.get(pluginPath.size()-1);
-    plugins.forEach(p -> {
-      try {
-        p.accept(env);
-      } catch (Exception ex) {
-        LOGGER.warn("Plugin exception: {}", p.id(), ex);
-      }
-    });
+
+    final var start = System.nanoTime();
+    final var markers = batch.stream().filter(Envelopes::isEndOfSession).collect(Collectors.toList());
+    final var envs = markers.isEmpty() ? batch : batch.stream()
+      .filter(env -> !Envelopes.isEndOfSession(env))
+      .collect(Collectors.toList());
+
+    if (!envs.isEmpty()) {
+      metrics.in.add(envs.size());
+      plugins.forEach(p -> {
+        final var pluginStart = System.nanoTime();
+        if (p instanceof BatchTerminalPlugin) {
+          acceptBatch((BatchTerminalPlugin<?>) p, envs);
+        } else {
+          envs.forEach(env -> accept(p, env));
+        }
+        metrics.plugin(p.id()).recordSince(pluginStart);
+      });
+    }
+    // Counted only after the plugins have seen the data that preceded them.
+    markers.forEach(drain::onMarker);
+    metrics.exec.recordSince(start);
+  }
+
+  @Override
+  public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+    return drain.await(timeout, unit);
+  }
+
+  private void acceptBatch(BatchTerminalPlugin<?> plugin, List<MagpieEnvelope> batch) {
+    try {
+      plugin.accept(batch);
+    } catch (Exception ex) {
+      LOGGER.warn("Plugin exception: {}", plugin.id(), ex);
+    }
+  }
+
+  private void accept(TerminalPlugin<?> plugin, MagpieEnvelope env) {
+    try {
+      plugin.accept(env);
+    } catch (Exception ex) {
+      LOGGER.warn("Plugin exception: {}", plugin.id(), ex);
+    }
+  }
+
+  @Override
+  public int getWorkers() {
+    // Zero when fused: the upstream layer runs this one, so it needs no threads of its own.
+    return dequeues.size();
   }
 
   @Override
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.metrics;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * A metric name plus its labels, e.g. {@code magpie_layer_envelopes_in_total{layer="output"}}.
+ */
+final class MetricId implements Comparable<MetricId> {
+
+  private final String name;
+  private final Map<String, String> labels;
+  private final String text;
+
+  MetricId(String name, String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Labels must be key/value pairs: " + name);
+    }
+    var map = new TreeMap<String, String>();
+    for (int i = 0; i < labels.length; i += 2) {
+      map.put(labels[i], labels[i + 1]);
+    }
+    this.name = name;
+    this.labels = map;
+    this.text = name + format(map);
+  }
+
+  String getName() {
+    return name;
+  }
+
+  /**
+   * @return The labels in Prometheus form plus one extra label, used for histogram buckets.
+   */
+  String labelsWith(String key, String value) {
+    var map = new TreeMap<>(labels);
+    map.put(key, value);
+    return format(map);
+  }
+
+  String labels() {
+    return format(labels);
+  }
+
+  private static String format(Map<String, String> labels) {
+    if (labels.isEmpty()) {
+      return "";
+    }
+    return labels.entrySet().stream()
+      .map(e -> e.getKey() + "=\"" + e.getValue().replace("\\", "\\\\").replace("\"", "\\\"") + "\"")
+      .collect(Collectors.joining(",", "{", "}"));
+  }
+
+  @Override
+  public int compareTo(MetricId o) {
+    return text.compareTo(o.text);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof MetricId && text.equals(((MetricId) o).text);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(text);
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Holds the counters, timers and gauges describing a scan. Metrics are created on first use and
+ * identified by name plus key/value label pairs, so callers can look them up again freely.
+ */
+public class MetricsRegistry {
+
+  private final Map<MetricId, Counter> counters = new ConcurrentSkipListMap<>();
+  private final Map<MetricId, Timer> timers = new ConcurrentSkipListMap<>();
+  private final Map<MetricId, Supplier<? extends Number>> gauges = new ConcurrentSkipListMap<>();
+
+  public Counter counter(String name, String... labels) {
+    return counters.computeIfAbsent(new MetricId(name, labels), id -> new Counter());
+  }
+
+  public Timer timer(String name, String... labels) {
+    return timers.computeIfAbsent(new MetricId(name, labels), id -> new Timer());
+  }
+
+  /**
+   * Registers a value sampled whenever the registry is read. A later registration under the same
+   * name and labels replaces the earlier one.
+   */
+  public void gauge(String name, Supplier<? extends Number> supplier, String... labels) {
+    gauges.put(new MetricId(name, labels), supplier);
+  }
+
+  /**
+   * @return All metrics in the Prometheus text exposition format (version 0.0.4).
+   */
+  public String scrape() {
+    var sb = new StringBuilder();
+    String lastName = null;
+    for (var e : counters.entrySet()) {
+      lastName = typeLine(sb, lastName, e.getKey(), "counter");
+      sb.append(e.getKey()).append(' ').append(e.getValue().get()).append('\n');
+    }
+    for (var e : gauges.entrySet()) {
+      lastName = typeLine(sb, lastName, e.getKey(), "gauge");
+      sb.append(e.getKey()).append(' ').append(sample(e.getValue())).append('\n');
+    }
+    for (var e : timers.entrySet()) {
+      var id = e.getKey();
+      var timer = e.getValue();
+      lastName = typeLine(sb, lastName, id, "histogram");
+      var cumulative = timer.cumulativeBuckets();
+      for (int i = 0; i < Timer.BUCKETS.length; i++) {
+        sb.append(id.getName()).append("_bucket").append(id.labelsWith("le", Double.toString(Timer.BUCKETS[i])))
+          .append(' ').append(cumulative[i]).append('\n');
+      }
+      var count = timer.getCount();
+      sb.append(id.getName()).append("_bucket").append(id.labelsWith("le", "+Inf")).append(' ').append(count).append('\n');
+      sb.append(id.getName()).append("_sum").append(id.labels()).append(' ').append(timer.getTotal(TimeUnit.SECONDS)).append('\n');
+      sb.append(id.getName()).append("_count").append(id.labels()).append(' ').append(count).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return A human readable, one metric per line, summary intended for the log.
+   */
+  public String summary() {
+    var sb = new StringBuilder();
+    counters.forEach((id, c) -> sb.append(String.format("%n  %s = %d", id, c.get())));
+    gauges.forEach((id, g) -> sb.append(String.format("%n  %s = %s", id, sample(g))));
+    timers.forEach((id, t) -> {
+      var count = t.getCount();
+      var mean = count == 0 ? 0.0 : t.getTotal(TimeUnit.MILLISECONDS) / count;
+      sb.append(String.format(Locale.ROOT, "%n  %s count=%d mean=%.2fms max=%.2fms total=%.2fs",
+        id, count, mean, t.getMax(TimeUnit.MILLISECONDS), t.getTotal(TimeUnit.SECONDS)));
+    });
+    return sb.toString();
+  }
+
+  private static String typeLine(StringBuilder sb, String lastName, MetricId id, String type) {
+    if (!id.getName().equals(lastName)) {
+      sb.append("# TYPE ").append(id.getName()).append(' ').append(type).append('\n');
+    }
+    return id.getName();
+  }
+
+  private static String sample(Supplier<? extends Number> supplier) {
+    try {
+      var value = supplier.get();
+      return value == null ? "NaN" : value.toString();
+    } catch (RuntimeException ex) {
+      return "NaN";
+    }
+  }
+}
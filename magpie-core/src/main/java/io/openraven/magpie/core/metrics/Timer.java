@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Open Raven Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openraven.magpie.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets, cheap enough to record on every layer pass and plugin call.
+ */
+public class Timer {
+
+  // Bucket upper bounds in seconds, spanning a fast in-memory plugin call through to a slow discovery.
+  static final double[] BUCKETS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 300};
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  Timer() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long nanos) {
+    count.increment();
+    totalNanos.add(nanos);
+    maxNanos.accumulateAndGet(nanos, Math::max);
+    final var seconds = nanos / 1e9;
+    for (int i = 0; i < BUCKETS.length; i++) {
+      if (seconds <= BUCKETS[i]) {
+        buckets[i].increment();
+        break;
+      }
+    }
+  }
+
+  /**
+   * @param start A value previously obtained from {@link System#nanoTime()}.
+   */
+  public void recordSince(long start) {
+    record(System.nanoTime() - start);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public double getTotal(TimeUnit unit) {
+    return totalNanos.sum() / (double) unit.toNanos(1);
+  }
+
+  public double getMax(TimeUnit unit) {
+    return maxNanos.get() / (double) unit.toNanos(1);
+  }
+
+  /**
+   * @return Cumulative count of recordings at or below each of {@link #BUCKETS}, as Prometheus expects.
+   */
+  long[] cumulativeBuckets() {
+    var result = new long[BUCKETS.length];
+    long running = 0;
+    for (int i = 0; i < BUCKETS.length; i++) {
+      running += buckets[i].sum();
+      result[i] = running;
+    }
+    return result;
+  }
+}
@@ -2,12 +2,19 @@ package io.openraven.magpie.core;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.openraven.magpie.core.config.ConfigException;
+import io.openraven.magpie.core.config.LayerConfig;
 import io.openraven.magpie.core.config.MagpieConfig;
+import io.openraven.magpie.core.fifos.DiskDequeue;
+import io.openraven.magpie.core.fifos.DiskQueue;
 import io.openraven.magpie.core.fifos.FifoManager;
 import io.openraven.magpie.core.fifos.LocalQueue;
+import io.openraven.magpie.core.fifos.PartitionedLocalQueue;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.InputStream;
+import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -31,5 +38,67 @@ class FifoManagerTest {
       assertTrue(fifoManager.getQueue("default") instanceof LocalQueue);
     }
   }
-}
 
+  @Test
+  public void testWorkersConfig() throws Exception {
+    try(InputStream is = FifoManagerTest.class.getResourceAsStream("/fifoconfig/workers.yaml")) {
+      var config = MAPPER.readValue(is, MagpieConfig.class);
+      assertEquals(3, config.getLayers().get("output").getWorkers());
+      assertEquals(1, config.getLayers().get("enumerate").getWorkers());
+
+      var fifoManager = new FifoManager(config);
+      assertTrue(fifoManager.getQueue("default") instanceof PartitionedLocalQueue);
+      assertEquals(3, fifoManager.getDequeues("default").size());
+    }
+  }
+
+  @Test
+  public void testDiskConfig(@TempDir Path dir) throws Exception {
+    try(InputStream is = FifoManagerTest.class.getResourceAsStream("/fifoconfig/workers.yaml")) {
+      var config = MAPPER.readValue(is, MagpieConfig.class);
+      var fifo = config.getFifos().get("default");
+      fifo.setType("disk");
+      fifo.getProperties().put("path", dir.toString());
+
+      var fifoManager = new FifoManager(config);
+      try {
+        assertTrue(fifoManager.getQueue("default") instanceof DiskQueue);
+        assertEquals(3, fifoManager.getDequeues("default").size());
+        assertTrue(fifoManager.getDequeue("default") instanceof DiskDequeue);
+      } finally {
+        fifoManager.close();
+      }
+
+      fifo.getProperties().put("partitions", 2);
+      assertThrows(ConfigException.class, () -> new FifoManager(config));
+    }
+  }
+
+  @Test
+  public void testReadersWithDifferentWorkersAreRejected() throws Exception {
+    try(InputStream is = FifoManagerTest.class.getResourceAsStream("/fifoconfig/workers.yaml")) {
+      var config = MAPPER.readValue(is, MagpieConfig.class);
+      var audit = new LayerConfig();
+      audit.setType("terminal");
+      audit.setDequeue("default");
+      audit.setWorkers(1);
+      config.getLayers().put("audit", audit);
+
+      assertThrows(ConfigException.class, () -> new FifoManager(config));
+
+      audit.setWorkers(3);
+      assertEquals(3, new FifoManager(config).getDequeues("default").size());
+    }
+  }
+
+  @Test
+  public void testLocalFifoWithoutReaderIsRejected() throws Exception {
+    try(InputStream is = FifoManagerTest.class.getResourceAsStream("/fifoconfig/simple.yaml")) {
+      var config = MAPPER.readValue(is, MagpieConfig.class);
+      config.getLayers().remove("output");
+
+      var ex = assertThrows(ConfigException.class, () -> new FifoManager(config));
+      assertTrue(ex.getMessage().contains("default"));
+    }
+  }
+}
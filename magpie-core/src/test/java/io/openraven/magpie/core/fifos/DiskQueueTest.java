@@ -0,0 +1,183 @@
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskQueueTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final Duration TIMEOUT = Duration.ofMillis(50L);
+  private static final int SMALL_SEGMENT = 4096;
+
+  @TempDir
+  Path dir;
+
+  private static MagpieEnvelope envelope(String documentId) {
+    var contents = MAPPER.createObjectNode();
+    contents.put("documentId", documentId);
+    return new MagpieEnvelope(new Session(), List.of("test"), contents);
+  }
+
+  private static List<String> drain(DiskDequeue dequeue, int max) throws FifoException {
+    var ids = new ArrayList<String>();
+    List<MagpieEnvelope> batch;
+    while (ids.size() < max && !(batch = dequeue.pollBatch(max - ids.size(), TIMEOUT)).isEmpty()) {
+      batch.forEach(env -> ids.add(Envelopes.documentId(env)));
+    }
+    return ids;
+  }
+
+  private static List<String> ids(int from, int to) {
+    return IntStream.range(from, to).mapToObj(i -> "doc-" + i).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testRoundTripAcrossSegments() throws Exception {
+    var queue = new DiskQueue(dir, 1, SMALL_SEGMENT, EnvelopeCodec.SMILE);
+    var dequeue = new DiskDequeue(dir, 0, "test", false);
+    try {
+      assertTrue(dequeue.pollBatch(10, Duration.ZERO).isEmpty());
+
+      for (var id : ids(0, 500)) {
+        queue.add(envelope(id));
+      }
+      queue.broadcast(Envelopes.endOfSession(new Session(), "origin"));
+
+      assertTrue(Segments.sequences(DiskQueue.partitionPath(dir, 0)).size() > 1);
+      assertEquals(ids(0, 500), drain(dequeue, 500));
+      var marker = dequeue.poll(TIMEOUT);
+      assertTrue(marker.isPresent());
+      assertTrue(Envelopes.isEndOfSession(marker.get()));
+      assertEquals(0, Envelopes.partition(marker.get()));
+    } finally {
+      dequeue.close();
+      queue.close();
+    }
+  }
+
+  @Test
+  public void testConsumersResumeFromTheirOwnCursor() throws Exception {
+    write(ids(0, 100));
+    assertEquals(ids(0, 40), read("first", 40));
+    // Reopening both the producer and the consumer picks up where each left off.
+    write(ids(100, 120));
+    assertEquals(ids(40, 120), read("first", 200));
+    assertEquals(ids(0, 120), read("second", 200));
+  }
+
+  @Test
+  public void testConsumedSegmentsAreDeleted() throws Exception {
+    final var partition = DiskQueue.partitionPath(dir, 0);
+    write(ids(0, 300));
+    final var before = Segments.sequences(partition).size();
+
+    var dequeue = new DiskDequeue(dir, 0, "test", true);
+    try {
+      assertEquals(300, drain(dequeue, 300).size());
+      dequeue.pollBatch(1, Duration.ZERO);
+      assertEquals(1, Segments.sequences(partition).size(), "of " + before);
+    } finally {
+      dequeue.close();
+    }
+  }
+
+  @Test
+  public void testSegmentsAreKeptUntilEveryConsumerIsPastThem() throws Exception {
+    write(ids(0, 300));
+    assertEquals(ids(0, 10), read("slow", 10));
+
+    var fast = new DiskDequeue(dir, 0, "fast", true);
+    try {
+      assertEquals(300, drain(fast, 300).size());
+      fast.pollBatch(1, Duration.ZERO);
+    } finally {
+      fast.close();
+    }
+
+    assertEquals(ids(10, 300), read("slow", 300));
+  }
+
+  @Test
+  public void testReopeningContinuesTheLastSegment() throws Exception {
+    final var partition = DiskQueue.partitionPath(dir, 0);
+    write(ids(0, 3));
+    final var segments = Segments.sequences(partition);
+
+    write(ids(3, 6));
+    write(ids(6, 9));
+
+    assertEquals(segments, Segments.sequences(partition));
+    assertEquals(ids(0, 9), read("test", 20));
+  }
+
+  @Test
+  public void testDamagedTailIsDiscardedOnRestart() throws Exception {
+    write(ids(0, 3));
+
+    // Simulate a record whose length reached the page cache but whose payload didn't.
+    final var partition = DiskQueue.partitionPath(dir, 0);
+    final var sequences = Segments.sequences(partition);
+    final var segment = Segments.segmentPath(partition, sequences.get(sequences.size() - 1));
+    try (var channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+      var position = 0;
+      int length;
+      while ((length = Segments.getLength(buffer, position)) != 0) {
+        position += Segments.HEADER_SIZE + Segments.align(length);
+      }
+      Segments.putLength(buffer, position, 64);
+    }
+
+    write(ids(3, 4));
+    assertEquals(ids(0, 4), read("test", 10));
+  }
+
+  @Test
+  public void testSingleProducerAndConsumerPerName() throws Exception {
+    var queue = new DiskQueue(dir, 2, SMALL_SEGMENT, EnvelopeCodec.JSON);
+    var dequeue = new DiskDequeue(dir, 1, "test", false);
+    try {
+      assertThrows(FifoException.class, () -> new DiskQueue(dir, 1, SMALL_SEGMENT, EnvelopeCodec.JSON));
+      assertThrows(FifoException.class, () -> new DiskDequeue(dir, 1, "test", false));
+      assertThrows(FifoException.class, () -> queue.add(new MagpieEnvelope(new Session(), List.of(),
+        MAPPER.createObjectNode().put("documentId", "x".repeat(SMALL_SEGMENT)))));
+    } finally {
+      dequeue.close();
+      queue.close();
+    }
+  }
+
+  private void write(List<String> ids) throws FifoException {
+    var queue = new DiskQueue(dir, 1, SMALL_SEGMENT, EnvelopeCodec.JSON);
+    try {
+      for (var id : ids) {
+        queue.add(envelope(id));
+      }
+    } finally {
+      queue.close();
+    }
+  }
+
+  private List<String> read(String consumer, int max) throws FifoException {
+    var dequeue = new DiskDequeue(dir, 0, consumer, false);
+    try {
+      return drain(dequeue, max);
+    } finally {
+      dequeue.close();
+    }
+  }
+}
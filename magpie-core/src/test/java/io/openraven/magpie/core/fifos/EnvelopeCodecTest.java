@@ -0,0 +1,55 @@
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieEnvelope;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnvelopeCodecTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+
+  private static MagpieEnvelope readEnvelope() throws Exception {
+    try(var is = EnvelopeCodecTest.class.getResourceAsStream("/env.json")) {
+      return MAPPER.readValue(is, MagpieEnvelope.class);
+    }
+  }
+
+  @ParameterizedTest
+  @EnumSource(EnvelopeCodec.class)
+  public void testRoundTrip(EnvelopeCodec codec) throws Exception {
+    var env = readEnvelope();
+    var decoded = codec.decode(codec.encode(env));
+
+    assertEquals(env.getContents(), decoded.getContents());
+    assertEquals(env.getPluginPath(), decoded.getPluginPath());
+    assertEquals(env.getSession().getId(), decoded.getSession().getId());
+    assertEquals(codec, EnvelopeCodec.fromHeader(codec.headerValue()));
+  }
+
+  @Test
+  public void testMissingHeaderIsJson() throws Exception {
+    assertEquals(EnvelopeCodec.JSON, EnvelopeCodec.fromHeader(null));
+    // Records written by older producers are plain JSON strings.
+    var legacy = MAPPER.writeValueAsString(readEnvelope()).getBytes(StandardCharsets.UTF_8);
+    assertNotNull(EnvelopeCodec.fromHeader(null).decode(legacy));
+  }
+
+  @Test
+  public void testUnknownHeader() {
+    assertThrows(FifoException.class, () -> EnvelopeCodec.fromHeader("XML".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testBinaryCodecsAreSmaller() throws Exception {
+    var env = readEnvelope();
+    var json = EnvelopeCodec.JSON.encode(env).length;
+    assertTrue(EnvelopeCodec.SMILE.encode(env).length < json);
+    assertTrue(EnvelopeCodec.CBOR.encode(env).length < json);
+  }
+}
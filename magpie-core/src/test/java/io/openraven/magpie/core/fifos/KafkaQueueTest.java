@@ -0,0 +1,59 @@
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieEnvelope;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KafkaQueueTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static MagpieEnvelope envelope(String documentId) {
+    var contents = MAPPER.createObjectNode();
+    contents.put("documentId", documentId);
+    return new MagpieEnvelope(null, List.of(), contents);
+  }
+
+  @Test
+  public void testDeliveredRecordsAreKeyedAndTagged() throws Exception {
+    var producer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+    var queue = new KafkaQueue(producer, "topic", EnvelopeCodec.SMILE);
+
+    queue.add(envelope("doc-a"));
+    queue.add(envelope("doc-b"));
+    queue.flush();
+
+    assertEquals(2, queue.getSent());
+    assertEquals(2, queue.getDelivered());
+    assertEquals(0, queue.getFailed());
+
+    var record = producer.history().get(0);
+    assertEquals("doc-a", record.key());
+    assertEquals(EnvelopeCodec.SMILE, EnvelopeCodec.fromHeader(record.headers().lastHeader(EnvelopeCodec.HEADER).value()));
+    assertEquals("doc-a", EnvelopeCodec.SMILE.decode(record.value()).getContents().get("documentId").asText());
+  }
+
+  @Test
+  public void testFailedDeliveryIsCountedAndSurfacedOnFlush() throws Exception {
+    var producer = new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+    var queue = new KafkaQueue(producer, "topic", EnvelopeCodec.JSON);
+
+    queue.add(envelope("doc-a"));
+    queue.add(envelope("doc-b"));
+    assertEquals(0, queue.getDelivered());
+
+    producer.errorNext(new RuntimeException("broker unavailable"));
+    producer.completeNext();
+
+    assertEquals(1, queue.getFailed());
+    assertEquals(1, queue.getDelivered());
+    assertThrows(FifoException.class, queue::flush);
+  }
+}
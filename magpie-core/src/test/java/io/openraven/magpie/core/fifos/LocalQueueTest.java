@@ -0,0 +1,68 @@
+package io.openraven.magpie.core.fifos;
+
+import io.openraven.magpie.api.MagpieEnvelope;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalQueueTest {
+
+  @Test
+  public void testTimedPollReturnsEmptyWhenIdle() throws Exception {
+    var queue = new LocalQueue();
+    assertTrue(queue.poll(Duration.ofMillis(10L)).isEmpty());
+  }
+
+  @Test
+  public void testTimedPollWakesOnAdd() throws Exception {
+    var queue = new LocalQueue();
+    var env = new MagpieEnvelope();
+    var executor = Executors.newSingleThreadExecutor();
+    try {
+      var future = executor.submit(() -> queue.poll(Duration.ofSeconds(10L)));
+      queue.add(env);
+      assertSame(env, future.get(5L, TimeUnit.SECONDS).orElseThrow());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testAddBlocksAtCapacity() throws Exception {
+    var queue = new LocalQueue(1);
+    queue.add(new MagpieEnvelope());
+
+    var added = new CountDownLatch(1);
+    var executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> {
+        queue.add(new MagpieEnvelope());
+        added.countDown();
+        return null;
+      });
+      assertFalse(added.await(200L, TimeUnit.MILLISECONDS));
+      assertTrue(queue.poll().isPresent());
+      assertTrue(added.await(5L, TimeUnit.SECONDS));
+      assertEquals(1, queue.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testPollBatchDrainsUpToMax() throws Exception {
+    var queue = new LocalQueue();
+    for (int i = 0; i < 5; i++) {
+      queue.add(new MagpieEnvelope());
+    }
+
+    assertEquals(3, queue.pollBatch(3, Duration.ofMillis(10L)).size());
+    assertEquals(2, queue.pollBatch(3, Duration.ofMillis(10L)).size());
+    assertTrue(queue.pollBatch(3, Duration.ofMillis(10L)).isEmpty());
+  }
+}
@@ -0,0 +1,41 @@
+package io.openraven.magpie.core.fifos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.MagpieEnvelope;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedLocalQueueTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static MagpieEnvelope envelope(String documentId) {
+    var contents = MAPPER.createObjectNode();
+    contents.put("documentId", documentId);
+    return new MagpieEnvelope(null, List.of(), contents);
+  }
+
+  @Test
+  public void testSameDocumentIdSamePartition() throws Exception {
+    var queue = new PartitionedLocalQueue(4, 100);
+    for (int i = 0; i < 10; i++) {
+      queue.add(envelope("doc-a"));
+    }
+
+    var sizes = queue.getPartitions().stream().map(LocalQueue::size).sorted().toArray();
+    assertArrayEquals(new Object[]{0, 0, 0, 10}, sizes);
+  }
+
+  @Test
+  public void testMissingDocumentIdSpreadsAcrossPartitions() throws Exception {
+    var queue = new PartitionedLocalQueue(4, 100);
+    for (int i = 0; i < 8; i++) {
+      queue.add(new MagpieEnvelope());
+    }
+
+    queue.getPartitions().forEach(p -> assertEquals(2, p.size()));
+  }
+}
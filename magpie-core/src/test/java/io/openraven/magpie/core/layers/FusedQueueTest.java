@@ -0,0 +1,69 @@
+package io.openraven.magpie.core.layers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.core.config.MagpieConfig;
+import io.openraven.magpie.core.fifos.FifoManager;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
+import io.openraven.magpie.core.plugins.PluginManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FusedQueueTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
+
+  @Test
+  public void testOnlyPointToPointLocalFifosAreFused() throws Exception {
+    try (InputStream is = FusedQueueTest.class.getResourceAsStream("/fifoconfig/fusion.yaml")) {
+      var config = MAPPER.readValue(is, MagpieConfig.class);
+      var layers = new LayerManager(new Session(), config, new FifoManager(config), new PluginManager(config),
+        new MetricsRegistry()).getLayers();
+
+      assertEquals(List.of("enumerate", "transform", "output", "audit", "enumerate-shared"), List.copyOf(layers.keySet()));
+      assertEquals(0, layers.get("transform").getWorkers());
+      assertEquals(0, layers.get("output").getWorkers());
+      // Two workers need the fifo to partition between them.
+      assertEquals(2, layers.get("audit").getWorkers());
+
+      config.getFusion().setEnabled(false);
+      layers = new LayerManager(new Session(), config, new FifoManager(config), new PluginManager(config),
+        new MetricsRegistry()).getLayers();
+      assertEquals(1, layers.get("transform").getWorkers());
+      assertEquals(1, layers.get("output").getWorkers());
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 7})
+  public void testFusedChainProcessesEverythingOnTheOriginThread(int buffer) throws Exception {
+    final int count = 500;
+    var session = new Session();
+    var metrics = new MetricsRegistry();
+    var received = new AtomicInteger();
+
+    var terminal = new TerminalLayer("output", List.of(), List.of(new SessionDrainTest.TestTerminal(received)),
+      new SessionDrain("output", session.getId(), Set.of("transform")), metrics);
+    var intermediate = new IntermediateLayer("transform", List.of(), List.of(new SessionDrainTest.TestIntermediate()),
+      new FusedQueue(terminal, buffer), new SessionDrain("transform", session.getId(), Set.of("enumerate")), metrics);
+    var origin = new OriginLayer("enumerate", session, List.of(new SessionDrainTest.TestOrigin(count)),
+      new FusedQueue(intermediate, buffer), metrics);
+
+    origin.exec();
+
+    // No worker threads are involved, so by the time exec() returns the session has fully drained.
+    assertTrue(intermediate.awaitDrained(0L, TimeUnit.MILLISECONDS));
+    assertTrue(terminal.awaitDrained(0L, TimeUnit.MILLISECONDS));
+    assertEquals(count, received.get());
+  }
+}
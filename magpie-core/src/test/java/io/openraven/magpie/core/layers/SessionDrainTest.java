@@ -0,0 +1,192 @@
+package io.openraven.magpie.core.layers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.openraven.magpie.api.Emitter;
+import io.openraven.magpie.api.IntermediatePlugin;
+import io.openraven.magpie.api.MagpieEnvelope;
+import io.openraven.magpie.api.OriginPlugin;
+import io.openraven.magpie.api.Session;
+import io.openraven.magpie.api.TerminalPlugin;
+import io.openraven.magpie.core.fifos.Envelopes;
+import io.openraven.magpie.core.fifos.FifoDequeue;
+import io.openraven.magpie.core.fifos.PartitionedLocalQueue;
+import io.openraven.magpie.core.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionDrainTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Test
+  public void testDrainedOnceAllPartitionsOfAllProducersSeen() throws Exception {
+    var session = new Session();
+    var queue = new PartitionedLocalQueue(2, 10);
+    queue.broadcast(Envelopes.endOfSession(session, "a"));
+    queue.broadcast(Envelopes.endOfSession(session, "b"));
+
+    var drain = new SessionDrain("output", session.getId(), Set.of("a", "b"));
+    var markers = new ArrayList<MagpieEnvelope>();
+    for (var partition : queue.getPartitions()) {
+      markers.addAll(partition.pollBatch(10, Duration.ZERO));
+    }
+    assertEquals(4, markers.size());
+
+    for (int i = 0; i < 3; i++) {
+      assertFalse(drain.onMarker(markers.get(i)));
+      assertFalse(drain.isDrained());
+    }
+    assertTrue(drain.onMarker(markers.get(3)));
+    assertTrue(drain.isDrained());
+    assertFalse(drain.onMarker(markers.get(3)));
+  }
+
+  @Test
+  public void testOtherSessionsAndUnfedLayers() throws Exception {
+    var drain = new SessionDrain("output", new Session().getId(), Set.of("a"));
+    var foreign = new PartitionedLocalQueue(1, 10);
+    foreign.broadcast(Envelopes.endOfSession(new Session(), "a"));
+    assertFalse(drain.onMarker(foreign.getPartitions().get(0).poll().orElseThrow()));
+    assertFalse(drain.await(10L, TimeUnit.MILLISECONDS));
+
+    var unfed = new SessionDrain("output", new Session().getId(), Set.of());
+    assertFalse(unfed.isExpected());
+    assertTrue(unfed.await(0L, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testPipelineDrainsEveryEnvelope() throws Exception {
+    final int count = 2000;
+    var session = new Session();
+    var xform = new PartitionedLocalQueue(2, 16);
+    var output = new PartitionedLocalQueue(3, 16);
+    var received = new AtomicInteger();
+    var metrics = new MetricsRegistry();
+
+    var origin = new OriginLayer("enumerate", session, List.of(new TestOrigin(count)), xform, metrics);
+    var intermediate = new IntermediateLayer("transform", List.copyOf(xform.getPartitions()),
+      List.of(new TestIntermediate()), output, new SessionDrain("transform", session.getId(), Set.of("enumerate")), metrics);
+    var terminal = new TerminalLayer("output", List.<FifoDequeue>copyOf(output.getPartitions()),
+      List.of(new TestTerminal(received)), new SessionDrain("output", session.getId(), Set.of("transform")), metrics);
+
+    var running = new AtomicBoolean(true);
+    var executor = Executors.newFixedThreadPool(intermediate.getWorkers() + terminal.getWorkers());
+    try {
+      for (var layer : List.<Layer>of(intermediate, terminal)) {
+        for (int w = 0; w < layer.getWorkers(); w++) {
+          final int worker = w;
+          executor.submit(() -> {
+            while (running.get()) {
+              layer.exec(worker);
+            }
+            return null;
+          });
+        }
+      }
+
+      origin.exec();
+      assertTrue(intermediate.awaitDrained(30L, TimeUnit.SECONDS));
+      assertTrue(terminal.awaitDrained(30L, TimeUnit.SECONDS));
+      assertEquals(count, received.get());
+
+      assertEquals(count, metrics.counter("magpie_layer_envelopes_out_total", "layer", "enumerate").get());
+      assertEquals(count, metrics.counter("magpie_layer_envelopes_in_total", "layer", "transform").get());
+      assertEquals(count, metrics.counter("magpie_layer_envelopes_out_total", "layer", "transform").get());
+      assertEquals(count, metrics.counter("magpie_layer_envelopes_in_total", "layer", "output").get());
+    } finally {
+      running.set(false);
+      executor.shutdownNow();
+    }
+  }
+
+  static class TestOrigin implements OriginPlugin<Void> {
+    private final int count;
+
+    TestOrigin(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public void discover(Session session, Emitter emitter) {
+      for (int i = 0; i < count; i++) {
+        var contents = MAPPER.createObjectNode();
+        contents.put("documentId", "doc-" + i);
+        emitter.emit(new MagpieEnvelope(session, List.of(id()), contents));
+      }
+    }
+
+    @Override
+    public String id() {
+      return "test.origin";
+    }
+
+    @Override
+    public void init(Void unused, Logger logger) {
+    }
+
+    @Override
+    public Class<Void> configType() {
+      return null;
+    }
+  }
+
+  static class TestIntermediate implements IntermediatePlugin<Void> {
+    @Override
+    public void accept(MagpieEnvelope env, Emitter emitter) {
+      emitter.emit(env);
+    }
+
+    @Override
+    public String id() {
+      return "test.intermediate";
+    }
+
+    @Override
+    public void init(Void unused, Logger logger) {
+    }
+
+    @Override
+    public Class<Void> configType() {
+      return null;
+    }
+  }
+
+  static class TestTerminal implements TerminalPlugin<Void> {
+    private final AtomicInteger received;
+
+    TestTerminal(AtomicInteger received) {
+      this.received = received;
+    }
+
+    @Override
+    public void accept(MagpieEnvelope env) {
+      assertFalse(Envelopes.isEndOfSession(env));
+      received.incrementAndGet();
+    }
+
+    @Override
+    public String id() {
+      return "test.terminal";
+    }
+
+    @Override
+    public void init(Void unused, Logger logger) {
+    }
+
+    @Override
+    public Class<Void> configType() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package io.openraven.magpie.core.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+  @Test
+  public void testMetricsAreSharedByNameAndLabels() {
+    var registry = new MetricsRegistry();
+    registry.counter("envelopes_total", "layer", "a").add(3);
+    registry.counter("envelopes_total", "layer", "a").increment();
+    registry.counter("envelopes_total", "layer", "b").increment();
+
+    assertEquals(4, registry.counter("envelopes_total", "layer", "a").get());
+    assertEquals(1, registry.counter("envelopes_total", "layer", "b").get());
+    assertThrows(IllegalArgumentException.class, () -> registry.counter("envelopes_total", "layer"));
+  }
+
+  @Test
+  public void testTimerTracksCountTotalAndMax() {
+    var timer = new MetricsRegistry().timer("exec_seconds");
+    timer.record(TimeUnit.MILLISECONDS.toNanos(2));
+    timer.record(TimeUnit.MILLISECONDS.toNanos(40));
+    timer.record(TimeUnit.SECONDS.toNanos(400));
+
+    assertEquals(3, timer.getCount());
+    assertEquals(400.042, timer.getTotal(TimeUnit.SECONDS), 1e-9);
+    assertEquals(400_000.0, timer.getMax(TimeUnit.MILLISECONDS), 1e-9);
+    var buckets = timer.cumulativeBuckets();
+    assertEquals(0, buckets[0]);                          // le 0.001
+    assertEquals(1, buckets[1]);                          // le 0.005
+    assertEquals(2, buckets[3]);                          // le 0.05
+    assertEquals(2, buckets[Timer.BUCKETS.length - 1]);   // le 300, the last recording only lands in +Inf
+  }
+
+  @Test
+  public void testScrapeFormat() {
+    var registry = new MetricsRegistry();
+    registry.counter("in_total", "layer", "output").add(7);
+    registry.gauge("depth", () -> 12, "fifo", "q\"1");
+    registry.timer("exec_seconds", "layer", "output").record(TimeUnit.MILLISECONDS.toNanos(3));
+
+    var text = registry.scrape();
+    assertTrue(text.contains("# TYPE in_total counter\nin_total{layer=\"output\"} 7\n"), text);
+    assertTrue(text.contains("# TYPE depth gauge\ndepth{fifo=\"q\\\"1\"} 12\n"), text);
+    assertTrue(text.contains("# TYPE exec_seconds histogram\n"), text);
+    assertTrue(text.contains("exec_seconds_bucket{layer=\"output\",le=\"0.001\"} 0\n"), text);
+    assertTrue(text.contains("exec_seconds_bucket{layer=\"output\",le=\"0.005\"} 1\n"), text);
+    assertTrue(text.contains("exec_seconds_bucket{layer=\"output\",le=\"+Inf\"} 1\n"), text);
+    assertTrue(text.contains("exec_seconds_count{layer=\"output\"} 1\n"), text);
+  }
+
+  @Test
+  public void testServerExposesScrape() throws Exception {
+    var registry = new MetricsRegistry();
+    registry.counter("in_total", "layer", "output").add(5);
+
+    try (var server = new MetricsServer(registry, 0)) {
+      var response = HttpClient.newHttpClient().send(
+        HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/metrics")).build(),
+        HttpResponse.BodyHandlers.ofString());
+      assertEquals(200, response.statusCode());
+      assertTrue(response.body().contains("in_total{layer=\"output\"} 5"), response.body());
+    }
+  }
+}
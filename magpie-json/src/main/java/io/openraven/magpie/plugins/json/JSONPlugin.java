@@ -21,14 +21,15 @@ import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import io.openraven.magpie.api.BatchTerminalPlugin;
 import io.openraven.magpie.api.MagpieEnvelope;
-import io.openraven.magpie.api.TerminalPlugin;
 import org.slf4j.Logger;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.List;
 
-public class JSONPlugin implements TerminalPlugin<Void> {
+public class JSONPlugin implements BatchTerminalPlugin<Void> {
 
   private final Object SYNC = new Object();
 
@@ -52,6 +53,19 @@ public class JSONPlugin implements TerminalPlugin<Void> {
     }
   }
 
+  @Override
+  public void accept(List<MagpieEnvelope> envs) {
+    synchronized (SYNC) {
+      for (var env : envs) {
+        try {
+          generator.writeObject(env.getContents());
+        } catch (IOException ex) {
+          logger.warn("Couldn't process envelope contents", ex);
+        }
+      }
+    }
+  }
+
   @Override
   public String id() {
     return ID;
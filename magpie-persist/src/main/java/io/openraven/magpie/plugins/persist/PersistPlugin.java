@@ -19,15 +19,17 @@ package io.openraven.magpie.plugins.persist;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.openraven.magpie.api.BatchTerminalPlugin;
 import io.openraven.magpie.api.MagpieEnvelope;
-import io.openraven.magpie.api.TerminalPlugin;
 import io.openraven.magpie.data.Resource;
 import io.openraven.magpie.plugins.persist.impl.HibernateAssetsRepoImpl;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-public class PersistPlugin implements TerminalPlugin<PersistConfig> {
+public class PersistPlugin implements BatchTerminalPlugin<PersistConfig> {
 
   private final Object SYNC = new Object();
   private final ObjectMapper objectMapper = new ObjectMapper()
@@ -51,6 +53,26 @@ public class PersistPlugin implements TerminalPlugin<PersistConfig> {
     }
   }
 
+  /**
+   * Batched variant used by the terminal layer.  Envelopes are converted outside the lock and upserted in a single
+   * transaction.
+   */
+  @Override
+  public void accept(List<MagpieEnvelope> envs) {
+    var assets = new ArrayList<Resource>(envs.size());
+    envs.forEach(env -> {
+      try {
+        assets.add(objectMapper.treeToValue(env.getContents(), Resource.class));
+      } catch (JsonProcessingException e) {
+        logger.warn("Unable to parse assetType from content: {}", env.getContents().toPrettyString());
+      }
+    });
+
+    synchronized (SYNC) {
+      assetsRepo.upsert(assets);
+    }
+  }
+
   @Override
   public String id() {
     return ID;
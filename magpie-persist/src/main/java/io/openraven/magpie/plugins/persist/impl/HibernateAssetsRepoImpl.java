@@ -60,6 +60,29 @@ public class HibernateAssetsRepoImpl implements AssetsRepo, Closeable {
     }
   }
 
+  /**
+   * Merges all resources in a single transaction.  If the batch fails it is rolled back and retried one resource at a
+   * time so a single bad resource doesn't prevent the rest from being saved.
+   */
+  @Override
+  public void upsert(List<Resource> resources) {
+    try {
+      entityManager.getTransaction().begin();
+
+      resources.forEach(entityManager::merge);
+
+      entityManager.flush();
+      entityManager.getTransaction().commit();
+      entityManager.clear();
+    } catch (Exception e) {
+      logger.warn("Rolling back batch of {} resources, retrying individually: {}", resources.size(), e.getMessage());
+      logger.debug("Details", e);
+      entityManager.getTransaction().rollback();
+      entityManager.clear();
+      resources.forEach(this::upsert);
+    }
+  }
+
   @Override
   public void executeNative(String query) {
     try {